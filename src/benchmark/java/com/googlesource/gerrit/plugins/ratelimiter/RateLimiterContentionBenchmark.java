@@ -0,0 +1,112 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Measures the throughput of 64 threads acquiring the permits of a single key, as the fetches of a
+ * CI fleet sharing one service account, for every limiter algorithm. With unbounded permits, every
+ * acquisition succeeds; with 1000 permits, nearly all of them are rejected once the key is
+ * exhausted.
+ *
+ * <p>Not a test: run it with {@code bazel run :rate-limiter_contention_benchmark}. Each measurement
+ * runs a few rounds, so that the JIT warms up, and reports the last one.
+ */
+public class RateLimiterContentionBenchmark {
+  private static final int THREADS = 64;
+  private static final int ROUNDS = 3;
+  private static final long ROUND_MILLIS = 2000;
+  private static final int LIMITED_PERMITS = 1000;
+  private static final int TIME_LAPSE = PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+
+  public static void main(String[] args) throws InterruptedException {
+    RateLimitTimer timer = new RateLimitTimer(Ticker.systemTicker(), 1, TimeUnit.SECONDS);
+    System.out.printf(
+        "%d threads, %d cores%n", THREADS, Runtime.getRuntime().availableProcessors());
+    System.out.printf("%-14s  %14s  %14s%n", "limiter", "unbounded", LIMITED_PERMITS + " permits");
+    run("periodic", permits -> new PeriodicRateLimiter(timer, permits, TIME_LAPSE, "Any Type"));
+    run("lazy", permits -> new LazyRateLimiter(permits, TIME_LAPSE, "Any Type"));
+    run("slidingwindow", permits -> new SlidingWindowRateLimiter(permits, TIME_LAPSE, "Any Type"));
+    run(
+        "tokenbucket",
+        permits -> new TokenBucketRateLimiter(permits, TIME_LAPSE, permits, "Any Type"));
+    run("gcra", permits -> new GcraRateLimiter(permits, TIME_LAPSE, permits, "Any Type"));
+  }
+
+  private static void run(String name, IntFunction<RateLimiter> factory)
+      throws InterruptedException {
+    double unbounded = 0;
+    double limited = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      unbounded = throughput(factory.apply(Integer.MAX_VALUE));
+      limited = throughput(factory.apply(LIMITED_PERMITS));
+    }
+    System.out.printf("%-14s  %9.1f Mop/s  %9.1f Mop/s%n", name, unbounded, limited);
+  }
+
+  /** Returns the millions of acquisitions per second of the threads on the limiter. */
+  private static double throughput(RateLimiter limiter) throws InterruptedException {
+    LongAdder operations = new LongAdder();
+    // Keeps the results alive, so that the acquisitions cannot be optimized away
+    LongAdder acquired = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ROUND_MILLIS);
+    Thread[] threads = new Thread[THREADS];
+    for (int i = 0; i < THREADS; i++) {
+      threads[i] =
+          new Thread(
+              () -> {
+                awaitUninterruptibly(start);
+                long count = 0;
+                long permits = 0;
+                do {
+                  for (int j = 0; j < 1000; j++) {
+                    if (limiter.acquirePermit()) {
+                      permits++;
+                    }
+                  }
+                  count += 1000;
+                } while (System.nanoTime() < deadline);
+                operations.add(count);
+                acquired.add(permits);
+              });
+      threads[i].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    limiter.close();
+    if (acquired.sum() > operations.sum()) {
+      throw new IllegalStateException("more permits acquired than requested");
+    }
+    return operations.sum() * 1e3 / elapsed;
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
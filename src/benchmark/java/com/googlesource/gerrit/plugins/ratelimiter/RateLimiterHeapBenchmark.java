@@ -0,0 +1,110 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.base.Ticker;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the heap and the time taken by the limiters of many keys, each {@link
+ * PeriodicRateLimiter} scheduling its replenishment on the {@link RateLimitTimer}, and each {@link
+ * LazyRateLimiter} replenishing itself on the next acquisition.
+ *
+ * <p>Not a test: run it with {@code bazel run :rate-limiter_heap_benchmark}, with a heap large
+ * enough for a million keys, e.g. {@code --jvmopt=-Xmx2g}. The heap is measured after a full
+ * garbage collection, before and after creating the limiters, and includes the timer tasks of the
+ * periodic limiters. Each measurement runs a few rounds, and reports the median one.
+ */
+public class RateLimiterHeapBenchmark {
+  private static final int ROUNDS = 5;
+  private static final int[] KEYS = {10_000, 100_000, 1_000_000};
+  private static final int PERMITS = 1000;
+
+  private interface LimiterFactory {
+    RateLimiter create(RateLimitTimer timer);
+  }
+
+  public static void main(String[] args) {
+    System.out.printf(
+        "%9s  %-8s  %12s  %12s  %14s%n", "keys", "limiter", "heap/key", "create", "timer tasks");
+    for (int keys : KEYS) {
+      run(
+          keys,
+          "periodic",
+          timer ->
+              new PeriodicRateLimiter(
+                  timer, PERMITS, PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type"));
+      run(
+          keys,
+          "lazy",
+          timer ->
+              new LazyRateLimiter(
+                  PERMITS, PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type"));
+    }
+  }
+
+  private static void run(int keys, String name, LimiterFactory factory) {
+    long[] bytes = new long[ROUNDS];
+    long[] nanos = new long[ROUNDS];
+    int pendingTasks = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      RateLimitTimer timer = new RateLimitTimer(Ticker.systemTicker(), 1, TimeUnit.SECONDS);
+      timer.start();
+      RateLimiter[] limiters = new RateLimiter[keys];
+      long before = usedHeap();
+      long start = System.nanoTime();
+      for (int i = 0; i < keys; i++) {
+        limiters[i] = factory.create(timer);
+        limiters[i].acquirePermit();
+      }
+      nanos[round] = System.nanoTime() - start;
+      // Lets the timer move the scheduled tasks into its wheel
+      sleep(2 * RateLimitTimer.DEFAULT_TICK_IN_MILLIS);
+      bytes[round] = usedHeap() - before;
+      pendingTasks = timer.pendingTasks();
+      for (RateLimiter limiter : limiters) {
+        limiter.close();
+      }
+      timer.stop();
+    }
+    System.out.printf(
+        "%9d  %-8s  %10d B  %9.1f ms  %14d%n",
+        keys, name, median(bytes) / keys, median(nanos) / 1e6, pendingTasks);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      sleep(50);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static long median(long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalNotification;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Measures how the throughput of the lookups of the remote hosts scales with the threads: the Guava
+ * {@code LoadingCache} the remote hosts were kept in before {@link RateLimiterRegistry}, the
+ * registry, and the {@link RemoteHostTable}. Each thread looks up random hosts out of a set of
+ * loaded ones, and acquires a permit of each.
+ *
+ * <p>Not a test: run it with {@code bazel run :rate-limiter_registry_benchmark}. The threads go
+ * from 1 to twice the number of cores, and at least 8. Each measurement runs a few rounds, so that
+ * the JIT warms up, and reports the last one.
+ */
+public class RateLimiterRegistryBenchmark {
+  private static final int ROUNDS = 3;
+  private static final long ROUND_MILLIS = 1000;
+  private static final int HOSTS = 100_000;
+  private static final int PERMITS = 1_000_000_000;
+  private static final int TIME_LAPSE = PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+
+  private interface Store {
+    int tryAcquirePermit(HostKey remoteHost);
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    HostKey[] hosts = new HostKey[HOSTS];
+    for (int i = 0; i < HOSTS; i++) {
+      hosts[i] = HostKey.parse(String.format("10.%d.%d.%d", i >>> 16, (i >>> 8) & 0xFF, i & 0xFF));
+    }
+    Function<HostKey, RateLimiter> loader =
+        remoteHost -> new LazyRateLimiter(PERMITS, TIME_LAPSE, "Any Type");
+
+    LoadingCache<HostKey, RateLimiter> cache =
+        CacheBuilder.newBuilder()
+            .maximumSize(2 * HOSTS)
+            .expireAfterAccess(TIME_LAPSE, TimeUnit.MINUTES)
+            .removalListener(
+                (RemovalNotification<HostKey, RateLimiter> notification) ->
+                    notification.getValue().close())
+            .build(CacheLoader.from(loader::apply));
+    RateLimiterRegistry<HostKey> registry =
+        new RateLimiterRegistry<>(
+            loader, () -> 0, (remoteHost, limiter) -> true, Ticker.systemTicker(), 2 * HOSTS);
+    RemoteHostTable table =
+        new RemoteHostTable(
+            anonymousFinder(),
+            new RateLimitNotifier(null, null, 1),
+            Ticker.systemTicker(),
+            2 * HOSTS);
+    Store[] stores = {
+      remoteHost -> cache.getUnchecked(remoteHost).tryAcquirePermit(),
+      remoteHost -> registry.get(remoteHost).tryAcquirePermit(),
+      table::tryAcquirePermit
+    };
+    for (Store store : stores) {
+      for (HostKey remoteHost : hosts) {
+        store.tryAcquirePermit(remoteHost);
+      }
+    }
+
+    int cores = Runtime.getRuntime().availableProcessors();
+    System.out.printf("%d hosts, %d cores%n", HOSTS, cores);
+    System.out.printf("%7s  %14s  %14s  %14s%n", "threads", "loadingcache", "registry", "table");
+    for (int threads = 1; threads <= Math.max(8, 2 * cores); threads *= 2) {
+      double[] results = new double[stores.length];
+      for (int round = 0; round < ROUNDS; round++) {
+        for (int i = 0; i < stores.length; i++) {
+          results[i] = throughput(stores[i], hosts, threads);
+        }
+      }
+      System.out.printf(
+          "%7d  %8.2f Mop/s  %8.2f Mop/s  %8.2f Mop/s%n",
+          threads, results[0], results[1], results[2]);
+    }
+  }
+
+  private static RateLimitFinder anonymousFinder() {
+    RateLimitFinder finder = mock(RateLimitFinder.class);
+    when(finder.findAnonymousPolicy())
+        .thenReturn(
+            new RateLimitPolicy(
+                Map.of(
+                    RateLimitType.UPLOAD_PACK_PER_HOUR,
+                    new RateLimit(RateLimitType.UPLOAD_PACK_PER_HOUR, PERMITS)),
+                Optional.of(RateLimitAlgorithm.FIXED_WINDOW)));
+    return finder;
+  }
+
+  /** Returns the millions of lookups per second of the threads in the store. */
+  private static double throughput(Store store, HostKey[] hosts, int threadCount)
+      throws InterruptedException {
+    LongAdder operations = new LongAdder();
+    // Keeps the results alive, so that the lookups cannot be optimized away
+    LongAdder usedPermits = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ROUND_MILLIS);
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      threads[i] =
+          new Thread(
+              () -> {
+                awaitUninterruptibly(start);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                long used = 0;
+                do {
+                  for (int j = 0; j < 1000; j++) {
+                    used += store.tryAcquirePermit(hosts[random.nextInt(hosts.length)]);
+                  }
+                  count += 1000;
+                } while (System.nanoTime() < deadline);
+                operations.add(count);
+                usedPermits.add(used);
+              });
+      threads[i].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    if (usedPermits.sum() < 0) {
+      throw new IllegalStateException("permits refused");
+    }
+    return operations.sum() * 1e3 / elapsed;
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,355 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiPredicate;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rate limiters of the identified users, keyed by account id.
+ *
+ * <p>The limiters are kept in an open-addressing table with linear probing on the primitive account
+ * id, so that looking up the limiter of a user neither allocates nor boxes. Lookups do not lock:
+ * the table is only modified while holding the monitor of this store, and a lookup missing an entry
+ * because of a concurrent modification retries while holding the monitor before loading it.
+ *
+ * <p>As for the remote hosts cache, the limiters which are not accessed for an hour are evicted and
+ * closed. As well, a limiter loaded from an older configuration is only checked against the current
+ * one on its next access, and replaced if the limits of the user changed.
+ *
+ * <p>Resolving the limits of a user looks up its group memberships, which can be slow. With a
+ * provisional loader, a user without limiter is immediately given a provisional one, with the
+ * limits of the groups all the users are a member of, while its own limits are resolved in the
+ * background. The resolved limiter then replaces the provisional one, and is charged the permits
+ * used meanwhile, unless the backend already counts them under the key of the user. Limiters loaded
+ * from an older configuration are checked in the background too.
+ */
+@Singleton
+class AccountRateLimiters {
+  private static final Logger log = LoggerFactory.getLogger(AccountRateLimiters.class);
+
+  private static final int INITIAL_CAPACITY = 64;
+  private static final long EXPIRE_AFTER_ACCESS_NANOS = TimeUnit.HOURS.toNanos(1);
+
+  private static final class Entry extends ProbingTable.Entry {
+    final int accountId;
+    final RateLimiter limiter;
+    volatile long lastAccess;
+    volatile int generation;
+
+    Entry(int accountId, RateLimiter limiter, long lastAccess, int generation) {
+      // Spreads the sequential account ids over the table, one-to-one
+      super(ProbingTable.spread(accountId));
+      this.accountId = accountId;
+      this.limiter = limiter;
+      this.lastAccess = lastAccess;
+      this.generation = generation;
+    }
+  }
+
+  private final IntFunction<RateLimiter> loader;
+  private final IntFunction<RateLimiter> provisionalLoader;
+  private final Executor executor;
+  private final IntSupplier generation;
+  private final BiPredicate<Integer, RateLimiter> validator;
+  private final Predicate<RateLimiter> shared;
+  private final Ticker ticker;
+
+  /** Modified under the monitor. */
+  private final ProbingTable<Entry> table = new ProbingTable<>(INITIAL_CAPACITY);
+
+  @Inject
+  AccountRateLimiters(
+      Provider<Module.RateLimiterLoader> loader,
+      Configuration configuration,
+      RateLimiterLoadingQueue queue,
+      PermitsSnapshot permits,
+      RateLimiterBackend backend,
+      RateLimitTimer timer) {
+    this(
+        accountId -> permits.restore(accountId, loader.get().load(Integer.toString(accountId))),
+        queue.isEnabled()
+            ? accountId ->
+                permits.restore(
+                    accountId, loader.get().loadProvisional(Integer.toString(accountId)))
+            : null,
+        queue,
+        configuration::generation,
+        (accountId, limiter) -> loader.get().isValidKey(Integer.toString(accountId), limiter),
+        backend::shares,
+        Ticker.systemTicker());
+    // Evict idle entries even when no request touches the store
+    timer.scheduleAtFixedRate(this::cleanUp, 1, 1, TimeUnit.MINUTES);
+  }
+
+  @VisibleForTesting
+  AccountRateLimiters(IntFunction<RateLimiter> loader, Ticker ticker) {
+    this(loader, () -> 0, (accountId, limiter) -> true, ticker);
+  }
+
+  @VisibleForTesting
+  AccountRateLimiters(
+      IntFunction<RateLimiter> loader,
+      IntSupplier generation,
+      BiPredicate<Integer, RateLimiter> validator,
+      Ticker ticker) {
+    this(loader, null, Runnable::run, generation, validator, limiter -> false, ticker);
+  }
+
+  /**
+   * @param loader resolves the limiter of an account from the current configuration
+   * @param provisionalLoader creates the limiter used until the one of the account is resolved in
+   *     the background, or {@code null} to resolve the limiters on the calling thread
+   * @param executor runs the background resolutions
+   * @param generation returns the generation of the current configuration
+   * @param validator checks whether a limiter still applies to its account
+   * @param shared checks whether the backend counts the permits of a limiter under its key
+   */
+  @VisibleForTesting
+  AccountRateLimiters(
+      IntFunction<RateLimiter> loader,
+      IntFunction<RateLimiter> provisionalLoader,
+      Executor executor,
+      IntSupplier generation,
+      BiPredicate<Integer, RateLimiter> validator,
+      Predicate<RateLimiter> shared,
+      Ticker ticker) {
+    this.loader = loader;
+    this.provisionalLoader = provisionalLoader;
+    this.executor = executor;
+    this.generation = generation;
+    this.validator = validator;
+    this.shared = shared;
+    this.ticker = ticker;
+  }
+
+  /** Returns the limiter of the account, loading it if it is not present. */
+  RateLimiter get(int accountId) {
+    Entry entry = find(table.table(), accountId);
+    if (entry == null) {
+      entry = load(accountId);
+    } else if (entry.generation != generation.getAsInt()) {
+      entry = revalidate(entry);
+    }
+    entry.lastAccess = ticker.read();
+    return entry.limiter;
+  }
+
+  /** Returns the limiter of the account, or {@code null} if it is not present. */
+  RateLimiter getIfPresent(int accountId) {
+    Entry entry = find(table.table(), accountId);
+    if (entry == null) {
+      synchronized (this) {
+        entry = find(table.table(), accountId);
+      }
+    }
+    return entry != null ? entry.limiter : null;
+  }
+
+  /** Removes and closes the limiter of the account. */
+  void invalidate(int accountId) {
+    Entry removed;
+    synchronized (this) {
+      removed = find(table.table(), accountId);
+      if (removed != null) {
+        table.remove(removed);
+      }
+    }
+    if (removed != null) {
+      removed.limiter.close();
+    }
+  }
+
+  /** Returns a copy of the limiters keyed by account id. */
+  synchronized ImmutableMap<Integer, RateLimiter> snapshot() {
+    ImmutableMap.Builder<Integer, RateLimiter> limiters =
+        ImmutableMap.builderWithExpectedSize(table.size());
+    AtomicReferenceArray<Entry> t = table.table();
+    for (int i = 0; i < t.length(); i++) {
+      Entry entry = t.get(i);
+      if (entry != null) {
+        limiters.put(entry.accountId, entry.limiter);
+      }
+    }
+    return limiters.build();
+  }
+
+  synchronized int size() {
+    return table.size();
+  }
+
+  /** Removes and closes the limiters which were not accessed for an hour. */
+  void cleanUp() {
+    long now = ticker.read();
+    List<Entry> expired = new ArrayList<>();
+    synchronized (this) {
+      AtomicReferenceArray<Entry> t = table.table();
+      for (int i = 0; i < t.length(); i++) {
+        Entry entry = t.get(i);
+        if (entry != null && now - entry.lastAccess >= EXPIRE_AFTER_ACCESS_NANOS) {
+          expired.add(entry);
+        }
+      }
+      expired.forEach(table::remove);
+    }
+    expired.forEach(entry -> entry.limiter.close());
+  }
+
+  /**
+   * Checks the limiter of an entry loaded from an older configuration, keeping it if it still
+   * applies to the user and replacing it otherwise.
+   */
+  private Entry revalidate(Entry entry) {
+    // Read before the check, so that a configuration published meanwhile is checked again later
+    int current = generation.getAsInt();
+    if (provisionalLoader != null) {
+      // Keep using the stale limiter meanwhile, and only check it once
+      entry.generation = current;
+      resolveInBackground(entry, current, true);
+      return entry;
+    }
+    if (validator.test(entry.accountId, entry.limiter)) {
+      entry.generation = current;
+      return entry;
+    }
+    boolean removed;
+    synchronized (this) {
+      // Another thread may have replaced the stale limiter already
+      removed = table.remove(entry);
+    }
+    if (removed) {
+      entry.limiter.close();
+    }
+    return load(entry.accountId);
+  }
+
+  private Entry load(int accountId) {
+    synchronized (this) {
+      Entry entry = find(table.table(), accountId);
+      if (entry != null) {
+        return entry;
+      }
+    }
+
+    // Resolving the limits of the user can be slow, do not block the other lookups meanwhile
+    int loadedGeneration = generation.getAsInt();
+    if (provisionalLoader != null) {
+      return loadProvisional(accountId, loadedGeneration);
+    }
+    RateLimiter limiter = loader.apply(accountId);
+    Entry entry;
+    synchronized (this) {
+      entry = find(table.table(), accountId);
+      if (entry == null) {
+        entry = new Entry(accountId, limiter, ticker.read(), loadedGeneration);
+        table.insert(entry);
+        return entry;
+      }
+    }
+    // Another thread loaded the limiter of the same account first
+    limiter.close();
+    return entry;
+  }
+
+  private Entry loadProvisional(int accountId, int loadedGeneration) {
+    RateLimiter provisional = provisionalLoader.apply(accountId);
+    Entry entry;
+    synchronized (this) {
+      entry = find(table.table(), accountId);
+      if (entry == null) {
+        entry = new Entry(accountId, provisional, ticker.read(), loadedGeneration);
+        table.insert(entry);
+      }
+    }
+    if (entry.limiter != provisional) {
+      // Another thread loaded the limiter of the same account first
+      provisional.close();
+      return entry;
+    }
+    resolveInBackground(entry, loadedGeneration, false);
+    return entry;
+  }
+
+  /**
+   * Resolves the limiter of the account of the entry in the background and replaces the limiter of
+   * the entry with it, only if it no longer applies when {@code revalidate} is set.
+   */
+  private void resolveInBackground(Entry entry, int loadedGeneration, boolean revalidate) {
+    executor.execute(
+        () -> {
+          try {
+            if (!revalidate) {
+              replace(entry, loader.apply(entry.accountId), loadedGeneration, true);
+            } else if (!validator.test(entry.accountId, entry.limiter)) {
+              // The limits of the user changed, they start afresh as when checked synchronously
+              replace(entry, loader.apply(entry.accountId), loadedGeneration, false);
+            }
+          } catch (RuntimeException e) {
+            log.warn("Cannot resolve the rate limits of account {}", entry.accountId, e);
+            // Retry on the next access
+            entry.generation = loadedGeneration - 1;
+          }
+        });
+  }
+
+  /**
+   * Replaces the limiter of the entry by the given one, unless the entry was removed or replaced
+   * meanwhile. If {@code restorePermits} is set, the permits used from the replaced limiter are
+   * then restored in the new one, without notifying the user again, unless the backend counts them
+   * under the key of the user already.
+   */
+  private void replace(
+      Entry entry, RateLimiter limiter, int loadedGeneration, boolean restorePermits) {
+    Entry replacement = new Entry(entry.accountId, limiter, entry.lastAccess, loadedGeneration);
+    boolean replaced;
+    synchronized (this) {
+      replaced = table.replace(entry, replacement);
+    }
+    if (!replaced) {
+      limiter.close();
+      return;
+    }
+    // Read once replaced, so that the permits acquired from the replaced limiter meanwhile count
+    if (restorePermits && (!shared.test(entry.limiter) || !shared.test(limiter))) {
+      limiter.restoreUsedPermits(entry.limiter.usedPermits());
+    }
+    entry.limiter.close();
+  }
+
+  private static Entry find(AtomicReferenceArray<Entry> t, int accountId) {
+    int mask = t.length() - 1;
+    for (int i = ProbingTable.spread(accountId) & mask; ; i = (i + 1) & mask) {
+      Entry entry = t.get(i);
+      if (entry == null || entry.accountId == accountId) {
+        return entry;
+      }
+    }
+  }
+}
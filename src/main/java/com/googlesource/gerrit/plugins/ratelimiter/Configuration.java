@@ -14,10 +14,8 @@
 
 package com.googlesource.gerrit.plugins.ratelimiter;
 
-import com.google.common.collect.ArrayTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Table;
 import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.GroupDescription.Basic;
 import com.google.gerrit.entities.ImmutableConfig;
@@ -32,11 +30,9 @@ import com.google.gerrit.server.project.ProjectConfig;
 import com.google.inject.Inject;
 import com.google.inject.ProvisionException;
 import com.google.inject.Singleton;
-import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.CopyOnWriteArrayList;
 import org.eclipse.jgit.errors.ConfigInvalidException;
@@ -50,12 +46,12 @@ class Configuration {
   static final String RATE_LIMIT_TOKEN = "${rateLimit}";
   private static final Logger log = LoggerFactory.getLogger(RateLimitUploadPack.class);
   private static final String GROUP_SECTION = "group";
+  private static final String ALGORITHM = "algorithm";
   private static final String DEFAULT_UPLOADPACK_LIMIT_EXCEEDED_MSG =
       "Exceeded rate limit of " + RATE_LIMIT_TOKEN + " fetch requests/hour";
   private static final String RATE_LIMITER_CONFIG = "rate-limiter.config";
-  private Table<RateLimitType, AccountGroup.UUID, RateLimit> rateLimits;
-  private List<AccountGroup.UUID> recipients;
-  private String rateLimitExceededMsg;
+  private volatile ConfigurationSnapshot snapshot;
+  private int generation;
   private final Boolean isReplica;
   private final PluginConfigFactory pluginConfigFactory;
   private final GroupResolver groupsCollection;
@@ -77,11 +73,36 @@ class Configuration {
     initConfig(loadConfig(allProjectsName.get()));
   }
 
-  private void initConfig(Config config) {
-    recipients = parseUserGroupsForEmailNotification(config, groupsCollection);
-    rateLimitExceededMsg = parseLimitExceededMsg(config);
+  /** Compiles the configuration into a new snapshot and publishes it once complete. */
+  private synchronized void initConfig(Config config) {
+    List<AccountGroup.UUID> recipients =
+        parseUserGroupsForEmailNotification(config, groupsCollection);
+    String rateLimitExceededMsg = parseLimitExceededMsg(config);
+    boolean lazyReplenishment =
+        config.getBoolean("configuration", null, "lazyReplenishment", false);
+    PermitCost permitCost = PermitCost.parse(config);
     Map<String, AccountGroup.UUID> groups = getResolvedGroups(config, groupsCollection);
-    parseAllGroupsRateLimits(config, groups);
+    if (groups.size() == 0) {
+      log.warn("No configuration found");
+    }
+    RateLimit[][] rateLimits = new RateLimit[RateLimitType.values().length][groups.size()];
+    RateLimitAlgorithm[] algorithms = new RateLimitAlgorithm[groups.size()];
+    int index = 0;
+    for (String groupName : groups.keySet()) {
+      algorithms[index] = RateLimitAlgorithm.FIXED_WINDOW;
+      parseGroupRateLimits(config, groupName, index, rateLimits, algorithms);
+      index++;
+    }
+    snapshot =
+        new ConfigurationSnapshot(
+            ImmutableList.copyOf(groups.values()),
+            recipients,
+            rateLimits,
+            algorithms,
+            rateLimitExceededMsg,
+            lazyReplenishment,
+            permitCost,
+            ++generation);
   }
 
   private Config loadConfig(String projectName) {
@@ -148,18 +169,6 @@ class Configuration {
     }
   }
 
-  private void parseAllGroupsRateLimits(Config config, Map<String, AccountGroup.UUID> groups) {
-    if (groups.size() == 0) {
-      log.warn("No configuration found");
-      rateLimits = null;
-      return;
-    }
-    rateLimits = ArrayTable.create(Arrays.asList(RateLimitType.values()), groups.values());
-    for (Entry<String, AccountGroup.UUID> group : groups.entrySet()) {
-      parseGroupRateLimits(config, group.getKey(), group.getValue());
-    }
-  }
-
   private Map<String, AccountGroup.UUID> getResolvedGroups(
       Config config, GroupResolver groupsCollection) {
     LinkedHashMap<String, AccountGroup.UUID> groups = new LinkedHashMap<>();
@@ -172,12 +181,22 @@ class Configuration {
     return groups;
   }
 
-  private void parseGroupRateLimits(Config config, String groupName, AccountGroup.UUID groupUUID)
+  private static void parseGroupRateLimits(
+      Config config,
+      String groupName,
+      int index,
+      RateLimit[][] rateLimits,
+      RateLimitAlgorithm[] algorithms)
       throws ProvisionException {
     for (String typeName : config.getNames(GROUP_SECTION, groupName, true)) {
+      if (ALGORITHM.equalsIgnoreCase(typeName)) {
+        algorithms[index] = parseAlgorithm(config, groupName);
+        continue;
+      }
       RateLimitType rateLimitType = RateLimitType.from(typeName);
       if (rateLimitType != null) {
-        rateLimits.put(rateLimitType, groupUUID, parseRateLimit(config, groupName, rateLimitType));
+        rateLimits[rateLimitType.ordinal()][index] =
+            parseRateLimit(config, groupName, rateLimitType);
       } else {
         throw new ProvisionException(
             String.format("Invalid configuration, unsupported rate limit type: %s", typeName));
@@ -197,13 +216,38 @@ class Configuration {
     }
   }
 
+  private static RateLimitAlgorithm parseAlgorithm(Config c, String groupName) {
+    String value = c.getString(GROUP_SECTION, groupName, ALGORITHM);
+    RateLimitAlgorithm algorithm = RateLimitAlgorithm.from(value);
+    if (algorithm == null) {
+      throw new ProvisionException(
+          String.format("Invalid configuration, unsupported rate limit algorithm: %s", value));
+    }
+    return algorithm;
+  }
+
   private static String parseLimitExceededMsg(Config config) {
     String msg = config.getString("configuration", null, "uploadpackLimitExceededMsg");
     return (msg != null) ? msg : DEFAULT_UPLOADPACK_LIMIT_EXCEEDED_MSG;
   }
 
+  /** Returns the current configuration, which is never modified once returned. */
+  ConfigurationSnapshot snapshot() {
+    return snapshot;
+  }
+
+  /** Returns the generation of the current configuration. */
+  int generation() {
+    return snapshot.generation();
+  }
+
   String getRateLimitExceededMsg() {
-    return rateLimitExceededMsg;
+    return snapshot.getRateLimitExceededMsg();
+  }
+
+  /** Returns true if permits are replenished on access instead of by a scheduled task. */
+  boolean isLazyReplenishment() {
+    return snapshot.isLazyReplenishment();
   }
 
   /**
@@ -211,11 +255,11 @@ class Configuration {
    * @return map of rate limits per group uuid
    */
   Map<AccountGroup.UUID, RateLimit> getRateLimits(RateLimitType rateLimitType) {
-    return rateLimits != null ? rateLimits.row(rateLimitType) : ImmutableMap.of();
+    return snapshot.rateLimits(rateLimitType);
   }
 
   List<AccountGroup.UUID> getRecipients() {
-    return !recipients.isEmpty() ? recipients : ImmutableList.of();
+    return snapshot.getRecipients();
   }
 
   static boolean isSameRateLimitType(
@@ -227,7 +271,9 @@ class Configuration {
       return limiter instanceof WarningUnlimitedRateLimiter;
     }
     if (limit.isPresent()) {
-      return limiter instanceof PeriodicRateLimiter;
+      return !(limiter instanceof UnlimitedRateLimiter
+          || limiter instanceof WarningRateLimiter
+          || limiter instanceof WarningUnlimitedRateLimiter);
     } else {
       return limiter instanceof UnlimitedRateLimiter;
     }
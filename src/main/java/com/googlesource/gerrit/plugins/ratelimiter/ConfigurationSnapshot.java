@@ -0,0 +1,224 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.gerrit.server.group.SystemGroupBackend.ANONYMOUS_USERS;
+import static com.google.gerrit.server.group.SystemGroupBackend.REGISTERED_USERS;
+import static com.googlesource.gerrit.plugins.ratelimiter.Configuration.RATE_LIMIT_TOKEN;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.entities.AccountGroup;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A parsed {@code rate-limiter.config}, compiled for the lookups done on every fetch.
+ *
+ * <p>The configured groups are kept in an array in the order of precedence of the configuration,
+ * and the values of each group at the same index of the arrays of rate limits, algorithms and
+ * policies. A snapshot is never modified once built: {@link Configuration} builds a new one on
+ * every change of the configuration and publishes it at once, so that the readers either see the
+ * old configuration or the new one but never a mix of both.
+ */
+final class ConfigurationSnapshot {
+  private final AccountGroup.UUID[] groups;
+  private final RateLimit[][] rateLimits;
+  private final RateLimitAlgorithm[] algorithms;
+  private final RateLimitPolicy[] policies;
+  private final ImmutableMap<AccountGroup.UUID, Integer> groupIndexes;
+  private final ImmutableList<AccountGroup.UUID> recipients;
+  private final String rateLimitExceededMsg;
+  private final String[] rateLimitExceededMsgParts;
+  private final boolean lazyReplenishment;
+  private final PermitCost permitCost;
+  private final int generation;
+  private final boolean hasLimits;
+  private final boolean unlimitedForIdentifiedUsers;
+  private final boolean unlimitedForAnonymousUsers;
+
+  /**
+   * @param groups configured groups, in order of precedence
+   * @param recipients groups notified when a limit is reached
+   * @param rateLimits rate limits per rate limit type ordinal and group index, {@code null} when
+   *     the type is not configured for the group
+   * @param algorithms algorithm per group index
+   * @param rateLimitExceededMsg message of the rejected fetches
+   * @param lazyReplenishment whether permits are replenished on access
+   * @param permitCost cost of the fetches
+   * @param generation number of the configuration, incremented on every change
+   */
+  ConfigurationSnapshot(
+      List<AccountGroup.UUID> groups,
+      List<AccountGroup.UUID> recipients,
+      RateLimit[][] rateLimits,
+      RateLimitAlgorithm[] algorithms,
+      String rateLimitExceededMsg,
+      boolean lazyReplenishment,
+      PermitCost permitCost,
+      int generation) {
+    this.groups = groups.toArray(new AccountGroup.UUID[0]);
+    this.rateLimits = rateLimits;
+    this.algorithms = algorithms;
+    this.policies = new RateLimitPolicy[this.groups.length];
+    ImmutableMap.Builder<AccountGroup.UUID, Integer> indexes =
+        ImmutableMap.builderWithExpectedSize(this.groups.length);
+    for (int i = 0; i < this.groups.length; i++) {
+      Map<RateLimitType, RateLimit> groupRateLimits = new EnumMap<>(RateLimitType.class);
+      for (RateLimitType type : RateLimitType.values()) {
+        if (rateLimits[type.ordinal()][i] != null) {
+          groupRateLimits.put(type, rateLimits[type.ordinal()][i]);
+        }
+      }
+      policies[i] = new RateLimitPolicy(groupRateLimits, Optional.of(algorithms[i]));
+      indexes.put(this.groups[i], i);
+    }
+    this.groupIndexes = indexes.build();
+    this.recipients = ImmutableList.copyOf(recipients);
+    this.rateLimitExceededMsg = rateLimitExceededMsg;
+    this.rateLimitExceededMsgParts =
+        Splitter.on(RATE_LIMIT_TOKEN).splitToList(rateLimitExceededMsg).toArray(new String[0]);
+    this.lazyReplenishment = lazyReplenishment;
+    this.permitCost = permitCost;
+    this.generation = generation;
+    boolean limited = false;
+    boolean limitedBeforeAllUsers = false;
+    boolean allUsersReached = false;
+    for (int i = 0; i < this.groups.length; i++) {
+      limited |= !policies[i].isUnlimited();
+      if (!allUsersReached) {
+        limitedBeforeAllUsers |= !policies[i].isUnlimited();
+        allUsersReached =
+            this.groups[i].equals(ANONYMOUS_USERS) || this.groups[i].equals(REGISTERED_USERS);
+      }
+    }
+    this.hasLimits = limited;
+    this.unlimitedForIdentifiedUsers = !limitedBeforeAllUsers;
+    this.unlimitedForAnonymousUsers = policy(ANONYMOUS_USERS).isUnlimited();
+  }
+
+  /** Returns the number of configured groups. */
+  int groupCount() {
+    return groups.length;
+  }
+
+  /** Returns the group with the given precedence, 0 being the first configured group. */
+  AccountGroup.UUID group(int index) {
+    return groups[index];
+  }
+
+  /** Returns the policy of the group with the given precedence. */
+  RateLimitPolicy policy(int index) {
+    return policies[index];
+  }
+
+  /** Returns the policy of the group, {@link RateLimitPolicy#NONE} if it is not configured. */
+  RateLimitPolicy policy(AccountGroup.UUID groupUUID) {
+    Integer index = groupIndexes.get(groupUUID);
+    return index != null ? policies[index] : RateLimitPolicy.NONE;
+  }
+
+  /**
+   * Returns the rate limits of the given type per group, in order of precedence. The value is
+   * {@code null} for the groups which do not configure the type.
+   */
+  Map<AccountGroup.UUID, RateLimit> rateLimits(RateLimitType rateLimitType) {
+    Map<AccountGroup.UUID, RateLimit> typeRateLimits = new LinkedHashMap<>();
+    for (int i = 0; i < groups.length; i++) {
+      typeRateLimits.put(groups[i], rateLimits[rateLimitType.ordinal()][i]);
+    }
+    return Collections.unmodifiableMap(typeRateLimits);
+  }
+
+  /** Returns the algorithm per group, in order of precedence. */
+  ImmutableMap<AccountGroup.UUID, RateLimitAlgorithm> algorithms() {
+    ImmutableMap.Builder<AccountGroup.UUID, RateLimitAlgorithm> builder = ImmutableMap.builder();
+    for (int i = 0; i < groups.length; i++) {
+      builder.put(groups[i], algorithms[i]);
+    }
+    return builder.build();
+  }
+
+  /** Returns the policy per group, in order of precedence. */
+  ImmutableMap<AccountGroup.UUID, RateLimitPolicy> policies() {
+    ImmutableMap.Builder<AccountGroup.UUID, RateLimitPolicy> builder = ImmutableMap.builder();
+    for (int i = 0; i < groups.length; i++) {
+      builder.put(groups[i], policies[i]);
+    }
+    return builder.build();
+  }
+
+  ImmutableList<AccountGroup.UUID> getRecipients() {
+    return recipients;
+  }
+
+  String getRateLimitExceededMsg() {
+    return rateLimitExceededMsg;
+  }
+
+  /** Returns the message of the rejected fetches, with the given rate limit per hour. */
+  String formatRateLimitExceededMsg(int rateLimit) {
+    if (rateLimitExceededMsgParts.length == 1) {
+      return rateLimitExceededMsgParts[0];
+    }
+    String value = Integer.toString(rateLimit);
+    StringBuilder msg = new StringBuilder(rateLimitExceededMsgParts[0]);
+    for (int i = 1; i < rateLimitExceededMsgParts.length; i++) {
+      msg.append(value).append(rateLimitExceededMsgParts[i]);
+    }
+    return msg.toString();
+  }
+
+  boolean isLazyReplenishment() {
+    return lazyReplenishment;
+  }
+
+  /** Returns the number of permits of the fetches. */
+  PermitCost permitCost() {
+    return permitCost;
+  }
+
+  /** Returns true if any group is rate limited. */
+  boolean hasLimits() {
+    return hasLimits;
+  }
+
+  /**
+   * Returns true if no identified user can be rate limited, so that the users need not be resolved:
+   * neither the first group all the users are a member of nor any group preceding it is rate
+   * limited.
+   */
+  boolean isUnlimitedForIdentifiedUsers() {
+    return unlimitedForIdentifiedUsers;
+  }
+
+  /** Returns true if the anonymous users, and thus the remote hosts, are not rate limited. */
+  boolean isUnlimitedForAnonymousUsers() {
+    return unlimitedForAnonymousUsers;
+  }
+
+  /**
+   * Returns the number of the configuration. The rate limiters remember the generation they were
+   * loaded from, so that they are only checked against a newer configuration once.
+   */
+  int generation() {
+    return generation;
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.math.IntMath;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate access frequency of the keys of a {@link RateLimiterRegistry}, as used by the TinyLFU
+ * admission policy.
+ *
+ * <p>A count-min sketch of four 4-bit counters per key, packed sixteen to a long. Counters saturate
+ * at 15, so that the frequently accessed keys stop writing to the sketch. Once the sketch recorded
+ * ten increments per key it can hold, all the counters are halved so that the keys which are not
+ * accessed anymore are eventually forgotten.
+ */
+class FrequencySketch {
+  private static final long[] SEEDS = {
+    0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private final AtomicLongArray table;
+  private final int sampleSize;
+  private final AtomicInteger additions = new AtomicInteger();
+
+  FrequencySketch(int maximumSize) {
+    int size = IntMath.ceilingPowerOfTwo(Math.max(maximumSize, 16));
+    this.table = new AtomicLongArray(size);
+    this.sampleSize = 10 * size;
+  }
+
+  /** Returns the estimated number of accesses of the key, up to 15. */
+  int frequency(int hash) {
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < SEEDS.length; i++) {
+      int index = index(hash, i);
+      int shift = offset(hash, i);
+      frequency = Math.min(frequency, (int) ((table.get(index) >>> shift) & 0xF));
+    }
+    return frequency;
+  }
+
+  /** Records an access of the key. */
+  void increment(int hash) {
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      added |= incrementAt(index(hash, i), offset(hash, i));
+    }
+    if (added && additions.incrementAndGet() == sampleSize) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt(int index, int shift) {
+    long mask = 0xFL << shift;
+    while (true) {
+      long value = table.get(index);
+      if ((value & mask) == mask) {
+        return false;
+      }
+      if (table.compareAndSet(index, value, value + (1L << shift))) {
+        return true;
+      }
+    }
+  }
+
+  /** Halves all the counters. */
+  private void reset() {
+    for (int i = 0; i < table.length(); i++) {
+      table.getAndUpdate(i, value -> (value >>> 1) & RESET_MASK);
+    }
+    additions.set(0);
+  }
+
+  private int index(int hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += h >>> 32;
+    return (int) h & (table.length() - 1);
+  }
+
+  /** Returns the position of the counter of the i-th hash function in its long. */
+  private static int offset(int hash, int i) {
+    return (((hash >>> (i << 3)) & 3) << 2 | i) << 2;
+  }
+}
@@ -0,0 +1,168 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generic cell rate algorithm rate limiter.
+ *
+ * <p>Each permit is given back after an emission interval of one time lapse divided by the number
+ * of permits. The only state is the theoretical arrival time (TAT): the time at which all the
+ * permits acquired so far will have been given back. A permit is granted, by a single
+ * compare-and-set, as long as the TAT does not move further than {@code burst} emission intervals
+ * ahead of now. It behaves like a token bucket without any refill computation.
+ */
+class GcraRateLimiter implements RateLimiter {
+  interface Factory {
+    GcraRateLimiter create(
+        @Assisted("permits") Integer permits,
+        @Assisted("timeLapse") Integer timeLapse,
+        @Assisted("burst") Integer burst,
+        String rateLimitType);
+  }
+
+  private static final VarHandle TAT;
+
+  static {
+    try {
+      TAT = MethodHandles.lookup().findVarHandle(GcraRateLimiter.class, "tat", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final Ticker ticker;
+  private final int maxPermits;
+  private final int timeLapse;
+  private final int burst;
+  private final long emissionInterval;
+  private final String rateLimitType;
+
+  /** Theoretical arrival time, in ticker nanoseconds. */
+  private volatile long tat;
+
+  @Inject
+  GcraRateLimiter(
+      @Assisted("permits") Integer permits,
+      @Assisted("timeLapse") Integer timeLapse,
+      @Assisted("burst") Integer burst,
+      @Assisted String rateLimitType) {
+    this(Ticker.systemTicker(), permits, timeLapse, burst, rateLimitType);
+  }
+
+  @VisibleForTesting
+  GcraRateLimiter(Ticker ticker, int permits, int timeLapse, int burst, String rateLimitType) {
+    this.ticker = ticker;
+    this.maxPermits = permits;
+    this.timeLapse = timeLapse;
+    this.burst = burst;
+    this.emissionInterval = Math.max(1, TimeUnit.MINUTES.toNanos(timeLapse) / permits);
+    this.rateLimitType = rateLimitType;
+    this.tat = ticker.read();
+  }
+
+  @Override
+  public int permitsPerHour() {
+    return maxPermits;
+  }
+
+  @Override
+  public boolean acquirePermit() {
+    return tryAcquirePermit() != NO_PERMIT;
+  }
+
+  @Override
+  public int tryAcquirePermits(int permits) {
+    if (permits > burst) {
+      return NO_PERMIT;
+    }
+    long now = ticker.read();
+    long limit = now + burst * emissionInterval;
+    while (true) {
+      long current = tat;
+      long next = Math.max(current, now) + permits * emissionInterval;
+      if (next - limit > 0) {
+        return NO_PERMIT;
+      }
+      if (TAT.compareAndSet(this, current, next)) {
+        return permits(next - now);
+      }
+    }
+  }
+
+  @Override
+  public int availablePermits() {
+    return burst - usedPermits();
+  }
+
+  @Override
+  public int usedPermits() {
+    return permits(tat - ticker.read());
+  }
+
+  /** Returns the time until all the acquired permits are given back. */
+  @Override
+  public long remainingTime(TimeUnit timeUnit) {
+    return timeUnit.convert(Math.max(0, tat - ticker.read()), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void replenishPermits() {
+    tat = ticker.read();
+  }
+
+  @Override
+  public String getType() {
+    return rateLimitType;
+  }
+
+  @Override
+  public Optional<Integer> getTimeLapse() {
+    return Optional.of(timeLapse);
+  }
+
+  @Override
+  public Optional<Integer> getWarnLimit() {
+    return Optional.empty();
+  }
+
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return RateLimitAlgorithm.GCRA;
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return Optional.of(burst);
+  }
+
+  @Override
+  public void close() {
+    // nothing to release, there is no replenish task
+  }
+
+  /** Number of permits not given back yet, rounded up, when the TAT is ahead of now by delay. */
+  private int permits(long delay) {
+    return delay <= 0 ? 0 : (int) ((delay + emissionInterval - 1) / emissionInterval);
+  }
+}
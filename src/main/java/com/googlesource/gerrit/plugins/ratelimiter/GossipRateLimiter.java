@@ -0,0 +1,144 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed window rate limiter counting the permits used by all the servers sharing a directory, as of
+ * the last segments read from it.
+ *
+ * <p>The windows are aligned on the wall clock, so that all the servers count in the same window.
+ * The counts only grow within a window, so replenishing the permits only gives them back to the
+ * users of this server, until the end of the window.
+ */
+class GossipRateLimiter implements RateLimiter {
+  private final GossipRateLimiterBackend backend;
+  private final String key;
+  private final RateLimiter local;
+  private final long windowMillis;
+  private final LongSupplier clock;
+
+  /** Permits replenished in the window ending at {@link #replenishedWindowEnd}. */
+  private long replenished;
+
+  private long replenishedWindowEnd;
+
+  /**
+   * @param key key of the user or remote host
+   * @param local limiter of the server, providing the limits
+   * @param clock returns the current time in milliseconds since the epoch
+   */
+  GossipRateLimiter(
+      GossipRateLimiterBackend backend, String key, RateLimiter local, LongSupplier clock) {
+    this.backend = backend;
+    this.key = key;
+    this.local = local;
+    this.windowMillis =
+        TimeUnit.MINUTES.toMillis(
+            local.getTimeLapse().orElse(PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES));
+    this.clock = clock;
+  }
+
+  @Override
+  public int permitsPerHour() {
+    return local.permitsPerHour();
+  }
+
+  @Override
+  public boolean acquirePermit() {
+    return tryAcquirePermit() != NO_PERMIT;
+  }
+
+  @Override
+  public int tryAcquirePermits(int permits) {
+    long windowEnd = windowEnd();
+    long replenished = replenished(windowEnd);
+    long used = backend.tryAcquire(key, windowEnd, permitsPerHour() + replenished, permits);
+    if (used == GossipRateLimiterBackend.NO_PERMIT) {
+      return NO_PERMIT;
+    }
+    return (int) (used - replenished);
+  }
+
+  @Override
+  public void restoreUsedPermits(int permits) {
+    // Restored from the segments of this server
+  }
+
+  @Override
+  public int availablePermits() {
+    return permitsPerHour() - usedPermits();
+  }
+
+  @Override
+  public int usedPermits() {
+    long windowEnd = windowEnd();
+    long used = backend.usedPermits(key, windowEnd) - replenished(windowEnd);
+    return (int) Math.max(0, Math.min(used, permitsPerHour()));
+  }
+
+  @Override
+  public long remainingTime(TimeUnit timeUnit) {
+    return timeUnit.convert(windowEnd() - clock.getAsLong(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized void replenishPermits() {
+    replenishedWindowEnd = windowEnd();
+    replenished = backend.usedPermits(key, replenishedWindowEnd);
+  }
+
+  @Override
+  public String getType() {
+    return local.getType();
+  }
+
+  @Override
+  public Optional<Integer> getTimeLapse() {
+    return local.getTimeLapse();
+  }
+
+  @Override
+  public Optional<Integer> getWarnLimit() {
+    return local.getWarnLimit();
+  }
+
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return local.getAlgorithm();
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return local.getBurst();
+  }
+
+  @Override
+  public void close() {
+    local.close();
+  }
+
+  private long windowEnd() {
+    long now = clock.getAsLong();
+    return now - now % windowMillis + windowMillis;
+  }
+
+  private synchronized long replenished(long windowEnd) {
+    return replenishedWindowEnd == windowEnd ? replenished : 0;
+  }
+}
@@ -0,0 +1,432 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.eclipse.jgit.lib.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the permits of the fixed window limiters of several servers sharing a directory, at {@code
+ * configuration.sharedDirectory}, e.g. the site directory mounted over NFS.
+ *
+ * <p>The permits of each key and window are a grow-only counter (G-counter): each server counts the
+ * permits it handed out, and the permits used by all the servers are the sum of their counts. Every
+ * interval, a server writes the counts which changed since its previous segment to a new segment
+ * file of its own subdirectory, and reads the segments the other servers wrote since it last read
+ * theirs. A count only grows within its window, so merging a count keeps the highest one seen for
+ * its server, and reading a segment twice, or out of order, does no harm. The cost of an interval
+ * is therefore proportional to the keys which changed in it, and the counts of the other servers
+ * are at most two intervals old.
+ *
+ * <p>The segments of a server are deleted once all their windows ended. On start, the server reads
+ * its own segments back, so that it does not forget the permits it handed out before restarting.
+ */
+@Singleton
+class GossipRateLimiterBackend implements RateLimiterBackend, LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(GossipRateLimiterBackend.class);
+
+  static final int DEFAULT_INTERVAL_SECONDS = 5;
+  static final long NO_PERMIT = -1;
+
+  private static final String QUEUE_NAME = "RateLimiterGossip";
+  private static final int MAGIC = 0x524c4753;
+  private static final int VERSION = 1;
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  /** The windows are at most as long as the default time lapse. */
+  private static final long MAX_WINDOW_MILLIS =
+      TimeUnit.MINUTES.toMillis(PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES);
+
+  private static final long CLEANUP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /** Permits of a key in its current window, guarded by itself. */
+  private static class Counter {
+    long windowEnd;
+    long own;
+    long peers;
+    final Map<String, Long> peerCounts = new HashMap<>(4);
+    boolean changed;
+    boolean removed;
+
+    /** Starts counting in the window ending at the given time, if it is a later one. */
+    void roll(long end) {
+      if (end > windowEnd) {
+        windowEnd = end;
+        own = 0;
+        peers = 0;
+        peerCounts.clear();
+      }
+    }
+  }
+
+  private final WorkQueue workQueue;
+  private final Path directory;
+  private final String nodeId;
+  private final long intervalMillis;
+  private final LongSupplier clock;
+  private final boolean enabled;
+  private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+  private final Set<String> changed = ConcurrentHashMap.newKeySet();
+
+  // Only accessed by gossip()
+  private final Map<String, Long> lastSegments = new HashMap<>();
+  private long lastSegment;
+  private long lastCleanup;
+  private boolean restored;
+
+  private ScheduledExecutorService queue;
+
+  @Inject
+  GossipRateLimiterBackend(
+      WorkQueue workQueue, PluginConfigFactory pluginConfigFactory, @PluginName String pluginName) {
+    Config config = pluginConfigFactory.getGlobalPluginConfig(pluginName);
+    String dir = config.getString("configuration", null, "sharedDirectory");
+    this.workQueue = workQueue;
+    this.directory = dir != null ? Paths.get(dir) : null;
+    this.enabled = "directory".equalsIgnoreCase(config.getString("configuration", null, "backend"));
+    String id = config.getString("configuration", null, "nodeId");
+    this.nodeId = id != null || !enabled ? id : localHostName();
+    this.intervalMillis =
+        TimeUnit.SECONDS.toMillis(
+            Math.max(
+                1,
+                config.getInt(
+                    "configuration",
+                    null,
+                    "sharedDirectoryIntervalInSeconds",
+                    DEFAULT_INTERVAL_SECONDS)));
+    this.clock = System::currentTimeMillis;
+  }
+
+  @VisibleForTesting
+  GossipRateLimiterBackend(Path directory, String nodeId, LongSupplier clock) {
+    this.workQueue = null;
+    this.directory = directory;
+    this.nodeId = nodeId;
+    this.intervalMillis = TimeUnit.SECONDS.toMillis(DEFAULT_INTERVAL_SECONDS);
+    this.clock = clock;
+    this.enabled = true;
+  }
+
+  /** Returns the shared directory, {@code null} if it is not configured. */
+  Path directory() {
+    return directory;
+  }
+
+  String nodeId() {
+    return nodeId;
+  }
+
+  @Override
+  public RateLimiter share(String key, RateLimiter limiter) {
+    if (!shares(limiter)) {
+      return limiter;
+    }
+    return new GossipRateLimiter(this, key, limiter, clock);
+  }
+
+  @Override
+  public boolean shares(RateLimiter limiter) {
+    return limiter.getAlgorithm() == RateLimitAlgorithm.FIXED_WINDOW;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (enabled && workQueue != null && queue == null) {
+      queue = workQueue.createQueue(1, QUEUE_NAME);
+      queue.scheduleWithFixedDelay(this::gossip, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (queue != null) {
+      queue.shutdownNow();
+      queue = null;
+      // The last counts, for the other servers and the next start
+      gossip();
+    }
+  }
+
+  /**
+   * Counts permits of the key in the window ending at the given time, unless all the servers would
+   * use more than the limit.
+   *
+   * @return the permits used by all the servers including the acquired ones, or {@link #NO_PERMIT}
+   */
+  long tryAcquire(String key, long windowEnd, long limit, int permits) {
+    while (true) {
+      Counter c = counters.computeIfAbsent(key, k -> new Counter());
+      synchronized (c) {
+        if (c.removed) {
+          continue;
+        }
+        c.roll(windowEnd);
+        long used = c.own + c.peers;
+        if (permits > limit - used) {
+          return NO_PERMIT;
+        }
+        c.own += permits;
+        if (!c.changed) {
+          c.changed = true;
+          changed.add(key);
+        }
+        return used + permits;
+      }
+    }
+  }
+
+  /**
+   * Returns the permits of the key used by all the servers in the window ending at the given time.
+   */
+  long usedPermits(String key, long windowEnd) {
+    Counter c = counters.get(key);
+    if (c == null) {
+      return 0;
+    }
+    synchronized (c) {
+      return c.windowEnd == windowEnd ? c.own + c.peers : 0;
+    }
+  }
+
+  /** Writes the counts changed on this server, and merges those written by the others. */
+  synchronized void gossip() {
+    long now = clock.getAsLong();
+    try {
+      writeSegment(now);
+      mergeSegments(now);
+      if (now - lastCleanup >= CLEANUP_INTERVAL_MILLIS) {
+        lastCleanup = now;
+        deleteSegments(now);
+        removeCounters(now);
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Cannot share the permits through {}", directory, e);
+    }
+  }
+
+  private void writeSegment(long now) throws IOException {
+    if (changed.isEmpty()) {
+      return;
+    }
+    List<String> keys = new ArrayList<>();
+    ByteArrayOutputStream records = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(records);
+    for (Iterator<String> it = changed.iterator(); it.hasNext(); ) {
+      String key = it.next();
+      it.remove();
+      Counter c = counters.get(key);
+      if (c == null) {
+        continue;
+      }
+      synchronized (c) {
+        c.changed = false;
+        out.writeUTF(key);
+        out.writeLong(c.windowEnd);
+        out.writeLong(c.own);
+      }
+      keys.add(key);
+    }
+
+    // Named after the time they are written at, always increasing
+    lastSegment = Math.max(lastSegment + 1, now);
+    String name = String.format("%019d", lastSegment) + SEGMENT_SUFFIX;
+    Path nodeDirectory = directory.resolve(nodeId);
+    Path tmp = nodeDirectory.resolve("." + name + ".tmp");
+    try {
+      Files.createDirectories(nodeDirectory);
+      try (DataOutputStream segment = new DataOutputStream(Files.newOutputStream(tmp))) {
+        segment.writeInt(MAGIC);
+        segment.writeInt(VERSION);
+        segment.writeInt(keys.size());
+        records.writeTo(segment);
+      }
+      Files.move(tmp, nodeDirectory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      // Written with the next segment
+      for (String key : keys) {
+        Counter c = counters.get(key);
+        if (c != null) {
+          synchronized (c) {
+            c.changed = true;
+          }
+          changed.add(key);
+        }
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the segments written since the last ones read, of the other servers, and once of this
+   * server too, to restore its counts.
+   */
+  private void mergeSegments(long now) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    try (DirectoryStream<Path> nodes = Files.newDirectoryStream(directory)) {
+      for (Path nodeDirectory : nodes) {
+        String node = nodeDirectory.getFileName().toString();
+        boolean own = node.equals(nodeId);
+        if ((own && restored) || !Files.isDirectory(nodeDirectory)) {
+          continue;
+        }
+        long last = lastSegments.getOrDefault(node, -1L);
+        for (long segment : segments(nodeDirectory)) {
+          if (segment > last) {
+            readSegment(nodeDirectory, segment, node, own, now);
+            last = segment;
+          }
+        }
+        lastSegments.put(node, last);
+      }
+    }
+    restored = true;
+  }
+
+  private void readSegment(Path nodeDirectory, long segment, String node, boolean own, long now)
+      throws IOException {
+    Path path = nodeDirectory.resolve(String.format("%019d", segment) + SEGMENT_SUFFIX);
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        log.warn("Ignoring the segment {} of an unknown format", path);
+        return;
+      }
+      for (int n = in.readInt(); n > 0; n--) {
+        String key = in.readUTF();
+        long windowEnd = in.readLong();
+        long count = in.readLong();
+        if (windowEnd > now) {
+          merge(key, windowEnd, node, own, count);
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // Deleted once all its windows ended
+    }
+  }
+
+  private void merge(String key, long windowEnd, String node, boolean own, long count) {
+    while (true) {
+      Counter c = counters.computeIfAbsent(key, k -> new Counter());
+      synchronized (c) {
+        if (c.removed) {
+          continue;
+        }
+        if (windowEnd < c.windowEnd) {
+          return;
+        }
+        c.roll(windowEnd);
+        if (own) {
+          c.own = Math.max(c.own, count);
+          return;
+        }
+        long previous = c.peerCounts.getOrDefault(node, 0L);
+        if (count > previous) {
+          c.peerCounts.put(node, count);
+          c.peers += count - previous;
+        }
+        return;
+      }
+    }
+  }
+
+  /** Deletes the segments of this server written before the longest window ago. */
+  private void deleteSegments(long now) throws IOException {
+    Path nodeDirectory = directory.resolve(nodeId);
+    if (!Files.isDirectory(nodeDirectory)) {
+      return;
+    }
+    for (long segment : segments(nodeDirectory)) {
+      if (segment >= now - MAX_WINDOW_MILLIS - intervalMillis) {
+        break;
+      }
+      Files.deleteIfExists(nodeDirectory.resolve(String.format("%019d", segment) + SEGMENT_SUFFIX));
+    }
+  }
+
+  /** Forgets the counters of the windows which ended, unless they were not written yet. */
+  private void removeCounters(long now) {
+    for (Map.Entry<String, Counter> e : counters.entrySet()) {
+      Counter c = e.getValue();
+      synchronized (c) {
+        if (c.windowEnd <= now && !c.changed) {
+          c.removed = true;
+          counters.remove(e.getKey(), c);
+        }
+      }
+    }
+  }
+
+  /** Returns the segments of a server, in the order they were written. */
+  private static List<Long> segments(Path nodeDirectory) throws IOException {
+    List<Long> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(nodeDirectory, "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          // Not a segment
+        }
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  private static String localHostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (IOException e) {
+      log.warn("Cannot resolve the local host name, set configuration.nodeId", e);
+      return null;
+    }
+  }
+}
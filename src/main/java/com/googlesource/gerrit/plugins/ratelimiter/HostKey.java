@@ -0,0 +1,226 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.net.InetAddresses;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Key of a remote host.
+ *
+ * <p>The address of the remote host is parsed once and kept as the two longs of its IPv6 address.
+ * An IPv4 address is kept as its IPv4-mapped IPv6 address, {@code ::ffff:a.b.c.d}, so that it only
+ * uses the lower long. Remote hosts which are not an IP address literal, e.g. host names, keep
+ * their name instead.
+ */
+final class HostKey {
+  private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+  private final long high;
+  private final long low;
+  private final String name;
+
+  private HostKey(long high, long low, String name) {
+    this.high = high;
+    this.low = low;
+    this.name = name;
+  }
+
+  static HostKey parse(String remoteHost) {
+    long ipv4 = parseIPv4(remoteHost, 0, remoteHost.length());
+    if (ipv4 >= 0) {
+      return new HostKey(0, IPV4_MAPPED_PREFIX | ipv4, null);
+    }
+    HostKey ipv6 = parseIPv6(remoteHost);
+    return ipv6 != null ? ipv6 : new HostKey(0, 0, remoteHost);
+  }
+
+  /** Returns the key of the IP address kept as the given two longs. */
+  static HostKey ofAddress(long high, long low) {
+    return new HostKey(high, low, null);
+  }
+
+  /** Returns true if the remote host is an IP address, false if it is a name. */
+  boolean isAddress() {
+    return name == null;
+  }
+
+  /** Returns true if the remote host is an IPv4 address, whose address is the low int. */
+  boolean isIPv4() {
+    return high == 0 && (low & ~0xFFFFFFFFL) == IPV4_MAPPED_PREFIX;
+  }
+
+  long high() {
+    return high;
+  }
+
+  long low() {
+    return low;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof HostKey)) {
+      return false;
+    }
+    HostKey other = (HostKey) o;
+    return high == other.high
+        && low == other.low
+        && (name == null ? other.name == null : name.equals(other.name));
+  }
+
+  @Override
+  public int hashCode() {
+    if (name != null) {
+      return name.hashCode();
+    }
+    long h = (high * 0x9E3779B97F4A7C15L) ^ low;
+    h *= 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /** Formats the remote host back, IPv6 addresses in their RFC 5952 canonical form. */
+  @Override
+  public String toString() {
+    if (name != null) {
+      return name;
+    }
+    if (isIPv4()) {
+      return (low >>> 24 & 0xFF)
+          + "."
+          + (low >>> 16 & 0xFF)
+          + "."
+          + (low >>> 8 & 0xFF)
+          + "."
+          + (low & 0xFF);
+    }
+    byte[] address = new byte[16];
+    for (int i = 0; i < 8; i++) {
+      address[i] = (byte) (high >>> (56 - 8 * i));
+      address[8 + i] = (byte) (low >>> (56 - 8 * i));
+    }
+    try {
+      return InetAddresses.toAddrString(InetAddress.getByAddress(address));
+    } catch (UnknownHostException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Returns the IPv4 address in {@code s[from, to)}, or -1 if it is not a dotted quad. */
+  private static long parseIPv4(String s, int from, int to) {
+    long address = 0;
+    int octets = 0;
+    int i = from;
+    while (octets < 4) {
+      int value = 0;
+      int digits = 0;
+      while (i < to && digits < 4) {
+        char c = s.charAt(i);
+        if (c < '0' || c > '9') {
+          break;
+        }
+        value = value * 10 + c - '0';
+        digits++;
+        i++;
+      }
+      if (digits == 0 || digits > 3 || value > 255) {
+        return -1;
+      }
+      address = address << 8 | value;
+      octets++;
+      if (octets < 4) {
+        if (i >= to || s.charAt(i) != '.') {
+          return -1;
+        }
+        i++;
+      }
+    }
+    return i == to ? address : -1;
+  }
+
+  private static HostKey parseIPv6(String s) {
+    int from = 0;
+    int to = s.length();
+    if (to >= 2 && s.charAt(0) == '[' && s.charAt(to - 1) == ']') {
+      from++;
+      to--;
+    }
+    int[] groups = new int[8];
+    int count = 0;
+    int gap = -1;
+    int i = from;
+    if (i + 1 < to && s.charAt(i) == ':' && s.charAt(i + 1) == ':') {
+      gap = 0;
+      i += 2;
+    }
+    while (i < to) {
+      if (count == 8) {
+        return null;
+      }
+      int value = 0;
+      int j = i;
+      while (j < to && j - i <= 4 && Character.digit(s.charAt(j), 16) >= 0) {
+        value = value << 4 | Character.digit(s.charAt(j), 16);
+        j++;
+      }
+      if (j < to && s.charAt(j) == '.') {
+        // Embedded IPv4 address in the two last groups
+        long ipv4 = count <= 6 ? parseIPv4(s, i, to) : -1;
+        if (ipv4 < 0) {
+          return null;
+        }
+        groups[count++] = (int) (ipv4 >>> 16);
+        groups[count++] = (int) (ipv4 & 0xFFFF);
+        break;
+      }
+      if (j == i || j - i > 4) {
+        return null;
+      }
+      groups[count++] = value;
+      if (j == to) {
+        break;
+      }
+      if (s.charAt(j) != ':' || ++j == to) {
+        return null;
+      }
+      if (s.charAt(j) == ':') {
+        if (gap >= 0) {
+          return null;
+        }
+        gap = count;
+        j++;
+      }
+      i = j;
+    }
+    if (gap < 0 ? count != 8 : count > 7) {
+      return null;
+    }
+    if (gap >= 0) {
+      int tail = count - gap;
+      System.arraycopy(groups, gap, groups, 8 - tail, tail);
+      for (int k = gap; k < 8 - tail; k++) {
+        groups[k] = 0;
+      }
+    }
+    long high = 0;
+    long low = 0;
+    for (int k = 0; k < 4; k++) {
+      high = high << 16 | groups[k];
+      low = low << 16 | groups[k + 4];
+    }
+    return new HostKey(high, low, null);
+  }
+}
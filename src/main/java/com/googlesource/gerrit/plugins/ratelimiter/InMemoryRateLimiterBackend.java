@@ -1,6 +1,6 @@
-// Copyright (C) 2017 The Android Open Source Project
+// Copyright (C) 2026 The Android Open Source Project
 //
-// Licensed under the Apache License, Version 2.0 (the "License");
+// Licensed under the Apache License, Version 2.0 (the "License"),
 // you may not use this file except in compliance with the License.
 // You may obtain a copy of the License at
 //
@@ -14,11 +14,19 @@
 
 package com.googlesource.gerrit.plugins.ratelimiter;
 
-import static java.lang.annotation.RetentionPolicy.RUNTIME;
+/** Counts the permits in the memory of this server only, the default backend. */
+class InMemoryRateLimiterBackend implements RateLimiterBackend {
+  static final InMemoryRateLimiterBackend INSTANCE = new InMemoryRateLimiterBackend();
 
-import com.google.inject.BindingAnnotation;
-import java.lang.annotation.Retention;
+  private InMemoryRateLimiterBackend() {}
 
-@Retention(RUNTIME)
-@BindingAnnotation
-@interface RateLimitExecutor {}
+  @Override
+  public RateLimiter share(String key, RateLimiter limiter) {
+    return limiter;
+  }
+
+  @Override
+  public boolean shares(RateLimiter limiter) {
+    return false;
+  }
+}
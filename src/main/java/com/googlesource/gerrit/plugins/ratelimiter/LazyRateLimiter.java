@@ -0,0 +1,182 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed window rate limiter which replenishes its permits lazily.
+ *
+ * <p>Instead of scheduling a replenish task per limiter, the number of the current window since the
+ * creation of the limiter is kept and the permits are replenished by the first call observing that
+ * the window has elapsed.
+ *
+ * <p>The window number and the used permits are packed into a single {@code long} updated by
+ * compare-and-set, so acquiring a permit never blocks and, once the permits of the window are
+ * exhausted, is rejected after a single read.
+ */
+class LazyRateLimiter implements RateLimiter {
+  interface Factory {
+    LazyRateLimiter create(
+        @Assisted("permits") Integer permits,
+        @Assisted("timeLapse") Integer timeLapse,
+        String rateLimitType);
+  }
+
+  private static final VarHandle STATE;
+
+  static {
+    try {
+      STATE = MethodHandles.lookup().findVarHandle(LazyRateLimiter.class, "state", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final Ticker ticker;
+  private final int maxPermits;
+  private final int timeLapse;
+  private final long windowNanos;
+  private final String rateLimitType;
+  private final long origin;
+
+  /** Window number in the upper 32 bits, used permits in the lower 32 bits. */
+  private volatile long state;
+
+  @Inject
+  LazyRateLimiter(
+      @Assisted("permits") Integer permits,
+      @Assisted("timeLapse") Integer timeLapse,
+      @Assisted String rateLimitType) {
+    this(Ticker.systemTicker(), permits, timeLapse, rateLimitType);
+  }
+
+  @VisibleForTesting
+  LazyRateLimiter(Ticker ticker, int permits, int timeLapse, String rateLimitType) {
+    this.ticker = ticker;
+    this.maxPermits = permits;
+    this.timeLapse = timeLapse;
+    this.windowNanos = TimeUnit.MINUTES.toNanos(timeLapse);
+    this.rateLimitType = rateLimitType;
+    this.origin = ticker.read();
+  }
+
+  @Override
+  public int permitsPerHour() {
+    return maxPermits;
+  }
+
+  @Override
+  public boolean acquirePermit() {
+    return tryAcquirePermit() != NO_PERMIT;
+  }
+
+  @Override
+  public int tryAcquirePermits(int permits) {
+    int window = currentWindow();
+    while (true) {
+      long current = state;
+      int currentWindow = window(current);
+      int used = currentWindow >= window ? used(current) : 0;
+      if (permits > maxPermits - used) {
+        return NO_PERMIT;
+      }
+      if (STATE.compareAndSet(
+          this, current, pack(Math.max(currentWindow, window), used + permits))) {
+        return used + permits;
+      }
+    }
+  }
+
+  @Override
+  public int availablePermits() {
+    return maxPermits - usedPermits();
+  }
+
+  @Override
+  public int usedPermits() {
+    long current = state;
+    return window(current) >= currentWindow() ? used(current) : 0;
+  }
+
+  @Override
+  public long remainingTime(TimeUnit timeUnit) {
+    long windowEnd = origin + (currentWindow() + 1L) * windowNanos;
+    return timeUnit.convert(windowEnd - ticker.read(), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void replenishPermits() {
+    while (true) {
+      long current = state;
+      if (STATE.compareAndSet(this, current, pack(window(current), 0))) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public String getType() {
+    return rateLimitType;
+  }
+
+  @Override
+  public Optional<Integer> getTimeLapse() {
+    return Optional.of(timeLapse);
+  }
+
+  @Override
+  public Optional<Integer> getWarnLimit() {
+    return Optional.empty();
+  }
+
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return RateLimitAlgorithm.FIXED_WINDOW;
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return Optional.empty();
+  }
+
+  @Override
+  public void close() {
+    // nothing to release, there is no replenish task
+  }
+
+  private int currentWindow() {
+    return (int) ((ticker.read() - origin) / windowNanos);
+  }
+
+  private static long pack(int window, int used) {
+    return ((long) window << 32) | (used & 0xFFFFFFFFL);
+  }
+
+  private static int window(long state) {
+    return (int) (state >>> 32);
+  }
+
+  private static int used(long state) {
+    return (int) state;
+  }
+}
@@ -58,6 +58,13 @@ final class ListCommand extends SshCommand {
       stdout.println(DASHED_LINE);
       stdout.println(rateLimiterProcessing.listPermits());
       stdout.println(DASHED_LINE);
+      rateLimiterProcessing
+          .remoteHostTableOccupancy()
+          .ifPresent(
+              occupancy -> {
+                stdout.println(occupancy);
+                stdout.println(DASHED_LINE);
+              });
     } catch (Exception e) {
       throw die(e);
     }
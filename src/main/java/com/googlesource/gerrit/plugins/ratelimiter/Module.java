@@ -14,46 +14,65 @@
 
 package com.googlesource.gerrit.plugins.ratelimiter;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
+import com.google.common.base.Ticker;
+import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.git.validators.UploadValidationListener;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.ProvisionException;
 import com.google.inject.Singleton;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
 import com.google.inject.internal.UniqueAnnotations;
 import com.google.inject.name.Named;
 import java.util.Optional;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 class Module extends AbstractModule {
   static final String UPLOAD_PACK_PER_HOUR = "upload_pack_per_hour";
   static final String DEFAULT_RATE_LIMIT_TYPE = "upload pack";
   static final Integer DEFAULT_LIMIT = Integer.MAX_VALUE;
+  static final int DEFAULT_REMOTE_HOST_CACHE_SIZE = 100000;
 
   @Override
   protected void configure() {
     DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(RateLimiterListener.class);
     DynamicSet.bind(binder(), UploadValidationListener.class).to(RateLimitUploadPack.class);
     bind(Configuration.class).asEagerSingleton();
-    bind(ScheduledExecutorService.class)
-        .annotatedWith(RateLimitExecutor.class)
-        .toProvider(RateLimitExecutorProvider.class);
+    bind(RateLimitEmailTemplates.class).asEagerSingleton();
     bind(LifecycleListener.class)
         .annotatedWith(UniqueAnnotations.create())
-        .to(RateLimitExecutorProvider.class);
+        .to(RateLimitTimer.class);
+    bind(RateLimiterMetrics.class).asEagerSingleton();
     bind(LifecycleListener.class)
         .annotatedWith(UniqueAnnotations.create())
         .to(RateLimiterStatsLog.class);
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(RateLimiterLoadingQueue.class);
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(RateLimitNotifier.class);
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(SharedRateLimiterBackend.class);
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(GossipRateLimiterBackend.class);
+    // Last, so that the used permits are written before the other listeners stop
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(PermitsSnapshot.class);
     install(new FactoryModuleBuilder().build(PeriodicRateLimiter.Factory.class));
+    install(new FactoryModuleBuilder().build(LazyRateLimiter.Factory.class));
+    install(new FactoryModuleBuilder().build(TokenBucketRateLimiter.Factory.class));
+    install(new FactoryModuleBuilder().build(SlidingWindowRateLimiter.Factory.class));
+    install(new FactoryModuleBuilder().build(GcraRateLimiter.Factory.class));
     install(new FactoryModuleBuilder().build(WarningRateLimiter.Factory.class));
     install(new FactoryModuleBuilder().build(WarningUnlimitedRateLimiter.Factory.class));
     install(new FactoryModuleBuilder().build(RateLimitReachedSender.Factory.class));
@@ -62,38 +81,134 @@ class Module extends AbstractModule {
   @Provides
   @Named(UPLOAD_PACK_PER_HOUR)
   @Singleton
-  LoadingCache<String, RateLimiter> getUploadPackPerHourCache(Provider<RateLimiterLoader> loader) {
-    return CacheBuilder.newBuilder()
-        .expireAfterAccess(1, TimeUnit.HOURS)
-        .removalListener(
-            (RemovalListener<String, RateLimiter>)
-                removalNotification -> removalNotification.getValue().close())
-        .build(loader.get());
+  RateLimiterRegistry<HostKey> getUploadPackPerHourRegistry(
+      Provider<RateLimiterLoader> loader,
+      Configuration configuration,
+      PermitsSnapshot permits,
+      RateLimitTimer timer,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    RateLimiterRegistry<HostKey> registry =
+        new RateLimiterRegistry<>(
+            remoteHost -> permits.restore(remoteHost, loader.get().loadRemoteHost(remoteHost)),
+            configuration::generation,
+            (remoteHost, limiter) -> loader.get().isValidRemoteHost(limiter),
+            Ticker.systemTicker(),
+            pluginConfigFactory
+                .getGlobalPluginConfig(pluginName)
+                .getInt(
+                    "configuration", null, "remoteHostCacheSize", DEFAULT_REMOTE_HOST_CACHE_SIZE));
+    // Idle entries are only evicted in the background, never by the requests
+    timer.scheduleAtFixedRate(registry::cleanUp, 1, 1, TimeUnit.MINUTES);
+    return registry;
+  }
+
+  @Provides
+  @Singleton
+  RateLimiterBackend getBackend(
+      Provider<SharedRateLimiterBackend> sharedBackend,
+      Provider<GossipRateLimiterBackend> gossipBackend,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    String backend =
+        pluginConfigFactory
+            .getGlobalPluginConfig(pluginName)
+            .getString("configuration", null, "backend");
+    if (backend == null || backend.equalsIgnoreCase("memory")) {
+      return InMemoryRateLimiterBackend.INSTANCE;
+    }
+    if (backend.equalsIgnoreCase("directory")) {
+      GossipRateLimiterBackend gossip = gossipBackend.get();
+      if (gossip.directory() == null) {
+        throw new ProvisionException(
+            "Invalid configuration, the directory backend requires configuration.sharedDirectory");
+      }
+      if (gossip.nodeId() == null || !gossip.nodeId().matches("[A-Za-z0-9._-]+")) {
+        throw new ProvisionException(
+            String.format(
+                "Invalid configuration, invalid configuration.nodeId: %s", gossip.nodeId()));
+      }
+      return gossip;
+    }
+    if (!backend.equalsIgnoreCase("shared")) {
+      throw new ProvisionException(
+          String.format(
+              "Invalid configuration, unsupported backend: %s, expected memory, shared or"
+                  + " directory",
+              backend));
+    }
+    SharedRateLimiterBackend shared = sharedBackend.get();
+    if (shared.address() == null) {
+      throw new ProvisionException(
+          "Invalid configuration, the shared backend requires configuration.sharedBackend");
+    }
+    try {
+      SharedCounterClient.parseAddress(shared.address());
+    } catch (IllegalArgumentException e) {
+      throw new ProvisionException(
+          String.format(
+              "Invalid configuration, invalid configuration.sharedBackend: %s, expected host:port",
+              shared.address()),
+          e);
+    }
+    return shared;
   }
 
-  static class RateLimiterLoader extends CacheLoader<String, RateLimiter> {
+  static class RateLimiterLoader {
     private final RateLimitFinder finder;
+    private final Configuration configuration;
+    private final RateLimiterBackend backend;
     private final PeriodicRateLimiter.Factory periodicRateLimiterFactory;
+    private final LazyRateLimiter.Factory lazyRateLimiterFactory;
+    private final TokenBucketRateLimiter.Factory tokenBucketRateLimiterFactory;
+    private final SlidingWindowRateLimiter.Factory slidingWindowRateLimiterFactory;
+    private final GcraRateLimiter.Factory gcraRateLimiterFactory;
     private final WarningRateLimiter.Factory warningRateLimiterFactory;
     private final WarningUnlimitedRateLimiter.Factory warningUnlimitedRateLimiterFactory;
 
     @Inject
     RateLimiterLoader(
         RateLimitFinder finder,
+        Configuration configuration,
+        RateLimiterBackend backend,
         PeriodicRateLimiter.Factory periodicRateLimiterFactory,
+        LazyRateLimiter.Factory lazyRateLimiterFactory,
+        TokenBucketRateLimiter.Factory tokenBucketRateLimiterFactory,
+        SlidingWindowRateLimiter.Factory slidingWindowRateLimiterFactory,
+        GcraRateLimiter.Factory gcraRateLimiterFactory,
         WarningRateLimiter.Factory warningRateLimiterFactory,
         WarningUnlimitedRateLimiter.Factory warningUnlimitedRateLimiterFactory) {
       this.finder = finder;
+      this.configuration = configuration;
+      this.backend = backend;
       this.periodicRateLimiterFactory = periodicRateLimiterFactory;
+      this.lazyRateLimiterFactory = lazyRateLimiterFactory;
+      this.tokenBucketRateLimiterFactory = tokenBucketRateLimiterFactory;
+      this.slidingWindowRateLimiterFactory = slidingWindowRateLimiterFactory;
+      this.gcraRateLimiterFactory = gcraRateLimiterFactory;
       this.warningRateLimiterFactory = warningRateLimiterFactory;
       this.warningUnlimitedRateLimiterFactory = warningUnlimitedRateLimiterFactory;
     }
 
-    @Override
-    public RateLimiter load(String key) {
-      Optional<RateLimit> limit = finder.find(RateLimitType.UPLOAD_PACK_PER_HOUR, key);
-      Optional<RateLimit> warn = finder.find(RateLimitType.UPLOAD_PACK_PER_HOUR_WARN, key);
-      Optional<RateLimit> timeLapse = finder.find(RateLimitType.TIME_LAPSE_IN_MINUTES, key);
+    /** Creates the limiter of the user with the given account id. */
+    RateLimiter load(String key) {
+      return load(key, finder.findPolicy(key));
+    }
+
+    /** Creates the limiter used until the limits of the user with the given account id resolve. */
+    RateLimiter loadProvisional(String key) {
+      return load(key, finder.findProvisionalPolicy());
+    }
+
+    /** Creates the limiter of a remote host, which has the limits of the anonymous users. */
+    RateLimiter loadRemoteHost(HostKey remoteHost) {
+      return load(remoteHost.toString(), finder.findAnonymousPolicy());
+    }
+
+    private RateLimiter load(String key, RateLimitPolicy policy) {
+      Optional<RateLimit> limit = policy.get(RateLimitType.UPLOAD_PACK_PER_HOUR);
+      Optional<RateLimit> warn = policy.get(RateLimitType.UPLOAD_PACK_PER_HOUR_WARN);
+      Optional<RateLimit> timeLapse = policy.get(RateLimitType.TIME_LAPSE_IN_MINUTES);
       if (!limit.isPresent() && !warn.isPresent()) {
         return UnlimitedRateLimiter.INSTANCE;
       }
@@ -113,8 +228,30 @@ class Module extends AbstractModule {
         rateLimitType = timeLapse.get().getType().getLimitType();
       }
 
-      RateLimiter rateLimiter =
-          periodicRateLimiterFactory.create(myLimit, effectiveTimeLapse, rateLimitType);
+      RateLimiter rateLimiter;
+      switch (getAlgorithm(limit, policy)) {
+        case TOKEN_BUCKET:
+          rateLimiter =
+              tokenBucketRateLimiterFactory.create(
+                  myLimit, effectiveTimeLapse, getBurst(policy, myLimit), rateLimitType);
+          break;
+        case GCRA:
+          rateLimiter =
+              gcraRateLimiterFactory.create(
+                  myLimit, effectiveTimeLapse, getBurst(policy, myLimit), rateLimitType);
+          break;
+        case SLIDING_WINDOW:
+          rateLimiter =
+              slidingWindowRateLimiterFactory.create(myLimit, effectiveTimeLapse, rateLimitType);
+          break;
+        case FIXED_WINDOW:
+        default:
+          rateLimiter =
+              configuration.isLazyReplenishment()
+                  ? lazyRateLimiterFactory.create(myLimit, effectiveTimeLapse, rateLimitType)
+                  : periodicRateLimiterFactory.create(myLimit, effectiveTimeLapse, rateLimitType);
+      }
+      rateLimiter = backend.share(key, rateLimiter);
 
       if (warn.isPresent()) {
         if (limit.isPresent()) {
@@ -127,9 +264,17 @@ class Module extends AbstractModule {
     }
 
     boolean isValidKey(String key, RateLimiter limiter) {
-      Optional<RateLimit> limit = finder.find(RateLimitType.UPLOAD_PACK_PER_HOUR, key);
-      Optional<RateLimit> warn = finder.find(RateLimitType.UPLOAD_PACK_PER_HOUR_WARN, key);
-      Optional<RateLimit> timeLapse = finder.find(RateLimitType.TIME_LAPSE_IN_MINUTES, key);
+      return isValid(limiter, finder.findPolicy(key));
+    }
+
+    boolean isValidRemoteHost(RateLimiter limiter) {
+      return isValid(limiter, finder.findAnonymousPolicy());
+    }
+
+    private boolean isValid(RateLimiter limiter, RateLimitPolicy policy) {
+      Optional<RateLimit> limit = policy.get(RateLimitType.UPLOAD_PACK_PER_HOUR);
+      Optional<RateLimit> warn = policy.get(RateLimitType.UPLOAD_PACK_PER_HOUR_WARN);
+      Optional<RateLimit> timeLapse = policy.get(RateLimitType.TIME_LAPSE_IN_MINUTES);
 
       int tableLimit = limit.map(RateLimit::getRatePerHour).orElse(DEFAULT_LIMIT);
       int tableTimeLapse =
@@ -149,6 +294,15 @@ class Module extends AbstractModule {
           != tableTimeLapse) {
         return false;
       }
+      // Check if two limiters use the same algorithm
+      if (limiter.getAlgorithm() != getAlgorithm(limit, policy)) {
+        return false;
+      }
+      // Check if two limiters allowing bursts have the same burst
+      Optional<Integer> burst = limiter.getBurst();
+      if (burst.isPresent() && burst.get() != getBurst(policy, tableLimit)) {
+        return false;
+      }
       // Check if two limiters have same warnLimit
       if (limiter instanceof WarningRateLimiter || limiter instanceof WarningUnlimitedRateLimiter) {
         Optional<Integer> warningLimit = limiter.getWarnLimit();
@@ -156,5 +310,22 @@ class Module extends AbstractModule {
       }
       return true;
     }
+
+    /** Only limiters enforcing a limit use another algorithm than the fixed window. */
+    private static RateLimitAlgorithm getAlgorithm(
+        Optional<RateLimit> limit, RateLimitPolicy policy) {
+      return limit.isPresent()
+          ? policy.getAlgorithm().orElse(RateLimitAlgorithm.FIXED_WINDOW)
+          : RateLimitAlgorithm.FIXED_WINDOW;
+    }
+
+    /** Returns the configured burst, which defaults to the limit. */
+    private static int getBurst(RateLimitPolicy policy, int limit) {
+      return policy
+          .get(RateLimitType.BURST)
+          .map(RateLimit::getRatePerHour)
+          .filter(burst -> burst > 0)
+          .orElse(limit);
+    }
   }
 }
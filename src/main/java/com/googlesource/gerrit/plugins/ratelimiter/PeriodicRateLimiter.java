@@ -18,21 +18,17 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import java.util.Optional;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 class PeriodicRateLimiter implements RateLimiter {
   static final int DEFAULT_TIME_LAPSE_IN_MINUTES = 60;
 
-  private final Semaphore semaphore;
   private final int maxPermits;
   private final AtomicInteger usedPermits;
   private final String rateLimitType;
   private final int timeLapse;
-  private ScheduledFuture<?> replenishTask;
+  private RateLimitTimer.Timeout replenishTask;
 
   interface Factory {
     PeriodicRateLimiter create(
@@ -43,22 +39,20 @@ class PeriodicRateLimiter implements RateLimiter {
 
   @Inject
   PeriodicRateLimiter(
-      @RateLimitExecutor ScheduledExecutorService executor,
+      RateLimitTimer timer,
       @Assisted("permits") Integer permits,
       @Assisted("timeLapse") Integer timeLapse,
       @Assisted String rateLimitType) {
-    this.semaphore = new Semaphore(permits);
     this.maxPermits = permits;
     this.usedPermits = new AtomicInteger();
     this.rateLimitType = rateLimitType;
     this.timeLapse = timeLapse;
     this.replenishTask =
-        executor.scheduleAtFixedRate(
-            this::replenishPermits, timeLapse, timeLapse, TimeUnit.MINUTES);
+        timer.scheduleAtFixedRate(this::replenishPermits, timeLapse, timeLapse, TimeUnit.MINUTES);
   }
 
   @VisibleForTesting
-  void setReplenishTask(ScheduledFuture<?> replenishTask) {
+  void setReplenishTask(RateLimitTimer.Timeout replenishTask) {
     this.replenishTask = replenishTask;
   }
 
@@ -68,17 +62,26 @@ class PeriodicRateLimiter implements RateLimiter {
   }
 
   @Override
-  public synchronized boolean acquirePermit() {
-    boolean permit = semaphore.tryAcquire();
-    if (permit) {
-      usedPermits.getAndIncrement();
+  public boolean acquirePermit() {
+    return tryAcquirePermit() != NO_PERMIT;
+  }
+
+  @Override
+  public int tryAcquirePermits(int permits) {
+    while (true) {
+      int used = usedPermits.get();
+      if (permits > maxPermits - used) {
+        return NO_PERMIT;
+      }
+      if (usedPermits.compareAndSet(used, used + permits)) {
+        return used + permits;
+      }
     }
-    return permit;
   }
 
   @Override
   public int availablePermits() {
-    return semaphore.availablePermits();
+    return maxPermits - usedPermits.get();
   }
 
   @Override
@@ -92,8 +95,7 @@ class PeriodicRateLimiter implements RateLimiter {
   }
 
   @Override
-  public synchronized void replenishPermits() {
-    semaphore.release(usedPermits());
+  public void replenishPermits() {
     usedPermits.set(0);
   }
 
@@ -112,8 +114,18 @@ class PeriodicRateLimiter implements RateLimiter {
     return Optional.empty();
   }
 
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return RateLimitAlgorithm.FIXED_WINDOW;
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return Optional.empty();
+  }
+
   @Override
   public void close() {
-    replenishTask.cancel(true);
+    replenishTask.cancel();
   }
 }
@@ -0,0 +1,86 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.inject.ProvisionException;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Number of permits a fetch costs, from the size of its negotiation: a base cost, plus a cost per
+ * wanted object, multiplied for the full clones, which offer no object. Every fetch costs a single
+ * permit by default.
+ */
+final class PermitCost {
+  static final PermitCost ONE = new PermitCost(1, 0, 1);
+
+  private final double baseCost;
+  private final double costPerWant;
+  private final double fullCloneMultiplier;
+
+  PermitCost(double baseCost, double costPerWant, double fullCloneMultiplier) {
+    this.baseCost = baseCost;
+    this.costPerWant = costPerWant;
+    this.fullCloneMultiplier = fullCloneMultiplier;
+  }
+
+  /** Parses the cost of the fetches from the {@code configuration} section. */
+  static PermitCost parse(Config config) {
+    PermitCost cost =
+        new PermitCost(
+            parse(config, "permitBaseCost", 1),
+            parse(config, "permitCostPerWant", 0),
+            parse(config, "fullClonePermitMultiplier", 1));
+    return cost.equalsOne() ? ONE : cost;
+  }
+
+  /**
+   * Returns the number of permits of a fetch, rounded and at least 1.
+   *
+   * @param wants number of objects wanted by the fetch
+   * @param cntOffered number of objects the client offered to have, 0 for a full clone
+   */
+  int cost(int wants, int cntOffered) {
+    if (this == ONE) {
+      return 1;
+    }
+    double cost = baseCost + costPerWant * wants;
+    if (cntOffered == 0) {
+      cost *= fullCloneMultiplier;
+    }
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(cost)));
+  }
+
+  private boolean equalsOne() {
+    return baseCost == 1 && costPerWant == 0 && fullCloneMultiplier == 1;
+  }
+
+  private static double parse(Config config, String name, double defaultValue) {
+    String value = config.getString("configuration", null, name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      double parsed = Double.parseDouble(value.trim());
+      if (parsed >= 0 && !Double.isInfinite(parsed)) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new ProvisionException(
+        String.format(
+            "Invalid configuration, '%s' for 'configuration.%s' is not a valid cost", value, name));
+  }
+}
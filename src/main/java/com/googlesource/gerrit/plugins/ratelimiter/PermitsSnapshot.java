@@ -0,0 +1,511 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.googlesource.gerrit.plugins.ratelimiter.Module.UPLOAD_PACK_PER_HOUR;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the permits used by the users and remote hosts across restarts, when {@code
+ * configuration.persistPermits} is set.
+ *
+ * <p>On stop, the used permits of every limiter are written with the time their period ends to a
+ * memory-mapped file in the data directory of the plugin, in sorted fixed-size records: the
+ * accounts by account id, the IPv4 remote hosts by address, then the IPv6 ones, including the
+ * remote hosts of the {@link RemoteHostTable}. The remote hosts known by name follow, through an
+ * index of their records sorted by name. On start, the file is mapped back, and the limiter of a
+ * user or remote host is charged its permits when it is loaded, unless its period ended meanwhile.
+ * Finding the permits of a key is a binary search in the mapped file, so that starting does not
+ * depend on the number of keys, and a key is only restored once.
+ *
+ * <p>The period of a limiter starts over at the restart, so that it is only charged the part of its
+ * permits matching the time left in the period it used them in: a user blocked shortly before the
+ * end of a period is not blocked for another full period. The token bucket and GCRA limiters are
+ * charged the permits they would not have been given back by then.
+ */
+@Singleton
+class PermitsSnapshot implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(PermitsSnapshot.class);
+
+  static final String FILE_NAME = "permits.snapshot";
+
+  private static final int MAGIC = 0x524c5053;
+  private static final int VERSION = 2;
+
+  // Header: magic, version, number of accounts, IPv4, IPv6 and named hosts, size of the records of
+  // the named hosts, end of the last period
+  private static final int HEADER_SIZE = 36;
+  // Account or IPv4 host: account id or address, used permits, end of the period in milliseconds
+  private static final int RECORD_SIZE = 16;
+  // IPv6 host: the two longs of the address, used permits, end of the period
+  private static final int IPV6_RECORD_SIZE = 28;
+  // Named host: offset of its record in the index, the record holding the length of the UTF-8 name,
+  // the name, used permits and end of the period
+  private static final int NAME_INDEX_SIZE = 4;
+  private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+  private final Path file;
+  private final boolean enabled;
+  private final Supplier<Map<Integer, RateLimiter>> accountLimiters;
+  private final Supplier<Map<HostKey, RateLimiter>> hostLimiters;
+  private final LongSupplier clock;
+
+  /** The restored file, mapped privately so that restored records are cleared in memory only. */
+  private volatile ByteBuffer restored;
+
+  private int accounts;
+  private int ipv4Hosts;
+  private int ipv6Hosts;
+  private int namedHosts;
+  private long lastPeriodEnd;
+
+  @Inject
+  PermitsSnapshot(
+      @PluginData Path dataDir,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName,
+      Provider<AccountRateLimiters> accountRateLimiters,
+      @Named(UPLOAD_PACK_PER_HOUR) Provider<RateLimiterRegistry<HostKey>> uploadPackPerHour,
+      Provider<RemoteHostTable> remoteHostTable) {
+    this(
+        dataDir.resolve(FILE_NAME),
+        pluginConfigFactory
+            .getGlobalPluginConfig(pluginName)
+            .getBoolean("configuration", null, "persistPermits", false),
+        () -> accountRateLimiters.get().snapshot(),
+        () -> {
+          Map<HostKey, RateLimiter> hosts = new HashMap<>(uploadPackPerHour.get().snapshot());
+          hosts.putAll(remoteHostTable.get().snapshot());
+          return hosts;
+        },
+        System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  PermitsSnapshot(
+      Path file,
+      boolean enabled,
+      Supplier<Map<Integer, RateLimiter>> accountLimiters,
+      Supplier<Map<HostKey, RateLimiter>> hostLimiters,
+      LongSupplier clock) {
+    this.file = file;
+    this.enabled = enabled;
+    this.accountLimiters = accountLimiters;
+    this.hostLimiters = hostLimiters;
+    this.clock = clock;
+  }
+
+  @Override
+  public void start() {
+    if (!enabled || !Files.exists(file)) {
+      return;
+    }
+    // A private mapping needs a writable channel, yet never writes to the file
+    try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+      if (buf.capacity() < HEADER_SIZE
+          || buf.getInt(0) != MAGIC
+          || buf.getInt(4) != VERSION
+          || buf.capacity()
+              != HEADER_SIZE
+                  + ((long) buf.getInt(8) + buf.getInt(12)) * RECORD_SIZE
+                  + (long) buf.getInt(16) * IPV6_RECORD_SIZE
+                  + (long) buf.getInt(20) * NAME_INDEX_SIZE
+                  + buf.getInt(24)) {
+        log.warn("Ignoring the invalid snapshot of the used permits {}", file);
+      } else {
+        synchronized (this) {
+          accounts = buf.getInt(8);
+          ipv4Hosts = buf.getInt(12);
+          ipv6Hosts = buf.getInt(16);
+          namedHosts = buf.getInt(20);
+          lastPeriodEnd = buf.getLong(28);
+          restored = buf;
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Cannot read the snapshot of the used permits {}", file, e);
+    }
+    try {
+      // Restored once: a snapshot left behind by a crash is older than the permits it holds
+      Files.delete(file);
+    } catch (IOException e) {
+      log.warn("Cannot delete the snapshot of the used permits {}", file, e);
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      write();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Cannot write the snapshot of the used permits {}", file, e);
+    }
+  }
+
+  /** Charges the limiter of the account the permits it used before the restart, once. */
+  RateLimiter restore(int accountId, RateLimiter limiter) {
+    if (restored == null) {
+      return limiter;
+    }
+    int used;
+    synchronized (this) {
+      if (!isRestoring()) {
+        return limiter;
+      }
+      used = take(find(HEADER_SIZE, accounts, accountId), limiter);
+    }
+    if (used > 0) {
+      limiter.restoreUsedPermits(used);
+    }
+    return limiter;
+  }
+
+  /** Returns true until the permits of the snapshot are all restored or their period ended. */
+  boolean hasPermitsToRestore() {
+    return restored != null;
+  }
+
+  /** Charges the limiter of the remote host the permits it used before the restart, once. */
+  RateLimiter restore(HostKey remoteHost, RateLimiter limiter) {
+    if (restored == null) {
+      return limiter;
+    }
+    int used;
+    synchronized (this) {
+      if (!isRestoring()) {
+        return limiter;
+      }
+      int ipv4Section = HEADER_SIZE + accounts * RECORD_SIZE;
+      int ipv6Section = ipv4Section + ipv4Hosts * RECORD_SIZE;
+      if (!remoteHost.isAddress()) {
+        int namesSection = ipv6Section + ipv6Hosts * IPV6_RECORD_SIZE;
+        used = take(findName(namesSection, remoteHost.toString()), limiter);
+      } else if (remoteHost.isIPv4()) {
+        used = take(find(ipv4Section, ipv4Hosts, (int) remoteHost.low()), limiter);
+      } else {
+        used = take(findIPv6(ipv6Section, remoteHost), limiter);
+      }
+    }
+    if (used > 0) {
+      limiter.restoreUsedPermits(used);
+    }
+    return limiter;
+  }
+
+  /** Returns true while the snapshot holds permits of a period which did not end yet. */
+  private boolean isRestoring() {
+    if (restored != null && clock.getAsLong() >= lastPeriodEnd) {
+      // Release the mapping
+      restored = null;
+    }
+    return restored != null;
+  }
+
+  /** Returns the offset of the record of the key in the section, or -1 if there is none. */
+  private int find(int section, int count, int key) {
+    int lo = 0;
+    int hi = count - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = Integer.compareUnsigned(restored.getInt(section + mid * RECORD_SIZE), key);
+      if (c < 0) {
+        lo = mid + 1;
+      } else if (c > 0) {
+        hi = mid - 1;
+      } else {
+        return section + mid * RECORD_SIZE;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the offset of the record of the IPv6 host, or -1 if there is none. */
+  private int findIPv6(int section, HostKey remoteHost) {
+    int lo = 0;
+    int hi = ipv6Hosts - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int r = section + mid * IPV6_RECORD_SIZE;
+      int c = compare(restored.getLong(r), restored.getLong(r + 8), remoteHost);
+      if (c < 0) {
+        lo = mid + 1;
+      } else if (c > 0) {
+        hi = mid - 1;
+      } else {
+        // Laid out as the other records from the used permits on
+        return r + 12;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the offset of the record of the host name, or -1 if there is none. */
+  private int findName(int section, String name) {
+    byte[] key = name.getBytes(UTF_8);
+    int lo = 0;
+    int hi = namedHosts - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int r = restored.getInt(section + mid * NAME_INDEX_SIZE);
+      int length = restored.getShort(r) & MAX_NAME_LENGTH;
+      int c = compareName(r + 2, length, key);
+      if (c < 0) {
+        lo = mid + 1;
+      } else if (c > 0) {
+        hi = mid - 1;
+      } else {
+        // Laid out as the other records from the used permits on
+        return r + 2 + length - 4;
+      }
+    }
+    return -1;
+  }
+
+  /** Compares the UTF-8 name at the given offset to the key, as unsigned bytes. */
+  private int compareName(int offset, int length, byte[] key) {
+    for (int i = 0; i < Math.min(length, key.length); i++) {
+      int c = UnsignedBytes.compare(restored.get(offset + i), key[i]);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return Integer.compare(length, key.length);
+  }
+
+  /**
+   * Returns the used permits of the record at the given offset still charged to the limiter, and
+   * clears them.
+   */
+  private int take(int record, RateLimiter limiter) {
+    if (record < 0) {
+      return 0;
+    }
+    int used = restored.getInt(record + 4);
+    restored.putInt(record + 4, 0);
+    return remainingPermits(limiter, used, restored.getLong(record + 8), clock.getAsLong());
+  }
+
+  /**
+   * Returns the permits to charge to a limiter starting a new period now, out of the permits it
+   * used in a period ending at the given time: the part of them matching the time left in that
+   * period, or the permits a token bucket or GCRA limiter would not have been given back by then.
+   */
+  @VisibleForTesting
+  static int remainingPermits(RateLimiter limiter, int used, long periodEnd, long now) {
+    long left = periodEnd - now;
+    if (left <= 0) {
+      return 0;
+    }
+    long period =
+        TimeUnit.MINUTES.toMillis(
+            limiter.getTimeLapse().orElse(PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES));
+    if (left >= period) {
+      return used;
+    }
+    RateLimitAlgorithm algorithm = limiter.getAlgorithm();
+    long permits =
+        algorithm == RateLimitAlgorithm.TOKEN_BUCKET || algorithm == RateLimitAlgorithm.GCRA
+            ? limiter.permitsPerHour()
+            : used;
+    // Rounded up, so that a permit used shortly before the restart is charged
+    return (int) Math.min(used, (permits * left + period - 1) / period);
+  }
+
+  private void write() throws IOException {
+    long now = clock.getAsLong();
+    Map<Integer, RateLimiter> accountsByIds = accountLimiters.get();
+    Records accounts = new Records(accountsByIds.size());
+    accountsByIds.forEach((accountId, limiter) -> accounts.add(accountId, limiter, now));
+    Map<HostKey, RateLimiter> hosts = hostLimiters.get();
+    Records ipv4 = new Records(hosts.size());
+    List<HostKey> ipv6 = new ArrayList<>();
+    Records ipv6Records = new Records(hosts.size());
+    List<byte[]> names = new ArrayList<>();
+    Records namedRecords = new Records(hosts.size());
+    hosts.forEach(
+        (remoteHost, limiter) -> {
+          if (remoteHost.isIPv4()) {
+            ipv4.add((int) remoteHost.low(), limiter, now);
+          } else if (remoteHost.isAddress()) {
+            if (ipv6Records.add(ipv6.size(), limiter, now)) {
+              ipv6.add(remoteHost);
+            }
+          } else {
+            byte[] name = remoteHost.toString().getBytes(UTF_8);
+            if (name.length <= MAX_NAME_LENGTH && namedRecords.add(names.size(), limiter, now)) {
+              names.add(name);
+            }
+          }
+        });
+    accounts.sort();
+    ipv4.sort();
+    // Rare enough not to need a primitive sort
+    Integer[] ipv6Order = new Integer[ipv6Records.size];
+    for (int i = 0; i < ipv6Order.length; i++) {
+      ipv6Order[i] = (int) ipv6Records.order[i];
+    }
+    Arrays.sort(ipv6Order, (i, j) -> compare(ipv6.get(i).high(), ipv6.get(i).low(), ipv6.get(j)));
+    Integer[] nameOrder = new Integer[namedRecords.size];
+    int namesSize = 0;
+    for (int i = 0; i < nameOrder.length; i++) {
+      nameOrder[i] = (int) namedRecords.order[i];
+      namesSize += 2 + names.get(nameOrder[i]).length + 12;
+    }
+    Arrays.sort(
+        nameOrder,
+        (i, j) -> UnsignedBytes.lexicographicalComparator().compare(names.get(i), names.get(j)));
+
+    Files.createDirectories(file.getParent());
+    Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+      MappedByteBuffer buf =
+          channel.map(
+              FileChannel.MapMode.READ_WRITE,
+              0,
+              HEADER_SIZE
+                  + ((long) accounts.size + ipv4.size) * RECORD_SIZE
+                  + (long) ipv6Records.size * IPV6_RECORD_SIZE
+                  + (long) nameOrder.length * NAME_INDEX_SIZE
+                  + namesSize);
+      buf.position(HEADER_SIZE);
+      accounts.write(buf);
+      ipv4.write(buf);
+      for (int r : ipv6Order) {
+        HostKey remoteHost = ipv6.get(r);
+        buf.putLong(remoteHost.high()).putLong(remoteHost.low());
+        buf.putInt(ipv6Records.used[r]).putLong(ipv6Records.periodEnd[r]);
+      }
+      int index = buf.position();
+      buf.position(index + nameOrder.length * NAME_INDEX_SIZE);
+      for (int i = 0; i < nameOrder.length; i++) {
+        int r = nameOrder[i];
+        byte[] name = names.get(r);
+        buf.putInt(index + i * NAME_INDEX_SIZE, buf.position());
+        buf.putShort((short) name.length).put(name);
+        buf.putInt(namedRecords.used[r]).putLong(namedRecords.periodEnd[r]);
+      }
+      buf.putInt(0, MAGIC)
+          .putInt(4, VERSION)
+          .putInt(8, accounts.size)
+          .putInt(12, ipv4.size)
+          .putInt(16, ipv6Records.size)
+          .putInt(20, nameOrder.length)
+          .putInt(24, namesSize)
+          .putLong(
+              28,
+              Math.max(
+                  Math.max(accounts.lastPeriodEnd, ipv4.lastPeriodEnd),
+                  Math.max(ipv6Records.lastPeriodEnd, namedRecords.lastPeriodEnd)));
+      buf.force();
+    }
+    Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+
+  /** Records of the limiters which used permits, sorted by their int key without boxing. */
+  private static class Records {
+    /** Key in the high int, index of the record in the low int. */
+    final long[] order;
+
+    final int[] used;
+    final long[] periodEnd;
+    int size;
+    long lastPeriodEnd;
+
+    Records(int capacity) {
+      order = new long[capacity];
+      used = new int[capacity];
+      periodEnd = new long[capacity];
+    }
+
+    /** Adds the record of the limiter, if it used permits in a period which did not end yet. */
+    boolean add(int key, RateLimiter limiter, long now) {
+      int usedPermits = limiter.usedPermits();
+      if (usedPermits <= 0) {
+        return false;
+      }
+      long end = now + limiter.remainingTime(TimeUnit.MILLISECONDS);
+      if (end <= now) {
+        return false;
+      }
+      order[size] = ((key & 0xFFFFFFFFL) << 32) | size;
+      used[size] = usedPermits;
+      periodEnd[size] = end;
+      lastPeriodEnd = Math.max(lastPeriodEnd, end);
+      size++;
+      return true;
+    }
+
+    /** Sorts the records by unsigned key. */
+    void sort() {
+      // Flipping the sign bit orders the unsigned keys as signed longs
+      for (int i = 0; i < size; i++) {
+        order[i] ^= Long.MIN_VALUE;
+      }
+      Arrays.sort(order, 0, size);
+      for (int i = 0; i < size; i++) {
+        order[i] ^= Long.MIN_VALUE;
+      }
+    }
+
+    void write(ByteBuffer buf) {
+      for (int i = 0; i < size; i++) {
+        int r = (int) order[i];
+        buf.putInt((int) (order[i] >>> 32)).putInt(used[r]).putLong(periodEnd[r]);
+      }
+    }
+  }
+
+  private static int compare(long high, long low, HostKey remoteHost) {
+    int c = Long.compare(high, remoteHost.high());
+    return c != 0 ? c : Long.compare(low, remoteHost.low());
+  }
+}
@@ -0,0 +1,150 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open-addressing table with linear probing, holding the entries of the rate limiters by their
+ * hash.
+ *
+ * <p>The table is read without locking, through {@link #table()}, while it is only modified by the
+ * callers holding a lock of their own. An entry is removed by shifting back the entries probed
+ * after it rather than leaving a tombstone, so that a lookup stops at the first empty slot. A
+ * lookup may thus miss an entry moved by a concurrent removal, and must be retried while holding
+ * the lock before concluding that the entry is missing.
+ */
+class ProbingTable<E extends ProbingTable.Entry> {
+  /** Entry of the table, probed from the slot of its hash. */
+  abstract static class Entry {
+    final int hash;
+
+    Entry(int hash) {
+      this.hash = hash;
+    }
+  }
+
+  /** Replaced when growing, modified in place otherwise, always under the lock of the caller. */
+  private volatile AtomicReferenceArray<E> table;
+
+  private int size;
+
+  /**
+   * @param initialCapacity initial number of slots, a power of two
+   */
+  ProbingTable(int initialCapacity) {
+    this.table = new AtomicReferenceArray<>(initialCapacity);
+  }
+
+  /** Spreads a hash code over the slots of the table. */
+  static int spread(int hashCode) {
+    int h = hashCode * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /** Returns the current slots, to be read without locking. */
+  AtomicReferenceArray<E> table() {
+    return table;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Adds the entry, growing the table to keep it at most half full. */
+  void insert(E entry) {
+    AtomicReferenceArray<E> t = table;
+    if (2 * (size + 1) > t.length()) {
+      AtomicReferenceArray<E> grown = new AtomicReferenceArray<>(2 * t.length());
+      for (int i = 0; i < t.length(); i++) {
+        E e = t.get(i);
+        if (e != null) {
+          grown.set(freeSlot(grown, e.hash), e);
+        }
+      }
+      table = t = grown;
+    }
+    t.set(freeSlot(t, entry.hash), entry);
+    size++;
+  }
+
+  /**
+   * Replaces the entry by another one with the same hash.
+   *
+   * @return false if the entry is not in the table
+   */
+  boolean replace(E entry, E replacement) {
+    AtomicReferenceArray<E> t = table;
+    int slot = slot(t, entry);
+    if (slot < 0) {
+      return false;
+    }
+    t.set(slot, replacement);
+    return true;
+  }
+
+  /**
+   * Removes the entry, shifting back the entries probed after it.
+   *
+   * @return false if the entry is not in the table
+   */
+  boolean remove(E entry) {
+    AtomicReferenceArray<E> t = table;
+    int hole = slot(t, entry);
+    if (hole < 0) {
+      return false;
+    }
+    int mask = t.length() - 1;
+    for (int i = (hole + 1) & mask; ; i = (i + 1) & mask) {
+      E e = t.get(i);
+      if (e == null) {
+        break;
+      }
+      int home = e.hash & mask;
+      // The entry can fill the hole unless its home slot lies cyclically in (hole, i]
+      boolean stays = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+      if (!stays) {
+        t.set(hole, e);
+        hole = i;
+      }
+    }
+    t.set(hole, null);
+    size--;
+    return true;
+  }
+
+  /** Returns the slot of the entry, or -1 if it is not in the table. */
+  private static <E extends Entry> int slot(AtomicReferenceArray<E> t, E entry) {
+    int mask = t.length() - 1;
+    for (int i = entry.hash & mask; ; i = (i + 1) & mask) {
+      E e = t.get(i);
+      if (e == null) {
+        return -1;
+      }
+      if (e == entry) {
+        return i;
+      }
+    }
+  }
+
+  private static <E extends Entry> int freeSlot(AtomicReferenceArray<E> t, int hash) {
+    int mask = t.length() - 1;
+    int i = hash & mask;
+    while (t.get(i) != null) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+}
@@ -0,0 +1,42 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+enum RateLimitAlgorithm {
+  FIXED_WINDOW("fixedwindow"),
+  TOKEN_BUCKET("tokenbucket"),
+  SLIDING_WINDOW("slidingwindow"),
+  GCRA("gcra");
+
+  private final String name;
+
+  RateLimitAlgorithm(String name) {
+    this.name = name;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  static RateLimitAlgorithm from(String value) {
+    for (RateLimitAlgorithm algorithm : RateLimitAlgorithm.values()) {
+      if (algorithm.toString().equalsIgnoreCase(value)) {
+        return algorithm;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.io.CharStreams;
+import com.google.inject.Inject;
+import com.google.inject.ProvisionException;
+import com.google.inject.Singleton;
+import com.google.template.soy.SoyFileSet;
+import com.google.template.soy.jbcsrc.api.SoySauce;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Objects;
+
+/**
+ * Templates of the emails sent when a user reaches a rate limit.
+ *
+ * <p>Compiling the templates is far more expensive than rendering them, so both templates are
+ * compiled once, when the plugin is loaded, into a {@link SoySauce} shared by all the emails.
+ */
+@Singleton
+class RateLimitEmailTemplates {
+  static final String TEXT_TEMPLATE = "RateLimiterEmailFormat";
+  static final String HTML_TEMPLATE = "RateLimiterEmailFormatHTML";
+
+  private final SoySauce soySauce;
+
+  @Inject
+  RateLimitEmailTemplates() {
+    SoyFileSet.Builder builder = newBuilder();
+    add(builder, TEXT_TEMPLATE);
+    add(builder, HTML_TEMPLATE);
+    this.soySauce = builder.build().compileTemplates();
+  }
+
+  /** Returns a renderer of the template, which is not shared. */
+  SoySauce.Renderer renderer(String template) {
+    return soySauce.renderTemplate(
+        "com.googlesource.gerrit.plugins.ratelimiter." + template + "." + template);
+  }
+
+  /**
+   * Returns a builder of the templates, as Gerrit builds the templates of its own emails. The other
+   * builders of this Soy version, provided by the {@code SoyModule} or compiling the templates with
+   * the build, are deprecated or not available to plugins.
+   */
+  @SuppressWarnings("deprecation")
+  private static SoyFileSet.Builder newBuilder() {
+    return SoyFileSet.builder();
+  }
+
+  private static void add(SoyFileSet.Builder builder, String template) {
+    String content;
+    try (Reader r =
+        new BufferedReader(
+            new InputStreamReader(
+                Objects.requireNonNull(
+                    RateLimitEmailTemplates.class.getResourceAsStream("/" + template + ".soy"))))) {
+      content = CharStreams.toString(r);
+    } catch (IOException err) {
+      throw new ProvisionException(
+          "Failed to read template file " + "/resources/" + template + ".soy", err);
+    }
+    builder.add(content, "/" + template + ".soy");
+  }
+}
@@ -15,6 +15,7 @@
 package com.googlesource.gerrit.plugins.ratelimiter;
 
 import static com.google.gerrit.server.group.SystemGroupBackend.ANONYMOUS_USERS;
+import static com.google.gerrit.server.group.SystemGroupBackend.REGISTERED_USERS;
 
 import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.server.IdentifiedUser;
@@ -22,8 +23,6 @@ import com.google.gerrit.server.account.GroupMembership;
 import com.google.gerrit.server.group.SystemGroupBackend;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 
 @Singleton
@@ -32,6 +31,7 @@ class RateLimitFinder {
   private final Configuration configuration;
   private final UserResolver userResolver;
   private final AccountGroup.UUID anonymousUsersGroupUUID;
+  private final AccountGroup.UUID registeredUsersGroupUUID;
 
   @Inject
   RateLimitFinder(
@@ -41,42 +41,57 @@ class RateLimitFinder {
     this.configuration = configuration;
     this.userResolver = userResolver;
     anonymousUsersGroupUUID = systemGroupBackend.get(ANONYMOUS_USERS).getGroupUUID();
+    registeredUsersGroupUUID = systemGroupBackend.get(REGISTERED_USERS).getGroupUUID();
   }
 
-  Optional<RateLimit> find(RateLimitType rateLimitType, String key) {
+  /**
+   * Returns the policy of the first configured group the user is a member of, resolving the user
+   * and its group memberships only once.
+   *
+   * @param key account id of the user
+   * @return the policy of the user, {@link RateLimitPolicy#NONE} if no group applies
+   */
+  RateLimitPolicy findPolicy(String key) {
     Optional<IdentifiedUser> currentUser = userResolver.getIdentifiedUser(key);
     return currentUser.isPresent()
-        ? firstMatching(rateLimitType, currentUser.get())
-        : getRateLimit(rateLimitType, anonymousUsersGroupUUID);
+        ? firstMatching(configuration.snapshot(), currentUser.get())
+        : findAnonymousPolicy();
   }
 
   /**
-   * @param rateLimitType type of rate limit
-   * @param user identified user
-   * @return the rate limit matching the first configured group limit in which the user is a member
+   * Returns the policy of the first configured group all the identified users are a member of,
+   * without resolving any user. It applies to the users whose policy is not resolved yet.
    */
-  private Optional<RateLimit> firstMatching(RateLimitType rateLimitType, IdentifiedUser user) {
-    Map<AccountGroup.UUID, RateLimit> limitsPerGroupUUID =
-        configuration.getRateLimits(rateLimitType);
-    if (!limitsPerGroupUUID.isEmpty()) {
-      GroupMembership memberShip = user.getEffectiveGroups();
-      for (Entry<AccountGroup.UUID, RateLimit> limitPerGroupUUID : limitsPerGroupUUID.entrySet()) {
-        if (memberShip.contains(limitPerGroupUUID.getKey())) {
-          return Optional.ofNullable(limitPerGroupUUID.getValue());
-        }
+  RateLimitPolicy findProvisionalPolicy() {
+    ConfigurationSnapshot config = configuration.snapshot();
+    for (int i = 0; i < config.groupCount(); i++) {
+      AccountGroup.UUID groupUUID = config.group(i);
+      if (groupUUID.equals(anonymousUsersGroupUUID) || groupUUID.equals(registeredUsersGroupUUID)) {
+        return config.policy(i);
       }
     }
-    return Optional.empty();
+    return RateLimitPolicy.NONE;
+  }
+
+  /** Returns the policy of the anonymous users, which applies to all the remote hosts. */
+  RateLimitPolicy findAnonymousPolicy() {
+    return configuration.snapshot().policy(anonymousUsersGroupUUID);
   }
 
   /**
-   * @param rateLimitType type of rate limit
-   * @param groupUUID uuid of group to lookup up rate limit for
-   * @return rate limit
+   * @param config configuration to look the groups up in
+   * @param user identified user
+   * @return the policy of the first configured group in which the user is a member
    */
-  private Optional<RateLimit> getRateLimit(
-      RateLimitType rateLimitType, AccountGroup.UUID groupUUID) {
-    Map<AccountGroup.UUID, RateLimit> limits = configuration.getRateLimits(rateLimitType);
-    return limits.isEmpty() ? Optional.empty() : Optional.ofNullable(limits.get(groupUUID));
+  private static RateLimitPolicy firstMatching(ConfigurationSnapshot config, IdentifiedUser user) {
+    if (config.groupCount() > 0) {
+      GroupMembership memberShip = user.getEffectiveGroups();
+      for (int i = 0; i < config.groupCount(); i++) {
+        if (memberShip.contains(config.group(i))) {
+          return config.policy(i);
+        }
+      }
+    }
+    return RateLimitPolicy.NONE;
   }
 }
@@ -0,0 +1,332 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.gerrit.exceptions.NoSuchAccountException;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+
+/**
+ * Logs and emails the warnings and blocks of the users off the fetch path.
+ *
+ * <p>The rate limiters only enqueue an event, which a single worker thread dequeues to resolve the
+ * name of the user, format the message and send the email. Enqueuing does not lock, and the events
+ * submitted while the queue is full are dropped and counted, so that a slow mail server never slows
+ * down the fetches. Until the worker is started, and once it is stopped, the events are handled on
+ * the calling thread.
+ *
+ * <p>The worker can also gather the emails of each user over a digest interval and send them as a
+ * single email, and caps the number of emails sent per minute by all the users: the emails over the
+ * cap are dropped, their messages are still logged.
+ */
+@Singleton
+class RateLimitNotifier implements LifecycleListener {
+  private static final Logger rateLimitLog = RateLimiterStatsLog.getLogger();
+
+  static final int DEFAULT_QUEUE_CAPACITY = 1024;
+  private static final long ONE_MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private static final class Event {
+    final String key;
+    final Function<String, String> message;
+    final boolean email;
+    final boolean acquirePermit;
+
+    Event(String key, Function<String, String> message, boolean email, boolean acquirePermit) {
+      this.key = key;
+      this.message = message;
+      this.email = email;
+      this.acquirePermit = acquirePermit;
+    }
+  }
+
+  private final UserResolver userResolver;
+  private final RateLimitReachedSender.Factory rateLimitReachedSenderFactory;
+  private final int capacity;
+  private final long digestIntervalNanos;
+  private final int maxEmailsPerMinute;
+  private final Ticker ticker;
+  private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+  private volatile boolean running;
+  private volatile Thread worker;
+
+  /** Messages to email per user, only accessed by the worker. */
+  private final Map<String, List<String>> digests = new LinkedHashMap<>();
+
+  private long digestDeadline;
+
+  /**
+   * Guards the throttle window, which the worker and the calling threads share. The notifier itself
+   * is not used as the lock, as stopping holds it while waiting for the worker.
+   */
+  private final Object throttleLock = new Object();
+
+  private long throttleWindowStart;
+  private int emailsInThrottleWindow;
+
+  @Inject
+  RateLimitNotifier(
+      UserResolver userResolver,
+      RateLimitReachedSender.Factory rateLimitReachedSenderFactory,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    this(
+        userResolver,
+        rateLimitReachedSenderFactory,
+        Math.max(
+            1,
+            pluginConfigFactory
+                .getGlobalPluginConfig(pluginName)
+                .getInt(
+                    "configuration", null, "notificationQueueCapacity", DEFAULT_QUEUE_CAPACITY)),
+        TimeUnit.MINUTES.toNanos(
+            Math.max(
+                0,
+                pluginConfigFactory
+                    .getGlobalPluginConfig(pluginName)
+                    .getInt("configuration", null, "emailDigestIntervalInMinutes", 0))),
+        Math.max(
+            0,
+            pluginConfigFactory
+                .getGlobalPluginConfig(pluginName)
+                .getInt("configuration", null, "maxEmailsPerMinute", 0)),
+        Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  RateLimitNotifier(
+      UserResolver userResolver,
+      RateLimitReachedSender.Factory rateLimitReachedSenderFactory,
+      int capacity) {
+    this(userResolver, rateLimitReachedSenderFactory, capacity, 0, 0, Ticker.systemTicker());
+  }
+
+  /**
+   * @param digestIntervalNanos interval over which the emails of a user are gathered, or 0 to email
+   *     each message on its own
+   * @param maxEmailsPerMinute maximum number of emails sent per minute, or 0 for no maximum
+   */
+  @VisibleForTesting
+  RateLimitNotifier(
+      UserResolver userResolver,
+      RateLimitReachedSender.Factory rateLimitReachedSenderFactory,
+      int capacity,
+      long digestIntervalNanos,
+      int maxEmailsPerMinute,
+      Ticker ticker) {
+    this.userResolver = userResolver;
+    this.rateLimitReachedSenderFactory = rateLimitReachedSenderFactory;
+    this.capacity = capacity;
+    this.digestIntervalNanos = digestIntervalNanos;
+    this.maxEmailsPerMinute = maxEmailsPerMinute;
+    this.ticker = ticker;
+    this.throttleWindowStart = ticker.read();
+  }
+
+  @Override
+  public synchronized void start() {
+    if (worker == null) {
+      running = true;
+      Thread t = new Thread(this::run, "Rate-limit-notifier");
+      t.setDaemon(true);
+      worker = t;
+      t.start();
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    Thread t = worker;
+    if (t != null) {
+      running = false;
+      worker = null;
+      LockSupport.unpark(t);
+      try {
+        t.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Logs the message of the user and, if {@code email} is set, emails it.
+   *
+   * @param key account id of the user, or the remote host
+   * @param message formats the message from the name of the user
+   * @param email whether the message is emailed
+   * @param acquirePermit whether the user got a permit
+   */
+  void notify(String key, Function<String, String> message, boolean email, boolean acquirePermit) {
+    Event event = new Event(key, message, email, acquirePermit);
+    Thread t = worker;
+    if (t == null) {
+      handle(event, false);
+      return;
+    }
+    int size;
+    do {
+      size = queued.get();
+      if (size >= capacity) {
+        dropped.increment();
+        return;
+      }
+    } while (!queued.compareAndSet(size, size + 1));
+    events.add(event);
+    LockSupport.unpark(t);
+  }
+
+  /** Returns the number of events waiting to be handled. */
+  int queued() {
+    return queued.get();
+  }
+
+  /** Returns the number of events dropped because the queue was full. */
+  long dropped() {
+    return dropped.sum();
+  }
+
+  /** Returns the number of emails dropped because of the maximum number of emails per minute. */
+  long throttled() {
+    return throttled.sum();
+  }
+
+  private void run() {
+    while (running) {
+      Event event = events.poll();
+      if (event != null) {
+        handleQueued(event);
+      } else if (digests.isEmpty()) {
+        LockSupport.park(this);
+      } else {
+        LockSupport.parkNanos(this, digestDeadline - ticker.read());
+      }
+      if (!digests.isEmpty() && ticker.read() - digestDeadline >= 0) {
+        sendDigests();
+      }
+    }
+    // Do not lose the events queued before stopping
+    Event event;
+    while ((event = events.poll()) != null) {
+      handleQueued(event);
+    }
+    sendDigests();
+  }
+
+  private void handleQueued(Event event) {
+    queued.decrementAndGet();
+    try {
+      handle(event, digestIntervalNanos > 0);
+    } catch (RuntimeException e) {
+      rateLimitLog.error("Error with exception while notifying: " + e);
+    }
+  }
+
+  private void handle(Event event, boolean digest) {
+    String message = event.message.apply(userResolver.getUserName(event.key).orElse(event.key));
+    MDC.put(RateLimiterStatsJsonLayout.KEY, event.key);
+    try {
+      rateLimitLog.info(message);
+    } finally {
+      MDC.remove(RateLimiterStatsJsonLayout.KEY);
+    }
+    if (!event.email) {
+      return;
+    }
+    if (digest) {
+      if (digests.isEmpty()) {
+        digestDeadline = ticker.read() + digestIntervalNanos;
+      }
+      digests.computeIfAbsent(event.key, k -> new ArrayList<>()).add(message);
+    } else {
+      sendEmail(event.key, message, event.acquirePermit);
+    }
+  }
+
+  private void sendDigests() {
+    long minutes = TimeUnit.NANOSECONDS.toMinutes(digestIntervalNanos);
+    for (Map.Entry<String, List<String>> digest : digests.entrySet()) {
+      List<String> messages = digest.getValue();
+      String emailMessage =
+          messages.size() == 1
+              ? messages.get(0)
+              : String.format(
+                      "%d rate limit notifications in the last %d minutes:\n",
+                      messages.size(), minutes)
+                  + String.join("\n", messages);
+      sendEmail(digest.getKey(), emailMessage, false);
+    }
+    digests.clear();
+  }
+
+  /** Returns true if the email can be sent without exceeding the maximum per minute. */
+  private boolean tryAcquireEmail() {
+    if (maxEmailsPerMinute == 0) {
+      return true;
+    }
+    synchronized (throttleLock) {
+      long now = ticker.read();
+      if (now - throttleWindowStart >= ONE_MINUTE_NANOS) {
+        throttleWindowStart = now;
+        emailsInThrottleWindow = 0;
+      }
+      if (emailsInThrottleWindow >= maxEmailsPerMinute) {
+        throttled.increment();
+        return false;
+      }
+      emailsInThrottleWindow++;
+      return true;
+    }
+  }
+
+  private void sendEmail(String key, String emailMessage, boolean acquirePermit) {
+    if (!tryAcquireEmail()) {
+      return;
+    }
+    try {
+      RateLimitReachedSender sender =
+          rateLimitReachedSenderFactory.create(
+              userResolver
+                  .getIdentifiedUser(key)
+                  .orElseThrow(() -> new NoSuchAccountException("User not found")),
+              emailMessage,
+              acquirePermit);
+      sender.send();
+    } catch (Exception e) {
+      rateLimitLog.error("Error with exception while sending email: " + e);
+    }
+  }
+}
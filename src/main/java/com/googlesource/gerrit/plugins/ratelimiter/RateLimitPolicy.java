@@ -0,0 +1,53 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Rate limits and algorithm configured for a group.
+ *
+ * <p>The policy of each group is built once per configuration and shared by all the users and
+ * remote hosts the group applies to, so that resolving the limits of a user only looks up the group
+ * memberships of the user once.
+ */
+final class RateLimitPolicy {
+  /** Policy of the users which are not a member of any configured group. */
+  static final RateLimitPolicy NONE = new RateLimitPolicy(Map.of(), Optional.empty());
+
+  private final RateLimit[] rateLimits = new RateLimit[RateLimitType.values().length];
+  private final Optional<RateLimitAlgorithm> algorithm;
+
+  RateLimitPolicy(
+      Map<RateLimitType, RateLimit> rateLimits, Optional<RateLimitAlgorithm> algorithm) {
+    rateLimits.forEach((type, rateLimit) -> this.rateLimits[type.ordinal()] = rateLimit);
+    this.algorithm = algorithm;
+  }
+
+  Optional<RateLimit> get(RateLimitType rateLimitType) {
+    return Optional.ofNullable(rateLimits[rateLimitType.ordinal()]);
+  }
+
+  Optional<RateLimitAlgorithm> getAlgorithm() {
+    return algorithm;
+  }
+
+  /** Returns true if the policy neither limits nor warns, i.e. its users are not rate limited. */
+  boolean isUnlimited() {
+    return rateLimits[RateLimitType.UPLOAD_PACK_PER_HOUR.ordinal()] == null
+        && rateLimits[RateLimitType.UPLOAD_PACK_PER_HOUR_WARN.ordinal()] == null;
+  }
+}
@@ -14,7 +14,6 @@
 
 package com.googlesource.gerrit.plugins.ratelimiter;
 
-import com.google.common.io.CharStreams;
 import com.google.gerrit.exceptions.EmailException;
 import com.google.gerrit.extensions.api.changes.RecipientType;
 import com.google.gerrit.server.IdentifiedUser;
@@ -22,16 +21,9 @@ import com.google.gerrit.server.mail.send.EmailArguments;
 import com.google.gerrit.server.mail.send.MessageIdGenerator;
 import com.google.gerrit.server.mail.send.OutgoingEmail;
 import com.google.gerrit.server.util.time.TimeUtil;
-import com.google.inject.ProvisionException;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
-import com.google.template.soy.SoyFileSet;
 import com.google.template.soy.jbcsrc.api.SoySauce;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.util.Objects;
 
 public class RateLimitReachedSender extends OutgoingEmail {
   public interface Factory {
@@ -43,18 +35,21 @@ public class RateLimitReachedSender extends OutgoingEmail {
   private final MessageIdGenerator messageIdGenerator;
   private final Configuration configuration;
   private final boolean acquirePermit;
+  private final RateLimitEmailTemplates templates;
 
   @AssistedInject
   public RateLimitReachedSender(
       EmailArguments args,
       MessageIdGenerator messageIdGenerator,
       Configuration configuration,
+      RateLimitEmailTemplates templates,
       @Assisted IdentifiedUser user,
       @Assisted String emailMessage,
       @Assisted boolean acquirePermit) {
     super(args, "RateLimitReached");
     this.messageIdGenerator = messageIdGenerator;
     this.configuration = configuration;
+    this.templates = templates;
     this.acquirePermit = acquirePermit;
     this.user = user;
     this.emailMessage = emailMessage;
@@ -63,7 +58,8 @@ public class RateLimitReachedSender extends OutgoingEmail {
   @Override
   protected void init() throws EmailException {
     super.init();
-    setHeader("Subject", "[Gerrit Code Review] " + emailMessage);
+    // A digest lists its messages after a summary line
+    setHeader("Subject", "[Gerrit Code Review] " + emailMessage.split("\n", 2)[0]);
     setMessageId(
         messageIdGenerator.fromReasonAccountIdAndTimestamp(
             "rate_limit_reached", user.getAccountId(), TimeUtil.now()));
@@ -77,9 +73,9 @@ public class RateLimitReachedSender extends OutgoingEmail {
 
   @Override
   protected void format() throws EmailException {
-    appendText(soyUseTextTemplate("RateLimiterEmailFormat"));
+    appendText(soyUseTextTemplate(RateLimitEmailTemplates.TEXT_TEMPLATE));
     if (useHtml()) {
-      appendHtml(soyUseHtmlTemplate("RateLimiterEmailFormatHTML"));
+      appendHtml(soyUseHtmlTemplate(RateLimitEmailTemplates.HTML_TEMPLATE));
     }
   }
 
@@ -94,29 +90,7 @@ public class RateLimitReachedSender extends OutgoingEmail {
   }
 
   private SoySauce.Renderer getRenderer(String template) {
-    SoyFileSet.Builder builder = SoyFileSet.builder();
-    String content;
-
-    try (Reader r =
-        new BufferedReader(
-            new InputStreamReader(
-                Objects.requireNonNull(
-                    this.getClass().getResourceAsStream("/" + template + ".soy"))))) {
-      content = CharStreams.toString(r);
-    } catch (IOException err) {
-      throw new ProvisionException(
-          "Failed to read template file " + "/resources/" + template + ".soy", err);
-    }
-    builder.add(content, "/" + template + ".soy");
-    String renderedTemplate =
-        new StringBuilder("com.googlesource.gerrit.plugins.ratelimiter.")
-            .append(template)
-            .append(".")
-            .append(template)
-            .toString();
-    SoySauce.Renderer renderer =
-        builder.build().compileTemplates().renderTemplate(renderedTemplate).setData(soyContext);
-    return renderer;
+    return templates.renderer(template).setData(soyContext);
   }
 
   @Override
@@ -0,0 +1,314 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel running the periodic work of the plugin.
+ *
+ * <p>Scheduling and cancelling a task are O(1): callers only enqueue the task, and the single
+ * worker thread moves it into the bucket of the tick it expires in, or unlinks it when it was
+ * cancelled. Tasks run on the worker thread and therefore must be short.
+ */
+@Singleton
+class RateLimitTimer implements LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(RateLimitTimer.class);
+
+  static final int DEFAULT_TICK_IN_MILLIS = 1000;
+  private static final int WHEEL_SIZE = 512;
+
+  private final Ticker ticker;
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final long startTime;
+  private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+  private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingTasks = new AtomicInteger();
+  private volatile long tickLagNanos;
+  private volatile boolean running;
+  private Thread worker;
+  private long tick;
+
+  @Inject
+  RateLimitTimer(PluginConfigFactory pluginConfigFactory, @PluginName String pluginName) {
+    this(
+        Ticker.systemTicker(),
+        parseTick(
+            pluginConfigFactory
+                .getGlobalPluginConfig(pluginName)
+                .getInt("configuration", null, "timerTickInMillis", DEFAULT_TICK_IN_MILLIS)),
+        TimeUnit.MILLISECONDS);
+  }
+
+  @VisibleForTesting
+  RateLimitTimer(Ticker ticker, long tick, TimeUnit unit) {
+    this.ticker = ticker;
+    this.tickNanos = unit.toNanos(tick);
+    this.wheel = new Bucket[WHEEL_SIZE];
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.startTime = ticker.read();
+  }
+
+  private static int parseTick(int tickInMillis) {
+    if (tickInMillis > 0) {
+      return tickInMillis;
+    }
+    log.warn(
+        "The timer tick is set to the default {} ms, as the configured value is invalid.",
+        DEFAULT_TICK_IN_MILLIS);
+    return DEFAULT_TICK_IN_MILLIS;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (worker == null) {
+      running = true;
+      worker = new Thread(this::run, "Rate-limit-timer");
+      worker.setDaemon(true);
+      worker.start();
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (worker != null) {
+      running = false;
+      worker.interrupt();
+      try {
+        worker.join(TimeUnit.NANOSECONDS.toMillis(tickNanos) + 1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      worker = null;
+    }
+  }
+
+  /** Runs {@code task} once after {@code delay}. */
+  Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    return add(new Timeout(task, now() + unit.toNanos(delay), 0));
+  }
+
+  /** Runs {@code task} every {@code period}, starting after {@code initialDelay}. */
+  Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+    return add(new Timeout(task, now() + unit.toNanos(initialDelay), unit.toNanos(period)));
+  }
+
+  /** Returns the number of tasks which are scheduled and not cancelled. */
+  int pendingTasks() {
+    return pendingTasks.get();
+  }
+
+  /** Returns how late the last tick was processed, in the given time unit. */
+  long tickLag(TimeUnit timeUnit) {
+    return timeUnit.convert(tickLagNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private Timeout add(Timeout timeout) {
+    pendingTasks.incrementAndGet();
+    scheduledTimeouts.add(timeout);
+    return timeout;
+  }
+
+  private long now() {
+    return ticker.read() - startTime;
+  }
+
+  private void run() {
+    while (running) {
+      long now = waitForNextTick();
+      if (now < 0) {
+        return;
+      }
+      removeCancelledTimeouts();
+      transferScheduledTimeouts();
+      wheel[(int) (tick & (WHEEL_SIZE - 1))].expire(now);
+      tick++;
+    }
+  }
+
+  private long waitForNextTick() {
+    long deadline = tickNanos * (tick + 1);
+    while (true) {
+      long now = now();
+      long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - now + 999_999);
+      if (sleepMillis <= 0) {
+        tickLagNanos = now - deadline;
+        return now;
+      }
+      try {
+        Thread.sleep(sleepMillis);
+      } catch (InterruptedException e) {
+        if (!running) {
+          return -1;
+        }
+      }
+    }
+  }
+
+  private void removeCancelledTimeouts() {
+    Timeout timeout;
+    while ((timeout = cancelledTimeouts.poll()) != null) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  private void transferScheduledTimeouts() {
+    Timeout timeout;
+    while ((timeout = scheduledTimeouts.poll()) != null) {
+      if (timeout.state == Timeout.CANCELLED) {
+        continue;
+      }
+      long expiryTick = Math.max(timeout.deadline / tickNanos, tick);
+      timeout.remainingRounds = (expiryTick - tick) / WHEEL_SIZE;
+      wheel[(int) (expiryTick & (WHEEL_SIZE - 1))].add(timeout);
+    }
+  }
+
+  /** Handle on a scheduled task. */
+  class Timeout {
+    private static final int SCHEDULED = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final Runnable task;
+    private final long period;
+    private volatile long deadline;
+    volatile int state;
+    private long remainingRounds;
+    private Bucket bucket;
+    private Timeout next;
+    private Timeout prev;
+
+    private Timeout(Runnable task, long deadline, long period) {
+      this.task = task;
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    /** Returns the remaining delay before the task runs next, in the given time unit. */
+    long getDelay(TimeUnit timeUnit) {
+      return timeUnit.convert(deadline - now(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancels the task, it will not run anymore.
+     *
+     * @return true if the task was cancelled, false if it already expired or was cancelled.
+     */
+    boolean cancel() {
+      if (!STATE.compareAndSet(this, SCHEDULED, CANCELLED)) {
+        return false;
+      }
+      pendingTasks.decrementAndGet();
+      cancelledTimeouts.add(this);
+      return true;
+    }
+
+    boolean isCancelled() {
+      return state == CANCELLED;
+    }
+
+    private void expire() {
+      if (period == 0 && !STATE.compareAndSet(this, SCHEDULED, EXPIRED)) {
+        return;
+      }
+      if (period == 0) {
+        pendingTasks.decrementAndGet();
+      }
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        log.error("Rate limit timer task failed", e);
+      }
+      if (period > 0 && state == SCHEDULED) {
+        deadline += period;
+        scheduledTimeouts.add(this);
+      }
+    }
+  }
+
+  private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+  /** Doubly linked list of the timeouts expiring in one slot of the wheel. */
+  private static class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    void expire(long now) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.isCancelled()) {
+          remove(timeout);
+        } else if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+          remove(timeout);
+          timeout.expire();
+        } else if (timeout.remainingRounds > 0) {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.bucket != this) {
+        return;
+      }
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      } else {
+        tail = timeout.prev;
+      }
+      timeout.bucket = null;
+      timeout.next = null;
+      timeout.prev = null;
+    }
+  }
+}
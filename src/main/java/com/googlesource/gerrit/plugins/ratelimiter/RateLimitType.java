@@ -17,7 +17,8 @@ package com.googlesource.gerrit.plugins.ratelimiter;
 enum RateLimitType {
   UPLOAD_PACK_PER_HOUR("uploadpackperhour", "upload pack"),
   UPLOAD_PACK_PER_HOUR_WARN("uploadpackperhourwarn", "upload pack"),
-  TIME_LAPSE_IN_MINUTES("timelapseinminutes", "upload pack");
+  TIME_LAPSE_IN_MINUTES("timelapseinminutes", "upload pack"),
+  BURST("burst", "upload pack");
 
   private final String type;
   private final String limitType;
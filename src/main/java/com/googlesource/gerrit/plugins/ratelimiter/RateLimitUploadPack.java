@@ -14,10 +14,8 @@
 
 package com.googlesource.gerrit.plugins.ratelimiter;
 
-import static com.googlesource.gerrit.plugins.ratelimiter.Configuration.RATE_LIMIT_TOKEN;
 import static com.googlesource.gerrit.plugins.ratelimiter.Module.UPLOAD_PACK_PER_HOUR;
 
-import com.google.common.cache.LoadingCache;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.git.validators.UploadValidationListener;
@@ -27,36 +25,30 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
-import java.text.MessageFormat;
 import java.util.Collection;
-import java.util.concurrent.ExecutionException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.UploadPack;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 @Singleton
 class RateLimitUploadPack implements UploadValidationListener {
-  private static final Logger log = LoggerFactory.getLogger(RateLimitUploadPack.class);
-
   private final Provider<CurrentUser> user;
-  private final LoadingCache<String, RateLimiter> uploadPackPerHour;
-  private final String limitExceededMsgFormat;
-  private final Module.RateLimiterLoader rateLimiterLoader;
+  private final RateLimiterRegistry<HostKey> uploadPackPerHour;
+  private final AccountRateLimiters accountRateLimiters;
+  private final RemoteHostTable remoteHostTable;
   private final Configuration configuration;
 
   @Inject
   RateLimitUploadPack(
       Provider<CurrentUser> user,
-      @Named(UPLOAD_PACK_PER_HOUR) LoadingCache<String, RateLimiter> uploadPackPerHour,
-      Configuration configuration,
-      Module.RateLimiterLoader rateLimiterLoader) {
+      @Named(UPLOAD_PACK_PER_HOUR) RateLimiterRegistry<HostKey> uploadPackPerHour,
+      AccountRateLimiters accountRateLimiters,
+      RemoteHostTable remoteHostTable,
+      Configuration configuration) {
     this.user = user;
     this.uploadPackPerHour = uploadPackPerHour;
-    limitExceededMsgFormat =
-        configuration.getRateLimitExceededMsg().replace(RATE_LIMIT_TOKEN, "{0,number,##.##}");
-    this.rateLimiterLoader = rateLimiterLoader;
+    this.accountRateLimiters = accountRateLimiters;
+    this.remoteHostTable = remoteHostTable;
     this.configuration = configuration;
   }
 
@@ -69,53 +61,50 @@ class RateLimitUploadPack implements UploadValidationListener {
       Collection<? extends ObjectId> wants,
       int cntOffered)
       throws ValidationException {
-    String key;
+    ConfigurationSnapshot config = configuration.snapshot();
+    if (!config.hasLimits()) {
+      return;
+    }
+    int permits = config.permitCost().cost(wants.size(), cntOffered);
+    RateLimiter limiter;
     CurrentUser u = user.get();
     if (u.isIdentifiedUser()) {
-      key = Integer.toString(u.asIdentifiedUser().getAccountId().get());
+      if (config.isUnlimitedForIdentifiedUsers()) {
+        return;
+      }
+      limiter = accountRateLimiters.get(u.asIdentifiedUser().getAccountId().get());
     } else {
-      key = remoteHost;
+      if (config.isUnlimitedForAnonymousUsers()) {
+        return;
+      }
+      HostKey host = HostKey.parse(remoteHost);
+      if (remoteHostTable.accepts(host)) {
+        if (remoteHostTable.tryAcquirePermits(host, permits) == RateLimiter.NO_PERMIT) {
+          throw new RateLimitException(
+              config.formatRateLimitExceededMsg(remoteHostTable.permitsPerHour()));
+        }
+        return;
+      }
+      limiter = uploadPackPerHour.get(host);
     }
 
-    try {
-      RateLimiter limiter = uploadPackPerHour.get(key);
-      if (!limiter.acquirePermit()) {
-        throw new RateLimitException(
-            MessageFormat.format(limitExceededMsgFormat, limiter.permitsPerHour()));
-      }
-    } catch (ExecutionException e) {
-      log.warn("Cannot get rate limits for {}: {}", key, e);
+    if (limiter.tryAcquirePermits(capped(permits, limiter)) == RateLimiter.NO_PERMIT) {
+      throw new RateLimitException(config.formatRateLimitExceededMsg(limiter.permitsPerHour()));
     }
   }
 
-  void refresh(ProjectConfig newCfg, ProjectConfig oldCfg) {
-    configuration.refreshTable(newCfg, oldCfg);
-    refreshCache();
+  /**
+   * Caps the permits of a fetch at the most the limiter can grant at once, its burst or its limit,
+   * so that a costly fetch is not refused forever.
+   */
+  static int capped(int permits, RateLimiter limiter) {
+    return Math.max(1, Math.min(permits, limiter.getBurst().orElse(limiter.permitsPerHour())));
   }
 
-  private void refreshCache() {
-    uploadPackPerHour
-        .asMap()
-        .keySet()
-        .parallelStream()
-        .filter(
-            key -> {
-              try {
-                return !rateLimiterLoader.isValidKey(key, uploadPackPerHour.get(key));
-              } catch (ExecutionException e) {
-                log.warn("Cannot get rate limits for {}: {}", key, e);
-              }
-              return false;
-            })
-        .forEach(
-            key -> {
-              try {
-                uploadPackPerHour.get(key).close();
-                uploadPackPerHour.invalidate(key);
-              } catch (ExecutionException e) {
-                throw new RuntimeException(e);
-              }
-            });
+  void refresh(ProjectConfig newCfg, ProjectConfig oldCfg) {
+    configuration.refreshTable(newCfg, oldCfg);
+    // The limiters of the users and remote hosts are checked on their next access
+    remoteHostTable.refresh();
   }
 
   @Override
@@ -19,13 +19,15 @@ import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 interface RateLimiter extends Comparable<RateLimiter> {
+  /** Returned by {@link #tryAcquirePermit()} when no permit was available. */
+  int NO_PERMIT = -1;
 
   @Override
   public default int compareTo(RateLimiter other) {
     return Comparator.comparing(RateLimiter::availablePermits).reversed().compare(this, other);
   }
 
-  /** Returns number of permits allowed per hour. */
+  /** Returns number of permits allowed per time lapse. */
   int permitsPerHour();
 
   /**
@@ -35,16 +37,46 @@ interface RateLimiter extends Comparable<RateLimiter> {
    */
   boolean acquirePermit();
 
+  /**
+   * Acquire an available permit if any left.
+   *
+   * @return the number of permits used including the acquired one, or {@link #NO_PERMIT} if no
+   *     permit was available.
+   */
+  default int tryAcquirePermit() {
+    return tryAcquirePermits(1);
+  }
+
+  /**
+   * Acquire the given number of permits at once, if they are all available. A fetch costing more
+   * than the others, e.g. a clone, acquires several permits.
+   *
+   * @return the number of permits used including the acquired ones, or {@link #NO_PERMIT} if not
+   *     enough permits were available, in which case none is acquired.
+   */
+  int tryAcquirePermits(int permits);
+
+  /**
+   * Uses the given number of permits, as far as they are available, without notifying the user of
+   * reaching a limit again. Restores the permits a key used before a restart.
+   */
+  default void restoreUsedPermits(int permits) {
+    int available = Math.min(permits, availablePermits());
+    if (available > 0) {
+      tryAcquirePermits(available);
+    }
+  }
+
   /** Returns the number of available permits left. */
   int availablePermits();
 
-  /** Returns the number of permits used in the hour. */
+  /** Returns the number of permits used in the time lapse. */
   int usedPermits();
 
   /** Returns remaining time before available permits are replenished, in the given time unit. */
   long remainingTime(TimeUnit timeUnit);
 
-  /** Replenish available permits to the number allowed per hour. */
+  /** Replenish available permits to the number allowed per time lapse. */
   void replenishPermits();
 
   /** Return type of rate limiter * */
@@ -56,6 +88,12 @@ interface RateLimiter extends Comparable<RateLimiter> {
   /** Return warning limit of rate limiter. */
   Optional<Integer> getWarnLimit();
 
+  /** Return algorithm of rate limiter. */
+  RateLimitAlgorithm getAlgorithm();
+
+  /** Return burst of rate limiter. */
+  Optional<Integer> getBurst();
+
   /** Closes this RateLimiter, relinquishing any underlying resources. */
   void close();
 }
@@ -0,0 +1,35 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+/**
+ * Where the permits of the users and remote hosts are counted, selected by {@code
+ * configuration.backend}.
+ */
+interface RateLimiterBackend {
+  /**
+   * Returns the limiter counting the permits of the key in this backend.
+   *
+   * @param key account id of the user, or the remote host
+   * @param limiter limiter of the key on this server, before any warning limit is applied
+   */
+  RateLimiter share(String key, RateLimiter limiter);
+
+  /**
+   * Returns true if the permits of the limiter are counted in this backend under its key, so that
+   * another limiter shared under the same key counts them already.
+   */
+  boolean shares(RateLimiter limiter);
+}
@@ -0,0 +1,81 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Work queue resolving the limits of the users in the background, when {@code
+ * configuration.asyncLoadingThreads} is set.
+ *
+ * <p>Until the queue is started, and once it is stopped, the tasks run on the calling thread.
+ */
+@Singleton
+class RateLimiterLoadingQueue implements LifecycleListener, Executor {
+  private static final String QUEUE_NAME = "RateLimiterLoader";
+
+  private final WorkQueue workQueue;
+  private final int threads;
+  private volatile ScheduledExecutorService queue;
+
+  @Inject
+  RateLimiterLoadingQueue(
+      WorkQueue workQueue, PluginConfigFactory pluginConfigFactory, @PluginName String pluginName) {
+    this.workQueue = workQueue;
+    this.threads =
+        Math.max(
+            0,
+            pluginConfigFactory
+                .getGlobalPluginConfig(pluginName)
+                .getInt("configuration", null, "asyncLoadingThreads", 0));
+  }
+
+  /** Returns true if the limits of the users are resolved in the background. */
+  boolean isEnabled() {
+    return threads > 0;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (isEnabled() && queue == null) {
+      queue = workQueue.createQueue(threads, QUEUE_NAME);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (queue != null) {
+      queue.shutdownNow();
+      queue = null;
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    ScheduledExecutorService q = queue;
+    if (q != null) {
+      q.execute(task);
+    } else {
+      task.run();
+    }
+  }
+}
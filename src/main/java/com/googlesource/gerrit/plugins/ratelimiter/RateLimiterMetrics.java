@@ -0,0 +1,95 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.googlesource.gerrit.plugins.ratelimiter.Module.UPLOAD_PACK_PER_HOUR;
+
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.concurrent.TimeUnit;
+
+@Singleton
+class RateLimiterMetrics {
+
+  @Inject
+  RateLimiterMetrics(
+      MetricMaker metricMaker,
+      RateLimitTimer timer,
+      RateLimitNotifier notifier,
+      SharedRateLimiterBackend sharedBackend,
+      @Named(UPLOAD_PACK_PER_HOUR) RateLimiterRegistry<HostKey> uploadPackPerHour) {
+    metricMaker.newCallbackMetric(
+        "timer/pending_tasks",
+        Integer.class,
+        new Description("Number of tasks scheduled on the rate limiter timer").setGauge(),
+        timer::pendingTasks);
+    metricMaker.newCallbackMetric(
+        "timer/tick_lag",
+        Long.class,
+        new Description("Delay of the last rate limiter timer tick")
+            .setGauge()
+            .setUnit(Units.MILLISECONDS),
+        () -> timer.tickLag(TimeUnit.MILLISECONDS));
+    metricMaker.newCallbackMetric(
+        "remote_hosts/size",
+        Integer.class,
+        new Description("Number of rate limiters of remote hosts").setGauge(),
+        uploadPackPerHour::size);
+    metricMaker.newCallbackMetric(
+        "remote_hosts/hits",
+        Long.class,
+        new Description("Lookups of a remote host which found its rate limiter").setCumulative(),
+        uploadPackPerHour::hitCount);
+    metricMaker.newCallbackMetric(
+        "remote_hosts/misses",
+        Long.class,
+        new Description("Lookups of a remote host which created its rate limiter").setCumulative(),
+        uploadPackPerHour::missCount);
+    metricMaker.newCallbackMetric(
+        "remote_hosts/evictions",
+        Long.class,
+        new Description("Rate limiters of remote hosts evicted to stay under the maximum")
+            .setCumulative(),
+        uploadPackPerHour::evictionCount);
+    metricMaker.newCallbackMetric(
+        "notifications/queued",
+        Integer.class,
+        new Description("Number of warnings and blocks waiting to be logged and emailed")
+            .setGauge(),
+        notifier::queued);
+    metricMaker.newCallbackMetric(
+        "notifications/dropped",
+        Long.class,
+        new Description("Warnings and blocks dropped because the notification queue was full")
+            .setCumulative(),
+        notifier::dropped);
+    metricMaker.newCallbackMetric(
+        "notifications/throttled",
+        Long.class,
+        new Description("Emails dropped because of the maximum number of emails per minute")
+            .setCumulative(),
+        notifier::throttled);
+    metricMaker.newCallbackMetric(
+        "backend/fallbacks",
+        Long.class,
+        new Description("Permits acquired locally because the shared backend did not reply in time")
+            .setCumulative(),
+        sharedBackend::fallbacks);
+  }
+}
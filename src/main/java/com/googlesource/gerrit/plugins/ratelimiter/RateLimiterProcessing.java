@@ -16,7 +16,7 @@ package com.googlesource.gerrit.plugins.ratelimiter;
 import static com.googlesource.gerrit.plugins.ratelimiter.ListCommand.FORMAT;
 import static com.googlesource.gerrit.plugins.ratelimiter.Module.UPLOAD_PACK_PER_HOUR;
 
-import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
 import com.google.gerrit.server.account.AccountResolver;
@@ -31,33 +31,41 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 
 public class RateLimiterProcessing {
 
-  private final LoadingCache<String, RateLimiter> uploadPackPerHour;
+  private final RateLimiterRegistry<HostKey> uploadPackPerHour;
+  private final AccountRateLimiters accountRateLimiters;
+  private final RemoteHostTable remoteHostTable;
   private final UserResolver userResolver;
   private final AccountResolver accountResolver;
 
   @Inject
   public RateLimiterProcessing(
-      @Named(UPLOAD_PACK_PER_HOUR) LoadingCache<String, RateLimiter> uploadPackPerHour,
+      @Named(UPLOAD_PACK_PER_HOUR) RateLimiterRegistry<HostKey> uploadPackPerHour,
+      AccountRateLimiters accountRateLimiters,
+      RemoteHostTable remoteHostTable,
       UserResolver userResolver,
       AccountResolver accountResolver) {
     this.uploadPackPerHour = uploadPackPerHour;
+    this.accountRateLimiters = accountRateLimiters;
+    this.remoteHostTable = remoteHostTable;
     this.userResolver = userResolver;
     this.accountResolver = accountResolver;
   }
 
   public String listPermits() {
-    return uploadPackPerHour.asMap().entrySet().stream()
+    return limiters()
         .sorted(Map.Entry.comparingByValue())
         .map(
             entry ->
                 String.format(
                     FORMAT,
-                    getDisplayValue(entry.getKey(), userResolver),
+                    entry.getKey(),
                     permits(entry.getValue().permitsPerHour()),
                     permits(entry.getValue().availablePermits()),
                     permits(entry.getValue().usedPermits()),
@@ -65,19 +73,49 @@ public class RateLimiterProcessing {
         .reduce("", String::concat);
   }
 
+  /** Returns the occupancy of the remote hosts table, if it is enabled. */
+  public Optional<String> remoteHostTableOccupancy() {
+    if (remoteHostTable.capacity() == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        String.format(
+            "Remote hosts table: %d/%d slots used, %d evictions",
+            remoteHostTable.occupied(), remoteHostTable.capacity(), remoteHostTable.evictions()));
+  }
+
   public String listPermitsAsJson() {
     List<String> permitList = new ArrayList<>();
     Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    uploadPackPerHour.asMap().entrySet().stream()
+    limiters()
         .sorted(Map.Entry.comparingByValue())
         .map(this::getJsonObjectString)
         .forEach(permitList::add);
     return gson.toJson(JsonParser.parseString(permitList.toString()));
   }
 
+  /**
+   * Returns the limiters of the accounts and of the remote hosts, including the ones of the remote
+   * hosts table, keyed by the account id and user name, or by the address of the remote host.
+   */
+  private Stream<Map.Entry<String, RateLimiter>> limiters() {
+    return Stream.of(
+            accountRateLimiters.snapshot().entrySet().stream()
+                .map(
+                    e ->
+                        Maps.immutableEntry(
+                            getDisplayValue(Integer.toString(e.getKey()), userResolver),
+                            e.getValue())),
+            uploadPackPerHour.snapshot().entrySet().stream()
+                .map(e -> Maps.immutableEntry(e.getKey().toString(), e.getValue())),
+            remoteHostTable.snapshot().entrySet().stream()
+                .map(e -> Maps.immutableEntry(e.getKey().toString(), e.getValue())))
+        .flatMap(limiters -> limiters);
+  }
+
   private String getJsonObjectString(Map.Entry<String, RateLimiter> entry) {
     JsonObject jsonObject = new JsonObject();
-    jsonObject.addProperty("AccountId", getDisplayValue(entry.getKey(), userResolver));
+    jsonObject.addProperty("AccountId", entry.getKey());
     jsonObject.addProperty("permits_per_hour", permits(entry.getValue().permitsPerHour()));
     jsonObject.addProperty("available_permits", permits(entry.getValue().availablePermits()));
     jsonObject.addProperty("used_permit", permits(entry.getValue().usedPermits()));
@@ -100,11 +138,18 @@ public class RateLimiterProcessing {
       throw new IllegalArgumentException("cannot use --all with --user or --remotehost");
     }
     if (all) {
-      uploadPackPerHour.asMap().values().forEach(RateLimiter::replenishPermits);
+      accountRateLimiters.snapshot().values().forEach(RateLimiter::replenishPermits);
+      uploadPackPerHour.snapshot().values().forEach(RateLimiter::replenishPermits);
+      remoteHostTable.replenishAllPermits();
       return;
     }
-    accountIds.forEach(account -> replenishIfPresent(Integer.toString(account.get())));
-    remoteHosts.forEach(this::replenishIfPresent);
+    accountIds.forEach(
+        account -> replenishIfPresent(accountRateLimiters.getIfPresent(account.get())));
+    for (String remoteHost : remoteHosts) {
+      HostKey host = HostKey.parse(remoteHost);
+      replenishIfPresent(uploadPackPerHour.getIfPresent(host));
+      remoteHostTable.replenishPermits(host);
+    }
   }
 
   List<Account.Id> convertToAccountId(String[] usernames)
@@ -119,8 +164,7 @@ public class RateLimiterProcessing {
     return accountIds;
   }
 
-  private void replenishIfPresent(String key) {
-    RateLimiter limiter = uploadPackPerHour.getIfPresent(key);
+  private static void replenishIfPresent(RateLimiter limiter) {
     if (limiter != null) {
       limiter.replenishPermits();
     }
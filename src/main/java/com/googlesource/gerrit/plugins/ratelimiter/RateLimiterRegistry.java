@@ -0,0 +1,452 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.math.IntMath;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Rate limiters keyed by an arbitrary key, e.g. the remote hosts of the anonymous users.
+ *
+ * <p>The keys are spread over independently locked shards, each one an open-addressing table with
+ * linear probing. Lookups do not lock: a shard is only modified while holding its monitor, and a
+ * lookup missing an entry because of a concurrent modification retries while holding the monitor
+ * before loading it. Loading a limiter only locks its shard, and not while the loader runs.
+ *
+ * <p>Unlike a {@code LoadingCache}, looking up a limiter does no bookkeeping besides recording the
+ * access time and the access frequency: the idle limiters are evicted and closed by {@link
+ * #cleanUp()}, which is expected to run periodically in the background. A limiter is idle once all
+ * the permits it could have handed out since its last access are replenished, plus an idle slack of
+ * five minutes, and at most after an hour.
+ *
+ * <p>The number of limiters can be bounded, in which case each shard applies the W-TinyLFU policy:
+ * a new limiter always enters the small admission window of its shard, so that its key can build up
+ * some frequency. When it leaves the window while the shard is full, it only replaces the least
+ * recently used of a sample of the other limiters of the shard if its key was accessed more often.
+ * A burst of keys accessed once, e.g. remote hosts of a crawler wave, thus only churns the window.
+ *
+ * <p>Each limiter remembers the generation of the configuration it was loaded from. When the
+ * configuration changes, the limiters are not checked at once: a limiter is only checked against
+ * the new configuration on its next access, and replaced if its limits changed.
+ */
+class RateLimiterRegistry<K> {
+  private static final int INITIAL_SHARD_CAPACITY = 16;
+  private static final long MAX_EXPIRE_AFTER_ACCESS_NANOS = TimeUnit.HOURS.toNanos(1);
+  private static final long IDLE_SLACK_NANOS = TimeUnit.MINUTES.toNanos(5);
+  private static final int WINDOW_PERCENT = 1;
+  private static final int VICTIM_SAMPLE = 8;
+
+  private enum Region {
+    WINDOW,
+    MAIN,
+    REMOVED
+  }
+
+  private static final class Entry<K> extends ProbingTable.Entry {
+    final K key;
+    final RateLimiter limiter;
+    final long expireAfterAccess;
+    volatile long lastAccess;
+    volatile int generation;
+    Region region;
+
+    Entry(K key, int hash, RateLimiter limiter, long lastAccess, int generation) {
+      super(hash);
+      this.key = key;
+      this.limiter = limiter;
+      this.expireAfterAccess = expireAfterAccessNanos(limiter);
+      this.lastAccess = lastAccess;
+      this.generation = generation;
+    }
+  }
+
+  /** Table of a shard, modified under its monitor. */
+  private static final class Shard<K> extends ProbingTable<Entry<K>> {
+    /** Admission window, oldest first. May still hold entries removed since they were added. */
+    final ArrayDeque<RateLimiterRegistry.Entry<K>> window = new ArrayDeque<>();
+
+    int windowSize;
+
+    Shard() {
+      super(INITIAL_SHARD_CAPACITY);
+    }
+  }
+
+  private final Function<K, RateLimiter> loader;
+  private final IntSupplier generation;
+  private final BiPredicate<K, RateLimiter> validator;
+  private final Ticker ticker;
+  private final ImmutableList<Shard<K>> shards;
+  private final int shardShift;
+  private final int maxWindowSize;
+  private final int maxMainSize;
+  private final FrequencySketch sketch;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param loader loads the limiter of a key from the current configuration
+   * @param generation returns the generation of the current configuration
+   * @param validator checks whether a limiter still applies to its key in the current configuration
+   * @param maximumSize maximum number of limiters, or 0 for no maximum
+   */
+  RateLimiterRegistry(
+      Function<K, RateLimiter> loader,
+      IntSupplier generation,
+      BiPredicate<K, RateLimiter> validator,
+      Ticker ticker,
+      int maximumSize) {
+    this(
+        loader,
+        generation,
+        validator,
+        ticker,
+        4 * Runtime.getRuntime().availableProcessors(),
+        maximumSize);
+  }
+
+  @VisibleForTesting
+  RateLimiterRegistry(
+      Function<K, RateLimiter> loader, Ticker ticker, int concurrency, int maximumSize) {
+    this(loader, () -> 0, (key, limiter) -> true, ticker, concurrency, maximumSize);
+  }
+
+  @VisibleForTesting
+  RateLimiterRegistry(
+      Function<K, RateLimiter> loader,
+      IntSupplier generation,
+      BiPredicate<K, RateLimiter> validator,
+      Ticker ticker,
+      int concurrency,
+      int maximumSize) {
+    this.loader = loader;
+    this.generation = generation;
+    this.validator = validator;
+    this.ticker = ticker;
+    int shardCount = IntMath.ceilingPowerOfTwo(Math.max(concurrency, 1));
+    if (maximumSize > 0) {
+      // Each shard must be able to hold at least a window entry and a main entry
+      shardCount = Math.min(shardCount, Math.max(1, Integer.highestOneBit(maximumSize / 2)));
+    }
+    ImmutableList.Builder<Shard<K>> shards = ImmutableList.builderWithExpectedSize(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(new Shard<>());
+    }
+    this.shards = shards.build();
+    // The shard is picked by the upper bits of the hash, the slot in the shard by the lower ones
+    this.shardShift = Integer.SIZE - Integer.numberOfTrailingZeros(shardCount);
+    if (maximumSize > 0) {
+      int maxShardSize = Math.max(2, IntMath.divide(maximumSize, shardCount, RoundingMode.CEILING));
+      this.maxWindowSize = Math.max(1, maxShardSize * WINDOW_PERCENT / 100);
+      this.maxMainSize = maxShardSize - maxWindowSize;
+      this.sketch = new FrequencySketch(maximumSize);
+    } else {
+      this.maxWindowSize = 0;
+      this.maxMainSize = 0;
+      this.sketch = null;
+    }
+  }
+
+  /** Returns the limiter of the key, loading it if it is not present. */
+  RateLimiter get(K key) {
+    int hash = hash(key);
+    Shard<K> shard = shard(hash);
+    if (sketch != null) {
+      sketch.increment(hash);
+    }
+    Entry<K> entry = find(shard.table(), key, hash);
+    if (entry == null) {
+      misses.increment();
+      entry = load(shard, key, hash);
+    } else {
+      hits.increment();
+      if (entry.generation != generation.getAsInt()) {
+        entry = revalidate(shard, entry);
+      }
+    }
+    entry.lastAccess = ticker.read();
+    return entry.limiter;
+  }
+
+  /** Returns the limiter of the key, or {@code null} if it is not present. */
+  RateLimiter getIfPresent(K key) {
+    int hash = hash(key);
+    Shard<K> shard = shard(hash);
+    Entry<K> entry = find(shard.table(), key, hash);
+    if (entry == null) {
+      synchronized (shard) {
+        entry = find(shard.table(), key, hash);
+      }
+    }
+    return entry != null ? entry.limiter : null;
+  }
+
+  /** Removes and closes the limiter of the key. */
+  void invalidate(K key) {
+    int hash = hash(key);
+    Shard<K> shard = shard(hash);
+    Entry<K> removed;
+    synchronized (shard) {
+      removed = find(shard.table(), key, hash);
+      if (removed != null) {
+        shard.remove(removed);
+        if (removed.region == Region.WINDOW) {
+          shard.windowSize--;
+        }
+        removed.region = Region.REMOVED;
+      }
+    }
+    if (removed != null) {
+      removed.limiter.close();
+    }
+  }
+
+  /** Returns a copy of the limiters keyed by their key. */
+  ImmutableMap<K, RateLimiter> snapshot() {
+    ImmutableMap.Builder<K, RateLimiter> limiters = ImmutableMap.builder();
+    for (Shard<K> shard : shards) {
+      synchronized (shard) {
+        AtomicReferenceArray<Entry<K>> t = shard.table();
+        for (int i = 0; i < t.length(); i++) {
+          Entry<K> entry = t.get(i);
+          if (entry != null) {
+            limiters.put(entry.key, entry.limiter);
+          }
+        }
+      }
+    }
+    return limiters.build();
+  }
+
+  int size() {
+    int size = 0;
+    for (Shard<K> shard : shards) {
+      synchronized (shard) {
+        size += shard.size();
+      }
+    }
+    return size;
+  }
+
+  /** Returns the number of lookups which found their limiter. */
+  long hitCount() {
+    return hits.sum();
+  }
+
+  /** Returns the number of lookups which loaded their limiter. */
+  long missCount() {
+    return misses.sum();
+  }
+
+  /** Returns the number of limiters evicted to keep the number of limiters under the maximum. */
+  long evictionCount() {
+    return evictions.sum();
+  }
+
+  /** Removes and closes the idle limiters. */
+  void cleanUp() {
+    long now = ticker.read();
+    List<Entry<K>> expired = new ArrayList<>();
+    for (Shard<K> shard : shards) {
+      int first = expired.size();
+      synchronized (shard) {
+        AtomicReferenceArray<Entry<K>> t = shard.table();
+        for (int i = 0; i < t.length(); i++) {
+          Entry<K> entry = t.get(i);
+          if (entry != null && now - entry.lastAccess >= entry.expireAfterAccess) {
+            expired.add(entry);
+          }
+        }
+        for (Entry<K> entry : expired.subList(first, expired.size())) {
+          shard.remove(entry);
+          if (entry.region == Region.WINDOW) {
+            shard.windowSize--;
+          }
+          entry.region = Region.REMOVED;
+        }
+      }
+    }
+    expired.forEach(entry -> entry.limiter.close());
+  }
+
+  /**
+   * Checks the limiter of an entry loaded from an older configuration, keeping it if it still
+   * applies to its key and replacing it otherwise.
+   */
+  private Entry<K> revalidate(Shard<K> shard, Entry<K> entry) {
+    // Read before the check, so that a configuration published meanwhile is checked again later
+    int current = generation.getAsInt();
+    if (validator.test(entry.key, entry.limiter)) {
+      entry.generation = current;
+      return entry;
+    }
+    boolean removed = false;
+    synchronized (shard) {
+      // Another thread may have replaced the stale limiter already
+      if (shard.remove(entry)) {
+        if (entry.region == Region.WINDOW) {
+          shard.windowSize--;
+        }
+        entry.region = Region.REMOVED;
+        removed = true;
+      }
+    }
+    if (removed) {
+      entry.limiter.close();
+    }
+    return load(shard, entry.key, entry.hash);
+  }
+
+  private Entry<K> load(Shard<K> shard, K key, int hash) {
+    synchronized (shard) {
+      Entry<K> entry = find(shard.table(), key, hash);
+      if (entry != null) {
+        return entry;
+      }
+    }
+
+    // Resolving the limits of the key can be slow, do not block the other lookups meanwhile
+    int loadedGeneration = generation.getAsInt();
+    RateLimiter limiter = loader.apply(key);
+    Entry<K> entry;
+    List<Entry<K>> evicted = new ArrayList<>();
+    synchronized (shard) {
+      entry = find(shard.table(), key, hash);
+      if (entry == null) {
+        entry = new Entry<>(key, hash, limiter, ticker.read(), loadedGeneration);
+        shard.insert(entry);
+        if (sketch != null) {
+          admit(shard, entry, evicted);
+        }
+      }
+    }
+    if (entry.limiter != limiter) {
+      // Another thread loaded the limiter of the same key first
+      limiter.close();
+    }
+    evictions.add(evicted.size());
+    evicted.forEach(e -> e.limiter.close());
+    return entry;
+  }
+
+  /**
+   * Adds the new entry to the admission window of the shard. The entries leaving the window move to
+   * the main region of the shard while it has room, and then either replace a main entry accessed
+   * less frequently or are evicted.
+   */
+  private void admit(Shard<K> shard, Entry<K> entry, List<Entry<K>> evicted) {
+    entry.region = Region.WINDOW;
+    shard.window.addLast(entry);
+    shard.windowSize++;
+    while (shard.windowSize > maxWindowSize) {
+      Entry<K> candidate = shard.window.pollFirst();
+      if (candidate.region != Region.WINDOW) {
+        continue;
+      }
+      shard.windowSize--;
+      candidate.region = Region.MAIN;
+      if (shard.size() - shard.windowSize <= maxMainSize) {
+        continue;
+      }
+      Entry<K> victim = sampleVictim(shard, candidate);
+      Entry<K> loser =
+          sketch.frequency(candidate.hash) > sketch.frequency(victim.hash) ? victim : candidate;
+      shard.remove(loser);
+      loser.region = Region.REMOVED;
+      evicted.add(loser);
+    }
+  }
+
+  /** Returns the least recently used of a sample of the main entries other than the candidate. */
+  private Entry<K> sampleVictim(Shard<K> shard, Entry<K> candidate) {
+    AtomicReferenceArray<Entry<K>> t = shard.table();
+    int mask = t.length() - 1;
+    int i = ThreadLocalRandom.current().nextInt(t.length());
+    Entry<K> victim = null;
+    int sampled = 0;
+    // The main region holds more than the candidate, the scan always finds a victim
+    for (int scanned = 0; sampled < VICTIM_SAMPLE && scanned < t.length(); scanned++) {
+      Entry<K> entry = t.get(i);
+      if (entry != null && entry.region == Region.MAIN && entry != candidate) {
+        if (victim == null || entry.lastAccess < victim.lastAccess) {
+          victim = entry;
+        }
+        sampled++;
+      }
+      i = (i + 1) & mask;
+    }
+    return victim;
+  }
+
+  /**
+   * Returns after how long without access the limiter has replenished all the permits it could have
+   * handed out, plus the idle slack.
+   */
+  private static long expireAfterAccessNanos(RateLimiter limiter) {
+    Optional<Integer> timeLapse = limiter.getTimeLapse();
+    if (timeLapse == null || !timeLapse.isPresent()) {
+      return MAX_EXPIRE_AFTER_ACCESS_NANOS;
+    }
+    long window = TimeUnit.MINUTES.toNanos(timeLapse.get());
+    RateLimitAlgorithm algorithm = limiter.getAlgorithm();
+    if (algorithm == RateLimitAlgorithm.SLIDING_WINDOW) {
+      // The permits of the previous period still count during the current one
+      window *= 2;
+    } else if (algorithm == RateLimitAlgorithm.TOKEN_BUCKET
+        || algorithm == RateLimitAlgorithm.GCRA) {
+      int limit = limiter.permitsPerHour();
+      int burst = limiter.getBurst().orElse(limit);
+      if (limit > 0 && burst > limit) {
+        window = window / limit * burst;
+      }
+    }
+    return Math.min(window + IDLE_SLACK_NANOS, MAX_EXPIRE_AFTER_ACCESS_NANOS);
+  }
+
+  private Shard<K> shard(int hash) {
+    return shards.get(shardShift == Integer.SIZE ? 0 : hash >>> shardShift);
+  }
+
+  private static <K> Entry<K> find(AtomicReferenceArray<Entry<K>> t, K key, int hash) {
+    int mask = t.length() - 1;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      Entry<K> entry = t.get(i);
+      if (entry == null || (entry.hash == hash && entry.key.equals(key))) {
+        return entry;
+      }
+    }
+  }
+
+  /** Spreads the hash codes of the keys over the shards and their slots. */
+  private static int hash(Object key) {
+    return ProbingTable.spread(key.hashCode());
+  }
+}
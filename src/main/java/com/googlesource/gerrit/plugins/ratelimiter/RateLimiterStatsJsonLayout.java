@@ -0,0 +1,45 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.gerrit.util.logging.JsonLayout;
+import com.google.gerrit.util.logging.JsonLogEntry;
+import org.apache.log4j.spi.LoggingEvent;
+
+/** Formats the rate limit log as one JSON object per line. */
+class RateLimiterStatsJsonLayout extends JsonLayout {
+  /** MDC key of the account id or remote host a message is about. */
+  static final String KEY = "rateLimitKey";
+
+  @Override
+  public JsonLogEntry toJsonLogEntry(LoggingEvent event) {
+    return new RateLimiterStatsJsonLogEntry(event);
+  }
+
+  @SuppressWarnings("unused")
+  private class RateLimiterStatsJsonLogEntry extends JsonLogEntry {
+    public String timestamp;
+    public String level;
+    public String key;
+    public String message;
+
+    RateLimiterStatsJsonLogEntry(LoggingEvent event) {
+      this.timestamp = timestampFormatter.format(event.getTimeStamp());
+      this.level = event.getLevel().toString();
+      this.key = getMdcString(event, KEY);
+      this.message = event.getRenderedMessage();
+    }
+  }
+}
@@ -14,10 +14,14 @@
 
 package com.googlesource.gerrit.plugins.ratelimiter;
 
+import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.systemstatus.ServerInformation;
+import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.util.PluginLogFile;
 import com.google.gerrit.server.util.SystemLog;
 import com.google.inject.Inject;
+import com.google.inject.ProvisionException;
+import org.apache.log4j.Layout;
 import org.apache.log4j.PatternLayout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,8 +29,31 @@ import org.slf4j.LoggerFactory;
 class RateLimiterStatsLog extends PluginLogFile {
 
   @Inject
-  RateLimiterStatsLog(SystemLog systemLog, ServerInformation serverInfo) {
-    super(systemLog, serverInfo, getLogger().getName(), new PatternLayout("[%d] %m%n"));
+  RateLimiterStatsLog(
+      SystemLog systemLog,
+      ServerInformation serverInfo,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    super(
+        systemLog,
+        serverInfo,
+        getLogger().getName(),
+        layout(
+            pluginConfigFactory
+                .getGlobalPluginConfig(pluginName)
+                .getString("configuration", null, "statsLogFormat")));
+  }
+
+  /** Returns the layout of the given {@code configuration.statsLogFormat}, text by default. */
+  static Layout layout(String format) {
+    if (format == null || format.equalsIgnoreCase("text")) {
+      return new PatternLayout("[%d] %m%n");
+    }
+    if (format.equalsIgnoreCase("json")) {
+      return new RateLimiterStatsJsonLayout();
+    }
+    throw new ProvisionException(
+        String.format("Invalid configuration, unsupported stats log format: %s", format));
   }
 
   static Logger getLogger() {
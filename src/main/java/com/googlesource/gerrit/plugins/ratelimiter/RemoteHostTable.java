@@ -0,0 +1,776 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.googlesource.gerrit.plugins.ratelimiter.Module.DEFAULT_LIMIT;
+import static com.googlesource.gerrit.plugins.ratelimiter.Module.DEFAULT_RATE_LIMIT_TYPE;
+import static com.googlesource.gerrit.plugins.ratelimiter.RateLimiter.NO_PERMIT;
+import static java.math.RoundingMode.CEILING;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.math.IntMath;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.ProvisionException;
+import com.google.inject.Singleton;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Off-heap table of the rate limiter state of the anonymous remote hosts.
+ *
+ * <p>All the remote hosts share the limits of the anonymous users, so only the state of their
+ * limiter needs to be kept per host. It is stored with the binary address of the host in a
+ * fixed-size slot of a direct buffer, so that the number of distinct remote hosts does not change
+ * the size of the heap.
+ *
+ * <p>The table is set-associative: a host can only be stored in the {@link #WAYS} slots of the set
+ * its hash selects. When the set is full, a slot is reclaimed with the clock algorithm: the hand of
+ * the set skips, and clears, the slots referenced since it last passed. The timer also sweeps the
+ * whole table every minute, freeing the slots which were not referenced since the previous sweep
+ * and whose host has no permit in use anymore.
+ *
+ * <p>Each set is only accessed while holding the striped monitor it maps to.
+ */
+@Singleton
+class RemoteHostTable {
+  static final int WAYS = 8;
+
+  /** Largest capacity whose slots, 1.25 GiB, fit in a direct buffer. */
+  static final int MAX_CAPACITY = WAYS << 22;
+
+  private static final int LOCKS = 256;
+  private static final int SLOT_SIZE = 40;
+
+  // Slot layout: two longs of limiter state, the two longs of the host key, the flags and the
+  // second of the last warning
+  private static final int STATE = 0;
+  private static final int STATE2 = 8;
+  private static final int HOST_HIGH = 16;
+  private static final int HOST_LOW = 24;
+  private static final int FLAGS = 32;
+  private static final int WARNED_AT = 36;
+
+  private static final byte USED = 1;
+  private static final byte REFERENCED = 2;
+  private static final byte BLOCKED_LOGGED = 4;
+  private static final byte WARNING_LOGGED = 8;
+
+  /** Limits of the anonymous users, applied to every remote host. */
+  private static class Policy {
+    final int limit;
+    final int timeLapse;
+    final RateLimitAlgorithm algorithm;
+    final int burst;
+    final int warnLimit;
+    final String type;
+
+    Policy(
+        int limit,
+        int timeLapse,
+        RateLimitAlgorithm algorithm,
+        int burst,
+        int warnLimit,
+        String type) {
+      this.limit = limit;
+      this.timeLapse = timeLapse;
+      this.algorithm = algorithm;
+      this.burst = burst;
+      this.warnLimit = warnLimit;
+      this.type = type;
+    }
+
+    long windowNanos() {
+      return TimeUnit.MINUTES.toNanos(timeLapse);
+    }
+
+    /** Returns the most permits which can be acquired at once. */
+    int maxPermits() {
+      return algorithm == RateLimitAlgorithm.TOKEN_BUCKET || algorithm == RateLimitAlgorithm.GCRA
+          ? burst
+          : limit;
+    }
+
+    long emissionInterval() {
+      return Math.max(1, windowNanos() / limit);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Policy)) {
+        return false;
+      }
+      Policy other = (Policy) o;
+      return limit == other.limit
+          && timeLapse == other.timeLapse
+          && algorithm == other.algorithm
+          && burst == other.burst
+          && warnLimit == other.warnLimit
+          && type.equals(other.type);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(limit, timeLapse, algorithm, burst, warnLimit, type);
+    }
+  }
+
+  private final RateLimitFinder finder;
+  private final RateLimitNotifier notifier;
+  // Null in the tests not restoring permits
+  private final PermitsSnapshot snapshot;
+  private final Ticker ticker;
+  private final int sets;
+  private final ByteBuffer slots;
+  private final byte[] hands;
+  private final Object[] locks;
+  private final long origin;
+  private final AtomicInteger occupied = new AtomicInteger();
+  private final AtomicLong evictions = new AtomicLong();
+  private volatile Policy policy;
+
+  @Inject
+  RemoteHostTable(
+      RateLimitFinder finder,
+      RateLimitNotifier notifier,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName,
+      RateLimitTimer timer,
+      PermitsSnapshot snapshot) {
+    this(
+        finder,
+        notifier,
+        snapshot,
+        Ticker.systemTicker(),
+        capacity(pluginConfigFactory.getGlobalPluginConfig(pluginName)));
+    if (sets > 0) {
+      timer.scheduleAtFixedRate(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+  }
+
+  @VisibleForTesting
+  RemoteHostTable(RateLimitFinder finder, RateLimitNotifier notifier, Ticker ticker, int capacity) {
+    this(finder, notifier, null, ticker, capacity);
+  }
+
+  @VisibleForTesting
+  RemoteHostTable(
+      RateLimitFinder finder,
+      RateLimitNotifier notifier,
+      PermitsSnapshot snapshot,
+      Ticker ticker,
+      int capacity) {
+    this.finder = finder;
+    this.notifier = notifier;
+    this.snapshot = snapshot;
+    this.ticker = ticker;
+    checkArgument(capacity <= MAX_CAPACITY, "capacity %s above %s", capacity, MAX_CAPACITY);
+    this.sets =
+        capacity > 0 ? IntMath.ceilingPowerOfTwo(IntMath.divide(capacity, WAYS, CEILING)) : 0;
+    this.slots = ByteBuffer.allocateDirect(sets * WAYS * SLOT_SIZE);
+    this.hands = new byte[sets];
+    this.locks = new Object[Math.min(LOCKS, Math.max(1, sets))];
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+    this.origin = ticker.read();
+    this.policy = loadPolicy();
+  }
+
+  private static int capacity(Config config) {
+    int capacity = config.getInt("configuration", null, "remoteHostTableCapacity", 0);
+    if (capacity > MAX_CAPACITY) {
+      throw new ProvisionException(
+          String.format(
+              "Invalid configuration, configuration.remoteHostTableCapacity %d exceeds the maximum"
+                  + " of %d",
+              capacity, MAX_CAPACITY));
+    }
+    return capacity;
+  }
+
+  /**
+   * Returns true if the limiter state of the remote host is kept in this table instead of the
+   * remote hosts cache. This is the case when the table is enabled, the anonymous users are rate
+   * limited and the remote host is an IP address.
+   */
+  boolean accepts(HostKey remoteHost) {
+    return sets > 0 && policy != null && remoteHost.isAddress();
+  }
+
+  /**
+   * Acquires a permit for a remote host accepted by {@link #accepts(HostKey)}.
+   *
+   * @return the number of permits used by the host, including the acquired one, or {@link
+   *     RateLimiter#NO_PERMIT} if no permit was available
+   */
+  int tryAcquirePermit(HostKey remoteHost) {
+    return tryAcquirePermits(remoteHost, 1);
+  }
+
+  /**
+   * Acquires the given number of permits at once for a remote host accepted by {@link
+   * #accepts(HostKey)}, if they are all available. The permits are capped at the most the host can
+   * acquire at once, so that a costly fetch is not refused forever.
+   *
+   * @return the number of permits used by the host, including the acquired ones, or {@link
+   *     RateLimiter#NO_PERMIT} if not enough permits were available
+   */
+  int tryAcquirePermits(HostKey remoteHost, int permits) {
+    Policy p = policy;
+    if (p == null) {
+      // The anonymous users are not rate limited anymore
+      return 0;
+    }
+    permits = Math.max(1, Math.min(permits, p.maxPermits()));
+    if (snapshot != null && snapshot.hasPermitsToRestore() && !contains(remoteHost)) {
+      snapshot.restore(remoteHost, new HostRateLimiter(remoteHost));
+    }
+    long now = ticker.read() - origin;
+    int set = set(remoteHost);
+    int usedPermits;
+    long remainingNanos;
+    boolean logWarning = false;
+    boolean logBlocked = false;
+    synchronized (lock(set)) {
+      int slot = findOrClaim(set, remoteHost);
+      usedPermits = acquire(p, slot, now, permits);
+      byte flags = slots.get(slot + FLAGS);
+      if (WarningRateLimiter.startsPeriod(usedPermits, permits)) {
+        flags &= ~WARNING_LOGGED;
+      }
+      if (WarningRateLimiter.reachesWarnLimit(usedPermits, p.warnLimit)) {
+        // The warning is sent again a time lapse later, as by the warning limiters
+        int second = (int) TimeUnit.NANOSECONDS.toSeconds(now);
+        if ((flags & WARNING_LOGGED) == 0
+            || second - slots.getInt(slot + WARNED_AT) >= TimeUnit.MINUTES.toSeconds(p.timeLapse)) {
+          flags |= WARNING_LOGGED;
+          slots.putInt(slot + WARNED_AT, second);
+          logWarning = true;
+        }
+      }
+      if (usedPermits != NO_PERMIT) {
+        flags &= ~BLOCKED_LOGGED;
+      } else if ((flags & BLOCKED_LOGGED) == 0) {
+        flags |= BLOCKED_LOGGED;
+        logBlocked = true;
+      }
+      slots.put(slot + FLAGS, (byte) (flags | REFERENCED));
+      remainingNanos = remainingNanos(p, slot, now);
+    }
+
+    if (logWarning) {
+      notifier.notify(
+          remoteHost.toString(),
+          host ->
+              WarningRateLimiter.warningMessage(
+                  host, p.warnLimit, p.type, Optional.of(p.timeLapse)),
+          false,
+          true);
+    }
+    if (logBlocked) {
+      long remainingSeconds = TimeUnit.NANOSECONDS.toSeconds(remainingNanos);
+      notifier.notify(
+          remoteHost.toString(),
+          host ->
+              WarningRateLimiter.blockedMessage(
+                  host, p.limit, p.type, Optional.of(p.timeLapse), remainingSeconds),
+          false,
+          false);
+    }
+    return usedPermits;
+  }
+
+  /** Returns the limit applied to every remote host stored in this table. */
+  int permitsPerHour() {
+    Policy p = policy;
+    return p != null ? p.limit : DEFAULT_LIMIT;
+  }
+
+  /** Forgets the permits used by the remote host. */
+  void replenishPermits(HostKey remoteHost) {
+    if (!accepts(remoteHost)) {
+      return;
+    }
+    int set = set(remoteHost);
+    synchronized (lock(set)) {
+      int slot = find(set, remoteHost);
+      if (slot >= 0) {
+        free(slot);
+      }
+    }
+  }
+
+  /** Forgets the permits used by all the remote hosts. */
+  void replenishAllPermits() {
+    for (int set = 0; set < sets; set++) {
+      synchronized (lock(set)) {
+        for (int way = 0; way < WAYS; way++) {
+          int slot = slot(set, way);
+          if (isUsed(slot)) {
+            free(slot);
+          }
+        }
+      }
+    }
+  }
+
+  /** Reloads the limits of the anonymous users, forgetting all the permits if they changed. */
+  void refresh() {
+    Policy p = loadPolicy();
+    if (!Objects.equals(p, policy)) {
+      policy = p;
+      replenishAllPermits();
+    }
+  }
+
+  /**
+   * Returns the rate limiters of the remote hosts held by the table, keyed by remote host. They are
+   * views of the slots of the hosts, reading and updating the table, rather than copies.
+   */
+  ImmutableMap<HostKey, RateLimiter> snapshot() {
+    if (policy == null) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap.Builder<HostKey, RateLimiter> hosts = ImmutableMap.builder();
+    for (int set = 0; set < sets; set++) {
+      synchronized (lock(set)) {
+        for (int way = 0; way < WAYS; way++) {
+          int slot = slot(set, way);
+          if (isUsed(slot)) {
+            HostKey remoteHost =
+                HostKey.ofAddress(slots.getLong(slot + HOST_HIGH), slots.getLong(slot + HOST_LOW));
+            hosts.put(remoteHost, new HostRateLimiter(remoteHost));
+          }
+        }
+      }
+    }
+    return hosts.build();
+  }
+
+  int capacity() {
+    return sets * WAYS;
+  }
+
+  int occupied() {
+    return occupied.get();
+  }
+
+  long evictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Frees the slots which were not referenced since the previous sweep and whose host has no permit
+   * in use, and clears the reference flag of the others.
+   */
+  void sweep() {
+    Policy p = policy;
+    for (int set = 0; set < sets; set++) {
+      synchronized (lock(set)) {
+        long now = ticker.read() - origin;
+        for (int way = 0; way < WAYS; way++) {
+          int slot = slot(set, way);
+          byte flags = slots.get(slot + FLAGS);
+          if ((flags & USED) == 0) {
+            continue;
+          }
+          if ((flags & REFERENCED) != 0) {
+            slots.put(slot + FLAGS, (byte) (flags & ~REFERENCED));
+          } else if (p == null || isIdle(p, slot, now)) {
+            free(slot);
+          }
+        }
+      }
+    }
+  }
+
+  private Policy loadPolicy() {
+    RateLimitPolicy anonymous = finder.findAnonymousPolicy();
+    Optional<RateLimit> limit = anonymous.get(RateLimitType.UPLOAD_PACK_PER_HOUR);
+    Optional<RateLimit> warn = anonymous.get(RateLimitType.UPLOAD_PACK_PER_HOUR_WARN);
+    Optional<RateLimit> timeLapse = anonymous.get(RateLimitType.TIME_LAPSE_IN_MINUTES);
+    if (!limit.isPresent() && !warn.isPresent()) {
+      return null;
+    }
+
+    String type = DEFAULT_RATE_LIMIT_TYPE;
+    int myLimit = DEFAULT_LIMIT;
+    RateLimitAlgorithm algorithm = RateLimitAlgorithm.FIXED_WINDOW;
+    if (limit.isPresent()) {
+      myLimit = limit.get().getRatePerHour();
+      type = limit.get().getType().getLimitType();
+      algorithm = anonymous.getAlgorithm().orElse(RateLimitAlgorithm.FIXED_WINDOW);
+    }
+    int effectiveTimeLapse = PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+    if (Configuration.validTimeLapse(timeLapse, effectiveTimeLapse)) {
+      effectiveTimeLapse = timeLapse.get().getRatePerHour();
+      type = timeLapse.get().getType().getLimitType();
+    }
+    int burst =
+        anonymous
+            .get(RateLimitType.BURST)
+            .map(RateLimit::getRatePerHour)
+            .filter(b -> b > 0)
+            .orElse(myLimit);
+    return new Policy(
+        myLimit,
+        effectiveTimeLapse,
+        algorithm,
+        burst,
+        warn.map(RateLimit::getRatePerHour).orElse(0),
+        type);
+  }
+
+  /**
+   * Charges the remote host the permits it used before a restart, as far as they are available,
+   * without notifying: the warning and the blocked host are logged by the next acquisitions.
+   */
+  private void restoreUsedPermits(HostKey remoteHost, int permits) {
+    Policy p = policy;
+    if (p == null) {
+      return;
+    }
+    long now = ticker.read() - origin;
+    int set = set(remoteHost);
+    synchronized (lock(set)) {
+      int slot = findOrClaim(set, remoteHost);
+      int available = Math.min(permits, p.maxPermits() - used(p, slot, now));
+      if (available > 0) {
+        acquire(p, slot, now, available);
+      }
+      slots.put(slot + FLAGS, (byte) (slots.get(slot + FLAGS) | REFERENCED));
+    }
+  }
+
+  private boolean contains(HostKey remoteHost) {
+    int set = set(remoteHost);
+    synchronized (lock(set)) {
+      return find(set, remoteHost) >= 0;
+    }
+  }
+
+  /** Returns the permits used by the remote host, 0 if it is not in the table. */
+  private int usedPermits(Policy p, HostKey remoteHost) {
+    int set = set(remoteHost);
+    synchronized (lock(set)) {
+      int slot = find(set, remoteHost);
+      return slot >= 0 ? used(p, slot, ticker.read() - origin) : 0;
+    }
+  }
+
+  /**
+   * Returns the time until the permits of the remote host are given back, 0 if it is not in the
+   * table.
+   */
+  private long remainingNanos(Policy p, HostKey remoteHost) {
+    int set = set(remoteHost);
+    synchronized (lock(set)) {
+      int slot = find(set, remoteHost);
+      return slot >= 0 ? remainingNanos(p, slot, ticker.read() - origin) : 0;
+    }
+  }
+
+  /** Returns the permits in use in the state of the slot, as {@link #acquire} counts them. */
+  private int used(Policy p, int slot, long now) {
+    long state = slots.getLong(slot + STATE);
+    long state2 = slots.getLong(slot + STATE2);
+    switch (p.algorithm) {
+      case TOKEN_BUCKET:
+      case GCRA:
+        {
+          long emissionInterval = p.emissionInterval();
+          long delay = state - now;
+          return delay <= 0 ? 0 : (int) ((delay + emissionInterval - 1) / emissionInterval);
+        }
+      case SLIDING_WINDOW:
+        {
+          long window = now / p.windowNanos();
+          int previous =
+              window == state ? (int) (state2 >>> 32) : window == state + 1 ? (int) state2 : 0;
+          int current = window == state ? (int) state2 : 0;
+          double previousWeight = 1 - (double) (now % p.windowNanos()) / p.windowNanos();
+          return (int) (previous * previousWeight) + current;
+        }
+      case FIXED_WINDOW:
+      default:
+        return now / p.windowNanos() == state ? (int) state2 : 0;
+    }
+  }
+
+  /**
+   * Applies the algorithm of the policy to the state of the slot.
+   *
+   * <ul>
+   *   <li>fixed window: window number and permits used in it
+   *   <li>sliding window: window number, and permits used in the previous window in the upper 32
+   *       bits and in the current one in the lower 32 bits
+   *   <li>token bucket and GCRA: theoretical arrival time, see {@link GcraRateLimiter}
+   * </ul>
+   */
+  private int acquire(Policy p, int slot, long now, int permits) {
+    long state = slots.getLong(slot + STATE);
+    long state2 = slots.getLong(slot + STATE2);
+    switch (p.algorithm) {
+      case TOKEN_BUCKET:
+      case GCRA:
+        {
+          if (permits > p.burst) {
+            return NO_PERMIT;
+          }
+          long emissionInterval = p.emissionInterval();
+          long next = Math.max(state, now) + permits * emissionInterval;
+          if (next - now > p.burst * emissionInterval) {
+            return NO_PERMIT;
+          }
+          slots.putLong(slot + STATE, next);
+          return (int) ((next - now + emissionInterval - 1) / emissionInterval);
+        }
+      case SLIDING_WINDOW:
+        {
+          long window = now / p.windowNanos();
+          int previous = (int) (state2 >>> 32);
+          int current = (int) state2;
+          if (window != state) {
+            previous = window == state + 1 ? current : 0;
+            current = 0;
+          }
+          double previousWeight = 1 - (double) (now % p.windowNanos()) / p.windowNanos();
+          int used = (int) (previous * previousWeight) + current;
+          slots.putLong(slot + STATE, window);
+          if (permits > p.limit - used) {
+            slots.putLong(slot + STATE2, ((long) previous << 32) | (current & 0xFFFFFFFFL));
+            return NO_PERMIT;
+          }
+          slots.putLong(
+              slot + STATE2, ((long) previous << 32) | ((current + permits) & 0xFFFFFFFFL));
+          return used + permits;
+        }
+      case FIXED_WINDOW:
+      default:
+        {
+          long window = now / p.windowNanos();
+          int used = window == state ? (int) state2 : 0;
+          if (permits > p.limit - used) {
+            return NO_PERMIT;
+          }
+          slots.putLong(slot + STATE, window);
+          slots.putLong(slot + STATE2, used + permits);
+          return used + permits;
+        }
+    }
+  }
+
+  private long remainingNanos(Policy p, int slot, long now) {
+    switch (p.algorithm) {
+      case TOKEN_BUCKET:
+      case GCRA:
+        return Math.max(0, slots.getLong(slot + STATE) - now);
+      case SLIDING_WINDOW:
+      case FIXED_WINDOW:
+      default:
+        return p.windowNanos() - now % p.windowNanos();
+    }
+  }
+
+  /** Returns true if forgetting the state of the slot does not give any permit back. */
+  private boolean isIdle(Policy p, int slot, long now) {
+    long state = slots.getLong(slot + STATE);
+    switch (p.algorithm) {
+      case TOKEN_BUCKET:
+      case GCRA:
+        return state <= now;
+      case SLIDING_WINDOW:
+        return now / p.windowNanos() > state + 1;
+      case FIXED_WINDOW:
+      default:
+        return now / p.windowNanos() != state;
+    }
+  }
+
+  private int findOrClaim(int set, HostKey remoteHost) {
+    int slot = find(set, remoteHost);
+    if (slot >= 0) {
+      return slot;
+    }
+    for (int way = 0; way < WAYS; way++) {
+      slot = slot(set, way);
+      if (!isUsed(slot)) {
+        return claim(slot, remoteHost);
+      }
+    }
+
+    // The set is full, run the clock hand until it finds a slot not referenced since last pass
+    int hand = hands[set];
+    while (true) {
+      slot = slot(set, hand);
+      hand = (hand + 1) % WAYS;
+      byte flags = slots.get(slot + FLAGS);
+      if ((flags & REFERENCED) != 0) {
+        slots.put(slot + FLAGS, (byte) (flags & ~REFERENCED));
+      } else {
+        hands[set] = (byte) hand;
+        free(slot);
+        evictions.incrementAndGet();
+        return claim(slot, remoteHost);
+      }
+    }
+  }
+
+  private int find(int set, HostKey remoteHost) {
+    for (int way = 0; way < WAYS; way++) {
+      int slot = slot(set, way);
+      if (isUsed(slot)
+          && slots.getLong(slot + HOST_LOW) == remoteHost.low()
+          && slots.getLong(slot + HOST_HIGH) == remoteHost.high()) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private int claim(int slot, HostKey remoteHost) {
+    // A new host has all its permits: its theoretical arrival time is in the past, and its window
+    // number is neither the current nor the previous window
+    slots.putLong(slot + STATE, Long.MIN_VALUE / 2);
+    slots.putLong(slot + STATE2, 0);
+    slots.put(slot + FLAGS, USED);
+    slots.putLong(slot + HOST_HIGH, remoteHost.high());
+    slots.putLong(slot + HOST_LOW, remoteHost.low());
+    occupied.incrementAndGet();
+    return slot;
+  }
+
+  private void free(int slot) {
+    slots.put(slot + FLAGS, (byte) 0);
+    occupied.decrementAndGet();
+  }
+
+  private boolean isUsed(int slot) {
+    return (slots.get(slot + FLAGS) & USED) != 0;
+  }
+
+  private int set(HostKey remoteHost) {
+    return remoteHost.hashCode() & (sets - 1);
+  }
+
+  private static int slot(int set, int way) {
+    return (set * WAYS + way) * SLOT_SIZE;
+  }
+
+  private Object lock(int set) {
+    return locks[set & (locks.length - 1)];
+  }
+
+  /** Rate limiter of a remote host, reading and updating its slot with the current limits. */
+  private class HostRateLimiter implements RateLimiter {
+    private final HostKey remoteHost;
+
+    HostRateLimiter(HostKey remoteHost) {
+      this.remoteHost = remoteHost;
+    }
+
+    @Override
+    public int permitsPerHour() {
+      return RemoteHostTable.this.permitsPerHour();
+    }
+
+    @Override
+    public boolean acquirePermit() {
+      return tryAcquirePermit() != NO_PERMIT;
+    }
+
+    @Override
+    public int tryAcquirePermits(int permits) {
+      return RemoteHostTable.this.tryAcquirePermits(remoteHost, permits);
+    }
+
+    @Override
+    public int availablePermits() {
+      Policy p = policy;
+      return p != null
+          ? p.maxPermits() - RemoteHostTable.this.usedPermits(p, remoteHost)
+          : DEFAULT_LIMIT;
+    }
+
+    @Override
+    public int usedPermits() {
+      Policy p = policy;
+      return p != null ? RemoteHostTable.this.usedPermits(p, remoteHost) : 0;
+    }
+
+    @Override
+    public long remainingTime(TimeUnit timeUnit) {
+      Policy p = policy;
+      return p != null ? timeUnit.convert(remainingNanos(p, remoteHost), TimeUnit.NANOSECONDS) : 0;
+    }
+
+    @Override
+    public void restoreUsedPermits(int permits) {
+      RemoteHostTable.this.restoreUsedPermits(remoteHost, permits);
+    }
+
+    @Override
+    public void replenishPermits() {
+      RemoteHostTable.this.replenishPermits(remoteHost);
+    }
+
+    @Override
+    public String getType() {
+      Policy p = policy;
+      return p != null ? p.type : DEFAULT_RATE_LIMIT_TYPE;
+    }
+
+    @Override
+    public Optional<Integer> getTimeLapse() {
+      return Optional.ofNullable(policy).map(p -> p.timeLapse);
+    }
+
+    @Override
+    public Optional<Integer> getWarnLimit() {
+      return Optional.ofNullable(policy).map(p -> p.warnLimit).filter(w -> w > 0);
+    }
+
+    @Override
+    public RateLimitAlgorithm getAlgorithm() {
+      Policy p = policy;
+      return p != null ? p.algorithm : RateLimitAlgorithm.FIXED_WINDOW;
+    }
+
+    @Override
+    public Optional<Integer> getBurst() {
+      return Optional.ofNullable(policy)
+          .filter(
+              p ->
+                  p.algorithm == RateLimitAlgorithm.TOKEN_BUCKET
+                      || p.algorithm == RateLimitAlgorithm.GCRA)
+          .map(p -> p.burst);
+    }
+
+    @Override
+    public void close() {
+      // the slot is freed by the table
+    }
+  }
+}
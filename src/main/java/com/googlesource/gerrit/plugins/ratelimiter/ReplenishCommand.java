@@ -17,7 +17,6 @@ package com.googlesource.gerrit.plugins.ratelimiter;
 import static com.google.gerrit.sshd.CommandMetaData.Mode.MASTER_OR_SLAVE;
 import static com.googlesource.gerrit.plugins.ratelimiter.Module.UPLOAD_PACK_PER_HOUR;
 
-import com.google.common.cache.LoadingCache;
 import com.google.gerrit.common.data.GlobalCapability;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.extensions.annotations.CapabilityScope;
@@ -49,12 +48,12 @@ final class ReplenishCommand extends SshCommand {
   @Option(name = "--remotehost", usage = "IP of the remotehost", metaVar = "IP")
   private List<String> remoteHosts = new ArrayList<>();
 
-  private final LoadingCache<String, RateLimiter> uploadPackPerHour;
+  private final RateLimiterRegistry<HostKey> uploadPackPerHour;
   private final RateLimiterProcessing rateLimiterProcessing;
 
   @Inject
   ReplenishCommand(
-      @Named(UPLOAD_PACK_PER_HOUR) LoadingCache<String, RateLimiter> uploadPackPerHour,
+      @Named(UPLOAD_PACK_PER_HOUR) RateLimiterRegistry<HostKey> uploadPackPerHour,
       RateLimiterProcessing rateLimiterProcessing) {
     this.uploadPackPerHour = uploadPackPerHour;
     this.rateLimiterProcessing = rateLimiterProcessing;
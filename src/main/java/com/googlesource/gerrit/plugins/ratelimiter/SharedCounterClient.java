@@ -0,0 +1,263 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client of a key-value store counting the permits shared by several Gerrit servers.
+ *
+ * <p>The client speaks the subset of the Redis protocol (RESP) needed to count: {@code INCRBY},
+ * {@code PEXPIRE} and {@code DEL}, so that any Redis compatible store can be used. The commands are
+ * pipelined on a single connection: a command is written without waiting for the replies of the
+ * previous ones, and a reader thread completes the replies in the order of the commands. When the
+ * connection fails, the pending replies fail, and connecting again is attempted at most once per
+ * second, so that the callers fall back to counting locally meanwhile without waiting.
+ */
+class SharedCounterClient implements AutoCloseable {
+  private static final long RECONNECT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Maximum number of replies awaited. A store not reading the commands anymore fails the new ones
+   * once reached, before writing blocks on a full socket buffer.
+   */
+  private static final int MAX_PENDING = 1024;
+
+  private final String host;
+  private final int port;
+  private final int connectTimeoutMillis;
+
+  /** Guards the connection and the pending replies, which are queued in the order of writing. */
+  private final Object lock = new Object();
+
+  private final Queue<CompletableFuture<Long>> pending = new ArrayDeque<>();
+  private Socket socket;
+  private OutputStream out;
+  private long nextConnect = System.nanoTime();
+  private boolean closed;
+
+  /**
+   * @param address {@code host:port} of the store
+   * @param connectTimeoutMillis maximum time to wait for connecting
+   */
+  SharedCounterClient(String address, int connectTimeoutMillis) {
+    InetSocketAddress parsed = parseAddress(address);
+    this.host = parsed.getHostString();
+    this.port = parsed.getPort();
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  /**
+   * Parses the {@code host:port} address of a store, without resolving the host.
+   *
+   * @throws IllegalArgumentException if the address has no host or no valid port
+   */
+  static InetSocketAddress parseAddress(String address) {
+    int colon = address.lastIndexOf(':');
+    if (colon <= 0) {
+      throw new IllegalArgumentException("Invalid address, expected host:port: " + address);
+    }
+    int port;
+    try {
+      port = Integer.parseInt(address.substring(colon + 1));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid port, expected host:port: " + address, e);
+    }
+    if (port <= 0 || port > 0xFFFF) {
+      throw new IllegalArgumentException("Invalid port, expected host:port: " + address);
+    }
+    return InetSocketAddress.createUnresolved(address.substring(0, colon), port);
+  }
+
+  /**
+   * Increments the counter of the key, which expires after the given time.
+   *
+   * @return the value of the counter after the increment
+   */
+  CompletableFuture<Long> incrementBy(String key, long delta, long expireAfterMillis) {
+    CompletableFuture<Long> value = new CompletableFuture<>();
+    send(
+        value,
+        command("INCRBY", key, Long.toString(delta)),
+        command("PEXPIRE", key, Long.toString(expireAfterMillis)));
+    return value;
+  }
+
+  /** Deletes the counter of the key. */
+  CompletableFuture<Long> delete(String key) {
+    CompletableFuture<Long> deleted = new CompletableFuture<>();
+    send(deleted, command("DEL", key));
+    return deleted;
+  }
+
+  @Override
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+      disconnect(new IOException("Closed"));
+    }
+  }
+
+  /**
+   * Writes the commands, completing the reply with the one of the first command and ignoring the
+   * replies of the others.
+   */
+  private void send(CompletableFuture<Long> reply, byte[]... commands) {
+    synchronized (lock) {
+      if (pending.size() + commands.length > MAX_PENDING) {
+        reply.completeExceptionally(new IOException("Too many commands awaiting a reply"));
+        return;
+      }
+      try {
+        OutputStream o = connect();
+        for (byte[] c : commands) {
+          o.write(c);
+        }
+        o.flush();
+        pending.add(reply);
+        for (int i = 1; i < commands.length; i++) {
+          pending.add(new CompletableFuture<>());
+        }
+      } catch (IOException e) {
+        disconnect(e);
+        reply.completeExceptionally(e);
+      }
+    }
+  }
+
+  private OutputStream connect() throws IOException {
+    if (out != null) {
+      return out;
+    }
+    if (closed) {
+      throw new IOException("Closed");
+    }
+    long now = System.nanoTime();
+    if (now - nextConnect < 0) {
+      throw new IOException("Not connected to " + host + ":" + port);
+    }
+    nextConnect = now + RECONNECT_INTERVAL_NANOS;
+    Socket s = new Socket();
+    try {
+      s.setTcpNoDelay(true);
+      s.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+    } catch (IOException e) {
+      s.close();
+      throw e;
+    }
+    socket = s;
+    out = new BufferedOutputStream(s.getOutputStream());
+    InputStream in = new BufferedInputStream(s.getInputStream());
+    Thread reader = new Thread(() -> read(s, in), "Rate-limit-backend-reader");
+    reader.setDaemon(true);
+    reader.start();
+    return out;
+  }
+
+  /** Completes the pending replies in order, until the connection fails. */
+  private void read(Socket s, InputStream in) {
+    try {
+      while (true) {
+        int type = in.read();
+        if (type == -1) {
+          throw new EOFException();
+        }
+        String line = readLine(in);
+        CompletableFuture<Long> reply;
+        synchronized (lock) {
+          reply = pending.poll();
+        }
+        if (reply == null) {
+          throw new IOException("Unexpected reply: " + (char) type + line);
+        }
+        switch (type) {
+          case ':':
+            reply.complete(Long.parseLong(line));
+            break;
+          case '+':
+            reply.complete(0L);
+            break;
+          case '-':
+            reply.completeExceptionally(new IOException("Error reply: " + line));
+            break;
+          default:
+            IOException e = new IOException("Unsupported reply: " + (char) type + line);
+            reply.completeExceptionally(e);
+            throw e;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      synchronized (lock) {
+        if (socket == s) {
+          disconnect(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+      }
+    }
+  }
+
+  private void disconnect(IOException cause) {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Already failed
+      }
+      socket = null;
+      out = null;
+    }
+    CompletableFuture<Long> reply;
+    while ((reply = pending.poll()) != null) {
+      reply.completeExceptionally(cause);
+    }
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\r') {
+      if (c == -1) {
+        throw new EOFException();
+      }
+      line.append((char) c);
+    }
+    if (in.read() != '\n') {
+      throw new IOException("Malformed reply");
+    }
+    return line.toString();
+  }
+
+  /** Encodes a command as a RESP array of bulk strings. */
+  static byte[] command(String... args) {
+    StringBuilder command = new StringBuilder().append('*').append(args.length).append("\r\n");
+    for (String arg : args) {
+      command.append('$').append(arg.getBytes(UTF_8).length).append("\r\n");
+      command.append(arg).append("\r\n");
+    }
+    return command.toString().getBytes(UTF_8);
+  }
+}
@@ -0,0 +1,346 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed window rate limiter counting the permits used by all the servers in a shared store.
+ *
+ * <p>The windows are aligned on the wall clock, so that all the servers count in the same window,
+ * and the permits of a window are counted by a key of the store which expires after it. The limiter
+ * of the server still counts the permits it hands out: when the store does not reply in time, or
+ * fails, the permit is acquired from it instead.
+ *
+ * <p>When leasing, the limiter reserves a block of permits in the store at once, and hands them out
+ * without asking the store again. The block starts with a single permit and doubles each time the
+ * previous one was spent before it expired, up to the maximum lease. The permits left when the
+ * lease expires, or the limiter is closed, are given back to the store, and the next block shrinks
+ * to the permits actually spent, so that the keys fetching rarely do not hold permits the other
+ * servers could use.
+ */
+class SharedRateLimiter implements RateLimiter {
+  private static final long NO_REPLY = Long.MIN_VALUE;
+
+  private final SharedCounterClient client;
+  private final String key;
+  private final RateLimiter local;
+  private final long windowMillis;
+  private final long timeoutNanos;
+  private final LongSupplier clock;
+  private final LongAdder fallbacks;
+  private final int maxLease;
+  private final long leaseMillis;
+  private final Set<SharedRateLimiter> leases;
+
+  /** Window of {@link #sharedUsedPermits}, or -1 if the store did not reply yet. */
+  private volatile long window = -1;
+
+  /** Permits used by all the servers in the window, as of the last reply of the store. */
+  private volatile long sharedUsedPermits;
+
+  /** Guards the lease, waited for at most the timeout of the store. */
+  private final ReentrantLock leaseLock = new ReentrantLock();
+
+  private long leaseWindow = -1;
+  private long nextLeasedPermit;
+  private long lastLeasedPermit = -1;
+  private long leaseExpiry;
+  private int leaseSize = 1;
+
+  /**
+   * @param key key of the user or remote host
+   * @param local limiter of the server, acquiring the permits when the store does not reply
+   * @param timeoutNanos maximum time to wait for the store
+   * @param clock returns the current time in milliseconds since the epoch
+   * @param fallbacks counts the permits acquired from the local limiter instead of the store
+   */
+  SharedRateLimiter(
+      SharedCounterClient client,
+      String key,
+      RateLimiter local,
+      long timeoutNanos,
+      LongSupplier clock,
+      LongAdder fallbacks) {
+    this(client, key, local, timeoutNanos, clock, fallbacks, 1, 0, null);
+  }
+
+  /**
+   * @param maxLease maximum number of permits reserved at once, 1 to acquire each permit from the
+   *     store
+   * @param leaseMillis time after which the permits left of a lease are given back
+   * @param leases limiters holding a lease, to which this limiter adds itself when it gets one
+   */
+  SharedRateLimiter(
+      SharedCounterClient client,
+      String key,
+      RateLimiter local,
+      long timeoutNanos,
+      LongSupplier clock,
+      LongAdder fallbacks,
+      int maxLease,
+      long leaseMillis,
+      Set<SharedRateLimiter> leases) {
+    this.client = client;
+    this.key = key;
+    this.local = local;
+    this.windowMillis =
+        TimeUnit.MINUTES.toMillis(
+            local.getTimeLapse().orElse(PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES));
+    this.timeoutNanos = timeoutNanos;
+    this.clock = clock;
+    this.fallbacks = fallbacks;
+    this.maxLease = maxLease;
+    this.leaseMillis = leaseMillis;
+    this.leases = leases;
+  }
+
+  @Override
+  public int permitsPerHour() {
+    return local.permitsPerHour();
+  }
+
+  @Override
+  public boolean acquirePermit() {
+    return tryAcquirePermit() != NO_PERMIT;
+  }
+
+  @Override
+  public int tryAcquirePermits(int permits) {
+    long now = clock.getAsLong();
+    long w = now / windowMillis;
+    if (maxLease > 1) {
+      return tryAcquireLeasedPermits(now, w, permits);
+    }
+    long used = increment(w, permits);
+    if (used == NO_REPLY) {
+      return fallback(permits);
+    }
+    sharedUsedPermits = used;
+    window = w;
+    if (used > permitsPerHour()) {
+      // Give them back, for a cheaper fetch to get the permits left
+      client.incrementBy(counterKey(w), -permits, windowMillis);
+      return NO_PERMIT;
+    }
+    // Count them locally too, in case the store fails later in the window
+    local.tryAcquirePermits(permits);
+    return (int) used;
+  }
+
+  private int tryAcquireLeasedPermits(long now, long w, int permits) {
+    try {
+      if (!leaseLock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS)) {
+        return fallback(permits);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return fallback(permits);
+    }
+    try {
+      if (leaseWindow == w && now < leaseExpiry) {
+        if (permits <= lastLeasedPermit - nextLeasedPermit + 1) {
+          nextLeasedPermit += permits;
+          return grant(w, nextLeasedPermit - 1, permits);
+        }
+        if (nextLeasedPermit > lastLeasedPermit) {
+          // Spent before it expired
+          leaseSize = (int) Math.min(maxLease, 2L * leaseSize);
+        }
+      }
+      releaseLease(w);
+
+      int size = Math.max(leaseSize, permits);
+      long used = increment(w, size);
+      if (used == NO_REPLY) {
+        return fallback(permits);
+      }
+      long limit = permitsPerHour();
+      if (used > limit) {
+        // Give back the permits over the limit, for the other servers not to count them
+        client.incrementBy(counterKey(w), -Math.min(size, used - limit), windowMillis);
+      }
+      long first = used - size + 1;
+      leaseWindow = w;
+      nextLeasedPermit = first;
+      lastLeasedPermit = Math.min(used, limit);
+      leaseExpiry = now + leaseMillis;
+      if (permits <= lastLeasedPermit - first + 1) {
+        nextLeasedPermit += permits;
+      }
+      if (nextLeasedPermit <= lastLeasedPermit) {
+        leases.add(this);
+      }
+      if (nextLeasedPermit == first) {
+        // Not enough permits left, those below the limit are leased for a cheaper fetch
+        sharedUsedPermits = Math.min(first - 1, limit);
+        window = w;
+        return NO_PERMIT;
+      }
+      return grant(w, nextLeasedPermit - 1, permits);
+    } finally {
+      leaseLock.unlock();
+    }
+  }
+
+  /** Gives back the permits left of the lease once it expired, called periodically. */
+  void expireLease() {
+    if (!leaseLock.tryLock()) {
+      return;
+    }
+    try {
+      long now = clock.getAsLong();
+      if (leaseWindow != now / windowMillis || now >= leaseExpiry) {
+        releaseLease(now / windowMillis);
+      }
+      if (nextLeasedPermit > lastLeasedPermit) {
+        leases.remove(this);
+      }
+    } finally {
+      leaseLock.unlock();
+    }
+  }
+
+  /** Gives back the permits left of the lease, and shrinks the next one to the spent permits. */
+  private void releaseLease(long w) {
+    long left = lastLeasedPermit - nextLeasedPermit + 1;
+    if (left > 0) {
+      if (leaseWindow == w) {
+        client.incrementBy(counterKey(w), -left, windowMillis);
+      }
+      leaseSize = (int) Math.max(1, leaseSize - left);
+      lastLeasedPermit = nextLeasedPermit - 1;
+    }
+  }
+
+  /** Counts the permits up to the given one as used, and returns it. */
+  private int grant(long w, long lastPermit, int permits) {
+    sharedUsedPermits = lastPermit;
+    window = w;
+    local.tryAcquirePermits(permits);
+    return (int) lastPermit;
+  }
+
+  private int fallback(int permits) {
+    fallbacks.increment();
+    return local.tryAcquirePermits(permits);
+  }
+
+  /**
+   * Returns the count of the window after the increment, or {@link #NO_REPLY} if the store did not
+   * reply within the timeout.
+   */
+  private long increment(long w, int permits) {
+    try {
+      return client
+          .incrementBy(counterKey(w), permits, windowMillis)
+          .get(timeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return NO_REPLY;
+    } catch (ExecutionException | TimeoutException e) {
+      return NO_REPLY;
+    }
+  }
+
+  @Override
+  public void restoreUsedPermits(int permits) {
+    // The store kept counting while this server restarted
+    local.restoreUsedPermits(permits);
+  }
+
+  @Override
+  public int availablePermits() {
+    return permitsPerHour() - usedPermits();
+  }
+
+  @Override
+  public int usedPermits() {
+    long shared =
+        window == clock.getAsLong() / windowMillis
+            ? Math.min(sharedUsedPermits, permitsPerHour())
+            : 0;
+    return (int) Math.max(local.usedPermits(), shared);
+  }
+
+  @Override
+  public long remainingTime(TimeUnit timeUnit) {
+    return timeUnit.convert(windowMillis - clock.getAsLong() % windowMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void replenishPermits() {
+    local.replenishPermits();
+    leaseLock.lock();
+    try {
+      // Deleting the counter frees the leased permits too
+      lastLeasedPermit = nextLeasedPermit - 1;
+      client.delete(counterKey(clock.getAsLong() / windowMillis));
+      window = -1;
+    } finally {
+      leaseLock.unlock();
+    }
+  }
+
+  @Override
+  public String getType() {
+    return local.getType();
+  }
+
+  @Override
+  public Optional<Integer> getTimeLapse() {
+    return local.getTimeLapse();
+  }
+
+  @Override
+  public Optional<Integer> getWarnLimit() {
+    return local.getWarnLimit();
+  }
+
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return local.getAlgorithm();
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return local.getBurst();
+  }
+
+  @Override
+  public void close() {
+    leaseLock.lock();
+    try {
+      releaseLease(clock.getAsLong() / windowMillis);
+      if (leases != null) {
+        leases.remove(this);
+      }
+    } finally {
+      leaseLock.unlock();
+    }
+    local.close();
+  }
+
+  private String counterKey(long w) {
+    return "rate-limiter:" + key + ":" + w;
+  }
+}
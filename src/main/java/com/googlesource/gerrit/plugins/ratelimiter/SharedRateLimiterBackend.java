@@ -0,0 +1,144 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Counts the permits of the fixed window limiters in a key-value store shared by several servers,
+ * at {@code configuration.sharedBackend}. The limiters using another algorithm count on this server
+ * only.
+ *
+ * <p>With {@code configuration.sharedBackendLeasePercentage}, the limiters lease blocks of permits
+ * of at most that percentage of their limit, and the leases left are given back every second once
+ * expired.
+ */
+@Singleton
+class SharedRateLimiterBackend implements RateLimiterBackend, LifecycleListener {
+  static final int DEFAULT_TIMEOUT_MILLIS = 50;
+  static final int DEFAULT_LEASE_SECONDS = 10;
+
+  private final RateLimitTimer timer;
+  private final String address;
+  private final int timeoutMillis;
+  private final int leasePercentage;
+  private final long leaseMillis;
+  private final LongAdder fallbacks = new LongAdder();
+  private final Set<SharedRateLimiter> leases = ConcurrentHashMap.newKeySet();
+  private SharedCounterClient client;
+  private RateLimitTimer.Timeout leaseExpiryTask;
+
+  @Inject
+  SharedRateLimiterBackend(
+      RateLimitTimer timer,
+      PluginConfigFactory pluginConfigFactory,
+      @PluginName String pluginName) {
+    this.timer = timer;
+    Config config = pluginConfigFactory.getGlobalPluginConfig(pluginName);
+    this.address = config.getString("configuration", null, "sharedBackend");
+    this.timeoutMillis =
+        Math.max(
+            1,
+            config.getInt(
+                "configuration",
+                null,
+                "sharedBackendTimeoutInMilliseconds",
+                DEFAULT_TIMEOUT_MILLIS));
+    this.leasePercentage =
+        Math.min(
+            100,
+            Math.max(0, config.getInt("configuration", null, "sharedBackendLeasePercentage", 0)));
+    this.leaseMillis =
+        TimeUnit.SECONDS.toMillis(
+            Math.max(
+                1,
+                config.getInt(
+                    "configuration", null, "sharedBackendLeaseInSeconds", DEFAULT_LEASE_SECONDS)));
+  }
+
+  /** Returns the address of the store, {@code null} if it is not configured. */
+  String address() {
+    return address;
+  }
+
+  @Override
+  public RateLimiter share(String key, RateLimiter limiter) {
+    if (!shares(limiter)) {
+      return limiter;
+    }
+    return new SharedRateLimiter(
+        client(),
+        key,
+        limiter,
+        TimeUnit.MILLISECONDS.toNanos(timeoutMillis),
+        System::currentTimeMillis,
+        fallbacks,
+        Math.max(1, (int) ((long) limiter.permitsPerHour() * leasePercentage / 100)),
+        leaseMillis,
+        leases);
+  }
+
+  @Override
+  public boolean shares(RateLimiter limiter) {
+    return limiter.getAlgorithm() == RateLimitAlgorithm.FIXED_WINDOW;
+  }
+
+  /** Returns the number of permits acquired on this server because the store did not reply. */
+  long fallbacks() {
+    return fallbacks.sum();
+  }
+
+  private void expireLeases() {
+    for (SharedRateLimiter limiter : leases) {
+      limiter.expireLease();
+    }
+  }
+
+  @Override
+  public void start() {
+    // Connects on the first fetch
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (leaseExpiryTask != null) {
+      leaseExpiryTask.cancel();
+      leaseExpiryTask = null;
+    }
+    if (client != null) {
+      client.close();
+      client = null;
+    }
+  }
+
+  private synchronized SharedCounterClient client() {
+    if (client == null) {
+      client = new SharedCounterClient(address, timeoutMillis);
+      if (leasePercentage > 0) {
+        leaseExpiryTask = timer.scheduleAtFixedRate(this::expireLeases, 1, 1, TimeUnit.SECONDS);
+      }
+    }
+    return client;
+  }
+}
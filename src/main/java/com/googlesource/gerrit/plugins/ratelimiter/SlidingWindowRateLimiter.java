@@ -0,0 +1,151 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sliding window counter rate limiter.
+ *
+ * <p>Only the permits used in the current and in the previous window are counted. The usage is
+ * estimated by weighting the permits of the previous window by the fraction of it still covered by
+ * a window ending now, so that the limit cannot be exceeded twice around a window boundary.
+ */
+class SlidingWindowRateLimiter implements RateLimiter {
+  interface Factory {
+    SlidingWindowRateLimiter create(
+        @Assisted("permits") Integer permits,
+        @Assisted("timeLapse") Integer timeLapse,
+        String rateLimitType);
+  }
+
+  private final Ticker ticker;
+  private final int maxPermits;
+  private final int timeLapse;
+  private final long windowNanos;
+  private final String rateLimitType;
+  private final long origin;
+  private long window;
+  private int previousPermits;
+  private int currentPermits;
+
+  @Inject
+  SlidingWindowRateLimiter(
+      @Assisted("permits") Integer permits,
+      @Assisted("timeLapse") Integer timeLapse,
+      @Assisted String rateLimitType) {
+    this(Ticker.systemTicker(), permits, timeLapse, rateLimitType);
+  }
+
+  @VisibleForTesting
+  SlidingWindowRateLimiter(Ticker ticker, int permits, int timeLapse, String rateLimitType) {
+    this.ticker = ticker;
+    this.maxPermits = permits;
+    this.timeLapse = timeLapse;
+    this.windowNanos = TimeUnit.MINUTES.toNanos(timeLapse);
+    this.rateLimitType = rateLimitType;
+    this.origin = ticker.read();
+  }
+
+  @Override
+  public int permitsPerHour() {
+    return maxPermits;
+  }
+
+  @Override
+  public boolean acquirePermit() {
+    return tryAcquirePermit() != NO_PERMIT;
+  }
+
+  @Override
+  public synchronized int tryAcquirePermits(int permits) {
+    int used = weightedPermits(ticker.read());
+    if (permits > maxPermits - used) {
+      return NO_PERMIT;
+    }
+    currentPermits += permits;
+    return used + permits;
+  }
+
+  @Override
+  public int availablePermits() {
+    return maxPermits - usedPermits();
+  }
+
+  /** Returns the permits used in the sliding window, weighted as described above. */
+  @Override
+  public synchronized int usedPermits() {
+    return Math.min(maxPermits, weightedPermits(ticker.read()));
+  }
+
+  @Override
+  public long remainingTime(TimeUnit timeUnit) {
+    long elapsed = (ticker.read() - origin) % windowNanos;
+    return timeUnit.convert(windowNanos - elapsed, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public synchronized void replenishPermits() {
+    previousPermits = 0;
+    currentPermits = 0;
+  }
+
+  @Override
+  public String getType() {
+    return rateLimitType;
+  }
+
+  @Override
+  public Optional<Integer> getTimeLapse() {
+    return Optional.of(timeLapse);
+  }
+
+  @Override
+  public Optional<Integer> getWarnLimit() {
+    return Optional.empty();
+  }
+
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return RateLimitAlgorithm.SLIDING_WINDOW;
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return Optional.empty();
+  }
+
+  @Override
+  public void close() {
+    // nothing to release, there is no replenish task
+  }
+
+  private int weightedPermits(long now) {
+    long elapsed = now - origin;
+    long currentWindow = elapsed / windowNanos;
+    if (currentWindow != window) {
+      previousPermits = currentWindow == window + 1 ? currentPermits : 0;
+      currentPermits = 0;
+      window = currentWindow;
+    }
+    double previousWeight = 1 - (double) (elapsed % windowNanos) / windowNanos;
+    return (int) (previousPermits * previousWeight) + currentPermits;
+  }
+}
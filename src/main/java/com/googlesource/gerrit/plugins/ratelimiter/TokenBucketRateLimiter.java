@@ -0,0 +1,174 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter.
+ *
+ * <p>The bucket holds up to {@code burst} permits. It is refilled continuously at the rate of the
+ * permits allowed per time lapse, instead of being refilled at once at the end of each time lapse.
+ *
+ * <p>The only state is the time at which the bucket was empty, from which the permits refilled
+ * since are computed, so that permits are acquired by a single compare-and-set, as in {@link
+ * GcraRateLimiter}, without locking the limiter.
+ */
+class TokenBucketRateLimiter implements RateLimiter {
+  interface Factory {
+    TokenBucketRateLimiter create(
+        @Assisted("permits") Integer permits,
+        @Assisted("timeLapse") Integer timeLapse,
+        @Assisted("burst") Integer burst,
+        String rateLimitType);
+  }
+
+  private static final VarHandle EMPTY_AT;
+
+  static {
+    try {
+      EMPTY_AT =
+          MethodHandles.lookup().findVarHandle(TokenBucketRateLimiter.class, "emptyAt", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final Ticker ticker;
+  private final int maxPermits;
+  private final int timeLapse;
+  private final int burst;
+  private final double nanosPerPermit;
+  private final String rateLimitType;
+
+  /** Time at which the bucket was empty, in ticker nanoseconds. */
+  private volatile long emptyAt;
+
+  @Inject
+  TokenBucketRateLimiter(
+      @Assisted("permits") Integer permits,
+      @Assisted("timeLapse") Integer timeLapse,
+      @Assisted("burst") Integer burst,
+      @Assisted String rateLimitType) {
+    this(Ticker.systemTicker(), permits, timeLapse, burst, rateLimitType);
+  }
+
+  @VisibleForTesting
+  TokenBucketRateLimiter(
+      Ticker ticker, int permits, int timeLapse, int burst, String rateLimitType) {
+    this.ticker = ticker;
+    this.maxPermits = permits;
+    this.timeLapse = timeLapse;
+    this.burst = burst;
+    this.nanosPerPermit = (double) TimeUnit.MINUTES.toNanos(timeLapse) / permits;
+    this.rateLimitType = rateLimitType;
+    this.emptyAt = fullSince(ticker.read());
+  }
+
+  @Override
+  public int permitsPerHour() {
+    return maxPermits;
+  }
+
+  @Override
+  public boolean acquirePermit() {
+    return tryAcquirePermit() != NO_PERMIT;
+  }
+
+  @Override
+  public int tryAcquirePermits(int permits) {
+    long now = ticker.read();
+    while (true) {
+      long current = emptyAt;
+      double tokens = tokens(current, now);
+      if (tokens < permits) {
+        return NO_PERMIT;
+      }
+      double left = tokens - permits;
+      if (EMPTY_AT.compareAndSet(this, current, now - Math.round(left * nanosPerPermit))) {
+        return burst - (int) left;
+      }
+    }
+  }
+
+  @Override
+  public int availablePermits() {
+    return (int) tokens(emptyAt, ticker.read());
+  }
+
+  @Override
+  public int usedPermits() {
+    return burst - availablePermits();
+  }
+
+  /** Returns the time until the bucket is full. */
+  @Override
+  public long remainingTime(TimeUnit timeUnit) {
+    long fullAt = emptyAt + Math.round(burst * nanosPerPermit);
+    return timeUnit.convert(Math.max(0, fullAt - ticker.read()), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void replenishPermits() {
+    emptyAt = fullSince(ticker.read());
+  }
+
+  @Override
+  public String getType() {
+    return rateLimitType;
+  }
+
+  @Override
+  public Optional<Integer> getTimeLapse() {
+    return Optional.of(timeLapse);
+  }
+
+  @Override
+  public Optional<Integer> getWarnLimit() {
+    return Optional.empty();
+  }
+
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return RateLimitAlgorithm.TOKEN_BUCKET;
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return Optional.of(burst);
+  }
+
+  @Override
+  public void close() {
+    // nothing to release, there is no replenish task
+  }
+
+  /** Returns the permits in the bucket at the given time. */
+  private double tokens(long emptyAt, long now) {
+    return Math.min(burst, (now - emptyAt) / nanosPerPermit);
+  }
+
+  /** Returns the time at which the bucket was empty if it is just full at the given time. */
+  private long fullSince(long time) {
+    return time - Math.round(burst * nanosPerPermit);
+  }
+}
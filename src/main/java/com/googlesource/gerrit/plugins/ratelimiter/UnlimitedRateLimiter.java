@@ -35,6 +35,11 @@ class UnlimitedRateLimiter implements RateLimiter {
     return true;
   }
 
+  @Override
+  public int tryAcquirePermits(int permits) {
+    return 0;
+  }
+
   @Override
   public int availablePermits() {
     return Integer.MAX_VALUE;
@@ -65,6 +70,16 @@ class UnlimitedRateLimiter implements RateLimiter {
     return Optional.empty();
   }
 
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return RateLimitAlgorithm.FIXED_WINDOW;
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return Optional.empty();
+  }
+
   @Override
   public int usedPermits() {
     return 0;
@@ -0,0 +1,68 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import com.google.common.base.Ticker;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records that a user was warned of reaching its warning limit.
+ *
+ * <p>The flag rolls over by itself one time lapse after the warning, without any scheduled task, so
+ * that the limiters refilled continuously or lazily warn a user once per time lapse, as the fixed
+ * windows do.
+ */
+class WarningFlag {
+  private static final long NOT_WARNED = Long.MIN_VALUE;
+
+  private final Ticker ticker;
+  private final long periodNanos;
+
+  /** Time of the warning, or {@link #NOT_WARNED}. */
+  private final AtomicLong warnedAt = new AtomicLong(NOT_WARNED);
+
+  /**
+   * @param timeLapse minutes during which a warning is not sent again, forever if empty
+   */
+  WarningFlag(Ticker ticker, Optional<Integer> timeLapse) {
+    this.ticker = ticker;
+    this.periodNanos = timeLapse.map(TimeUnit.MINUTES::toNanos).orElse(Long.MAX_VALUE);
+  }
+
+  /** Sets the flag, returning true if it was not set yet, so that the user is warned once. */
+  boolean trySet() {
+    long now = ticker.read();
+    long warned = warnedAt.get();
+    return !isSet(warned, now) && warnedAt.compareAndSet(warned, now);
+  }
+
+  void set() {
+    warnedAt.set(ticker.read());
+  }
+
+  void clear() {
+    warnedAt.set(NOT_WARNED);
+  }
+
+  boolean isSet() {
+    return isSet(warnedAt.get(), ticker.read());
+  }
+
+  private boolean isSet(long warned, long now) {
+    return warned != NOT_WARNED && now - warned < periodNanos;
+  }
+}
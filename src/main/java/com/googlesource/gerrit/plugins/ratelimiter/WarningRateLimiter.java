@@ -15,14 +15,14 @@
 package com.googlesource.gerrit.plugins.ratelimiter;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.gerrit.exceptions.NoSuchAccountException;
+import com.google.common.base.Ticker;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
-import org.slf4j.Logger;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 class WarningRateLimiter implements RateLimiter {
   @FunctionalInterface
@@ -30,30 +30,36 @@ class WarningRateLimiter implements RateLimiter {
     WarningRateLimiter create(RateLimiter delegate, String key, int warnLimit);
   }
 
-  private static final Logger rateLimitLog = RateLimiterStatsLog.getLogger();
   private static final DateTimeFormatter format = DateTimeFormatter.ofPattern("mm 'min' ss 'sec'");
 
-  private final UserResolver userResolver;
+  private final RateLimitNotifier notifier;
   private final RateLimiter delegate;
-  private final RateLimitReachedSender.Factory rateLimitReachedSenderFactory;
   private final int warnLimit;
   private final String key;
 
-  private volatile boolean wasLogged;
-  private volatile boolean warningWasLogged = false;
+  /** Set once the user was notified of being blocked, until it gets a permit again. */
+  private final AtomicBoolean wasLogged = new AtomicBoolean();
+
+  /** Set once the user was warned, until nothing is used anymore or a time lapse later. */
+  private final WarningFlag warningWasLogged;
 
   @Inject
   WarningRateLimiter(
-      UserResolver userResolver,
-      RateLimitReachedSender.Factory rateLimitReachedSenderFactory,
+      RateLimitNotifier notifier,
       @Assisted RateLimiter delegate,
       @Assisted String key,
       @Assisted int warnLimit) {
-    this.userResolver = userResolver;
+    this(notifier, delegate, key, warnLimit, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  WarningRateLimiter(
+      RateLimitNotifier notifier, RateLimiter delegate, String key, int warnLimit, Ticker ticker) {
+    this.notifier = notifier;
     this.delegate = delegate;
-    this.rateLimitReachedSenderFactory = rateLimitReachedSenderFactory;
     this.warnLimit = warnLimit;
     this.key = key;
+    this.warningWasLogged = new WarningFlag(ticker, delegate.getTimeLapse());
   }
 
   @Override
@@ -62,46 +68,83 @@ class WarningRateLimiter implements RateLimiter {
   }
 
   @Override
-  public synchronized boolean acquirePermit() {
-    boolean acquirePermit = delegate.acquirePermit();
-    if (usedPermits() == warnLimit) {
-      String emailMessage =
-          String.format(
-              "User %s reached the warning limit of %s %s per %s minutes.",
-              userResolver.getUserName(key).orElse(key), warnLimit, delegate.getType(), delegate.getTimeLapse());
-      rateLimitLog.info(emailMessage);
-      warningWasLogged = true;
-      sendEmail(key, emailMessage, acquirePermit);
+  public boolean acquirePermit() {
+    return tryAcquirePermit() != NO_PERMIT;
+  }
+
+  @Override
+  public int tryAcquirePermits(int permits) {
+    int usedPermits = delegate.tryAcquirePermits(permits);
+    boolean acquirePermit = usedPermits != NO_PERMIT;
+    if (startsPeriod(usedPermits, permits)) {
+      warningWasLogged.clear();
+    }
+    if (reachesWarnLimit(usedPermits, warnLimit) && warningWasLogged.trySet()) {
+      String type = delegate.getType();
+      Optional<Integer> timeLapse = delegate.getTimeLapse();
+      notifier.notify(
+          key, user -> warningMessage(user, warnLimit, type, timeLapse), true, acquirePermit);
     }
 
-    if (!acquirePermit && !wasLogged) {
-      String emailMessage =
-          String.format(
-              "User %s was blocked due to exceeding the limit of %s %s per %s minutes. %s remaining to permits replenishing.",
-              userResolver.getUserName(key).orElse(key),
-              permitsPerHour(),
-              delegate.getType(),
-              delegate.getTimeLapse(),
-              secondsToMsSs(remainingTime(TimeUnit.SECONDS)));
-      rateLimitLog.info(emailMessage);
-      wasLogged = true;
-      sendEmail(key, emailMessage, acquirePermit);
+    if (acquirePermit) {
+      // Notify again once the permits of a later period are used up
+      if (wasLogged.get()) {
+        wasLogged.set(false);
+      }
+    } else if (wasLogged.compareAndSet(false, true)) {
+      int limit = permitsPerHour();
+      String type = delegate.getType();
+      Optional<Integer> timeLapse = delegate.getTimeLapse();
+      long remainingSeconds = remainingTime(TimeUnit.SECONDS);
+      notifier.notify(
+          key,
+          user -> blockedMessage(user, limit, type, timeLapse, remainingSeconds),
+          true,
+          acquirePermit);
     }
-    return acquirePermit;
-  }
-
-  protected void sendEmail(String key, String emailMessage, boolean acquirePermit) {
-    try {
-      RateLimitReachedSender sender =
-          rateLimitReachedSenderFactory.create(
-              userResolver
-                  .getIdentifiedUser(key)
-                  .orElseThrow(() -> new NoSuchAccountException("User not found")),
-              emailMessage,
-              acquirePermit);
-      sender.send();
-    } catch (Exception e) {
-      rateLimitLog.error("Error with exception while sending email: " + e);
+    return usedPermits;
+  }
+
+  /**
+   * Returns true if the permits used, including the acquired ones, reached the warning limit, which
+   * is never reached when it is 0.
+   */
+  static boolean reachesWarnLimit(int usedPermits, int warnLimit) {
+    return warnLimit > 0 && usedPermits >= warnLimit;
+  }
+
+  /**
+   * Returns true if no permit was used before acquiring the permits, as in a new window or a
+   * refilled bucket, so that the user is warned again when reaching the warning limit.
+   */
+  static boolean startsPeriod(int usedPermits, int permits) {
+    return usedPermits != NO_PERMIT && usedPermits <= permits;
+  }
+
+  static String warningMessage(
+      String user, int warnLimit, String type, Optional<Integer> timeLapse) {
+    return String.format(
+        "User %s reached the warning limit of %s %s per %s minutes.",
+        user, warnLimit, type, timeLapse);
+  }
+
+  static String blockedMessage(
+      String user, int limit, String type, Optional<Integer> timeLapse, long remainingSeconds) {
+    return String.format(
+        "User %s was blocked due to exceeding the limit of %s %s per %s minutes. %s remaining to"
+            + " permits replenishing.",
+        user, limit, type, timeLapse, secondsToMsSs(remainingSeconds));
+  }
+
+  @Override
+  public void restoreUsedPermits(int permits) {
+    delegate.restoreUsedPermits(permits);
+    // The user was notified before the restart
+    if (reachesWarnLimit(delegate.usedPermits(), warnLimit)) {
+      warningWasLogged.set();
+    }
+    if (delegate.availablePermits() == 0) {
+      wasLogged.set(true);
     }
   }
 
@@ -117,7 +160,7 @@ class WarningRateLimiter implements RateLimiter {
 
   @Override
   public void replenishPermits() {
-    warningWasLogged = false;
+    warningWasLogged.clear();
     delegate.replenishPermits();
   }
 
@@ -141,7 +184,7 @@ class WarningRateLimiter implements RateLimiter {
     return delegate.usedPermits();
   }
 
-  private String secondsToMsSs(long seconds) {
+  private static String secondsToMsSs(long seconds) {
     return LocalTime.MIN.plusSeconds(seconds).format(format);
   }
 
@@ -150,8 +193,18 @@ class WarningRateLimiter implements RateLimiter {
     return Optional.of(warnLimit);
   }
 
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return delegate.getAlgorithm();
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return delegate.getBurst();
+  }
+
   @VisibleForTesting
   public boolean getWarningFlagState() {
-    return warningWasLogged;
+    return warningWasLogged.isSet();
   }
 }
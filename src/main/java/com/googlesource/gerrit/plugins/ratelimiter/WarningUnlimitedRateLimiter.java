@@ -15,11 +15,11 @@
 package com.googlesource.gerrit.plugins.ratelimiter;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
-import org.slf4j.Logger;
 
 class WarningUnlimitedRateLimiter implements RateLimiter {
   @FunctionalInterface
@@ -27,24 +27,31 @@ class WarningUnlimitedRateLimiter implements RateLimiter {
     WarningUnlimitedRateLimiter create(RateLimiter delegate, String key, int warnLimit);
   }
 
-  private static final Logger rateLimitLog = RateLimiterStatsLog.getLogger();
-
-  private final UserResolver userResolver;
+  private final RateLimitNotifier notifier;
   private final RateLimiter delegate;
   private final int warnLimit;
   private final String key;
-  private volatile boolean warningWasLogged = false;
+
+  /** Set once the user was warned, until nothing is used anymore or a time lapse later. */
+  private final WarningFlag warningWasLogged;
 
   @Inject
   WarningUnlimitedRateLimiter(
-      UserResolver userResolver,
+      RateLimitNotifier notifier,
       @Assisted RateLimiter delegate,
       @Assisted String key,
       @Assisted int warnLimit) {
-    this.userResolver = userResolver;
+    this(notifier, delegate, key, warnLimit, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  WarningUnlimitedRateLimiter(
+      RateLimitNotifier notifier, RateLimiter delegate, String key, int warnLimit, Ticker ticker) {
+    this.notifier = notifier;
     this.delegate = delegate;
     this.warnLimit = warnLimit;
     this.key = key;
+    this.warningWasLogged = new WarningFlag(ticker, delegate.getTimeLapse());
   }
 
   @Override
@@ -54,18 +61,37 @@ class WarningUnlimitedRateLimiter implements RateLimiter {
 
   @Override
   public boolean acquirePermit() {
-    boolean acquirePermit = delegate.acquirePermit();
-
-    if (acquirePermit && (usedPermits() == warnLimit)) {
-      rateLimitLog.info(
-          "{} reached the warning limit of {} {} per {} minutes.",
-          userResolver.getUserName(key).orElse(key),
-          warnLimit,
-          delegate.getType(),
-          delegate.getTimeLapse());
-      warningWasLogged = true;
+    return tryAcquirePermit() != NO_PERMIT;
+  }
+
+  @Override
+  public int tryAcquirePermits(int permits) {
+    int usedPermits = delegate.tryAcquirePermits(permits);
+    if (WarningRateLimiter.startsPeriod(usedPermits, permits)) {
+      warningWasLogged.clear();
+    }
+    if (WarningRateLimiter.reachesWarnLimit(usedPermits, warnLimit) && warningWasLogged.trySet()) {
+      String type = delegate.getType();
+      Optional<Integer> timeLapse = delegate.getTimeLapse();
+      notifier.notify(
+          key,
+          user ->
+              String.format(
+                  "%s reached the warning limit of %s %s per %s minutes.",
+                  user, warnLimit, type, timeLapse),
+          false,
+          true);
+    }
+    return usedPermits;
+  }
+
+  @Override
+  public void restoreUsedPermits(int permits) {
+    delegate.restoreUsedPermits(permits);
+    // The user was notified before the restart
+    if (WarningRateLimiter.reachesWarnLimit(delegate.usedPermits(), warnLimit)) {
+      warningWasLogged.set();
     }
-    return acquirePermit;
   }
 
   @Override
@@ -80,7 +106,7 @@ class WarningUnlimitedRateLimiter implements RateLimiter {
 
   @Override
   public void replenishPermits() {
-    warningWasLogged = false;
+    warningWasLogged.clear();
     delegate.replenishPermits();
   }
 
@@ -109,8 +135,18 @@ class WarningUnlimitedRateLimiter implements RateLimiter {
     return Optional.of(warnLimit);
   }
 
+  @Override
+  public RateLimitAlgorithm getAlgorithm() {
+    return delegate.getAlgorithm();
+  }
+
+  @Override
+  public Optional<Integer> getBurst() {
+    return delegate.getBurst();
+  }
+
   @VisibleForTesting
   public boolean getWarningFlagState() {
-    return warningWasLogged;
+    return warningWasLogged.isSet();
   }
 }
@@ -0,0 +1,227 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.testing.FakeTicker;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccountRateLimitersTest {
+
+  private FakeTicker ticker;
+  private AtomicInteger loads;
+  private AtomicInteger validations;
+  private AccountRateLimiters limiters;
+
+  @Before
+  public void setUp() {
+    ticker = new FakeTicker();
+    loads = new AtomicInteger();
+    validations = new AtomicInteger();
+    limiters =
+        new AccountRateLimiters(
+            accountId -> {
+              loads.incrementAndGet();
+              return mock(RateLimiter.class);
+            },
+            ticker);
+  }
+
+  @Test
+  public void testLimiterIsLoadedOnce() {
+    RateLimiter limiter = limiters.get(1000000);
+    assertThat(limiters.get(1000000)).isSameInstanceAs(limiter);
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(limiters.getIfPresent(1000000)).isSameInstanceAs(limiter);
+    assertThat(limiters.getIfPresent(1000001)).isNull();
+  }
+
+  @Test
+  public void testManyAccounts() {
+    int accounts = 10000;
+    RateLimiter[] loaded = new RateLimiter[accounts];
+    for (int i = 0; i < accounts; i++) {
+      loaded[i] = limiters.get(1000000 + i);
+    }
+    assertThat(limiters.size()).isEqualTo(accounts);
+    for (int i = 0; i < accounts; i++) {
+      assertThat(limiters.get(1000000 + i)).isSameInstanceAs(loaded[i]);
+    }
+    assertThat(loads.get()).isEqualTo(accounts);
+
+    // removing every other account must not hide the accounts probed after them
+    for (int i = 0; i < accounts; i += 2) {
+      limiters.invalidate(1000000 + i);
+    }
+    assertThat(limiters.size()).isEqualTo(accounts / 2);
+    for (int i = 0; i < accounts; i++) {
+      assertThat(limiters.getIfPresent(1000000 + i)).isEqualTo(i % 2 == 0 ? null : loaded[i]);
+    }
+    assertThat(limiters.snapshot()).hasSize(accounts / 2);
+  }
+
+  @Test
+  public void testInvalidateClosesLimiter() {
+    RateLimiter limiter = limiters.get(1000000);
+    limiters.invalidate(1000000);
+    verify(limiter).close();
+    assertThat(limiters.get(1000000)).isNotSameInstanceAs(limiter);
+  }
+
+  @Test
+  public void testIdleLimitersAreEvicted() {
+    RateLimiter idle = limiters.get(1000000);
+    RateLimiter active = limiters.get(1000001);
+
+    ticker.advance(59, TimeUnit.MINUTES);
+    limiters.get(1000001);
+    ticker.advance(1, TimeUnit.MINUTES);
+    limiters.cleanUp();
+
+    verify(idle).close();
+    verify(active, never()).close();
+    assertThat(limiters.snapshot()).containsExactly(1000001, active);
+  }
+
+  @Test
+  public void testStaleLimitersAreRevalidatedOnAccess() {
+    AtomicInteger generation = new AtomicInteger(1);
+    Set<Integer> changed = new HashSet<>();
+    AccountRateLimiters revalidated =
+        new AccountRateLimiters(
+            accountId -> mock(RateLimiter.class),
+            generation::get,
+            (accountId, limiter) -> {
+              validations.incrementAndGet();
+              return !changed.contains(accountId);
+            },
+            ticker);
+    RateLimiter unchanged = revalidated.get(1000000);
+    RateLimiter stale = revalidated.get(1000001);
+
+    // a new configuration does not touch the limiters until they are accessed
+    generation.incrementAndGet();
+    changed.add(1000001);
+    assertThat(validations.get()).isEqualTo(0);
+
+    assertThat(revalidated.get(1000000)).isSameInstanceAs(unchanged);
+    RateLimiter replaced = revalidated.get(1000001);
+    assertThat(replaced).isNotSameInstanceAs(stale);
+    verify(stale).close();
+    verify(unchanged, never()).close();
+    assertThat(validations.get()).isEqualTo(2);
+
+    // each limiter is only checked once per configuration
+    assertThat(revalidated.get(1000000)).isSameInstanceAs(unchanged);
+    assertThat(revalidated.get(1000001)).isSameInstanceAs(replaced);
+    assertThat(validations.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testProvisionalLimiterIsReplacedInTheBackground() {
+    List<Runnable> tasks = new ArrayList<>();
+    RateLimiter provisional = mock(RateLimiter.class);
+    when(provisional.usedPermits()).thenReturn(2);
+    RateLimiter resolved = mock(RateLimiter.class);
+    AccountRateLimiters async = asyncLimiters(provisional, resolved, tasks, false);
+
+    // the fetch does not wait for the limits of the user
+    assertThat(async.get(1000000)).isSameInstanceAs(provisional);
+    assertThat(async.get(1000000)).isSameInstanceAs(provisional);
+    assertThat(tasks).hasSize(1);
+
+    tasks.get(0).run();
+    assertThat(async.get(1000000)).isSameInstanceAs(resolved);
+    // the permits used meanwhile still count, without notifying the user again
+    verify(resolved).restoreUsedPermits(2);
+    verify(resolved, never()).acquirePermit();
+    verify(provisional).close();
+    assertThat(async.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testPermitsCountedByTheBackendAreNotChargedAgain() {
+    List<Runnable> tasks = new ArrayList<>();
+    RateLimiter provisional = mock(RateLimiter.class);
+    when(provisional.usedPermits()).thenReturn(2);
+    RateLimiter resolved = mock(RateLimiter.class);
+    AccountRateLimiters async = asyncLimiters(provisional, resolved, tasks, true);
+
+    assertThat(async.get(1000000)).isSameInstanceAs(provisional);
+    tasks.get(0).run();
+    assertThat(async.get(1000000)).isSameInstanceAs(resolved);
+    verify(resolved, never()).restoreUsedPermits(anyInt());
+    verify(resolved, never()).acquirePermit();
+    verify(provisional).close();
+  }
+
+  @Test
+  public void testChangedLimitsResetThePermitsInBothModes() {
+    for (boolean async : new boolean[] {false, true}) {
+      List<Runnable> tasks = new ArrayList<>();
+      AtomicInteger generation = new AtomicInteger(1);
+      RateLimiter stale = mock(RateLimiter.class);
+      when(stale.usedPermits()).thenReturn(2);
+      RateLimiter changed = mock(RateLimiter.class);
+      List<RateLimiter> loaded = new ArrayList<>(List.of(stale, changed));
+      AccountRateLimiters revalidated =
+          new AccountRateLimiters(
+              accountId -> loaded.remove(0),
+              async ? accountId -> mock(RateLimiter.class) : null,
+              tasks::add,
+              generation::get,
+              (accountId, limiter) -> limiter != stale,
+              limiter -> false,
+              ticker);
+
+      revalidated.get(1000000);
+      tasks.forEach(Runnable::run);
+      tasks.clear();
+      assertThat(revalidated.get(1000000)).isSameInstanceAs(stale);
+      generation.incrementAndGet();
+      revalidated.get(1000000);
+      tasks.forEach(Runnable::run);
+
+      assertThat(revalidated.get(1000000)).isSameInstanceAs(changed);
+      verify(stale).close();
+      verify(changed, never()).restoreUsedPermits(anyInt());
+    }
+  }
+
+  private AccountRateLimiters asyncLimiters(
+      RateLimiter provisional, RateLimiter resolved, List<Runnable> tasks, boolean shared) {
+    return new AccountRateLimiters(
+        accountId -> resolved,
+        accountId -> provisional,
+        tasks::add,
+        () -> 1,
+        (accountId, limiter) -> true,
+        limiter -> shared,
+        ticker);
+  }
+}
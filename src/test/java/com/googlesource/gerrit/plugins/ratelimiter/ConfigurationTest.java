@@ -16,6 +16,7 @@ package com.googlesource.gerrit.plugins.ratelimiter;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableMap;
@@ -26,10 +27,12 @@ import com.google.gerrit.entities.Project;
 import com.google.gerrit.server.config.AllProjectsName;
 import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.group.GroupResolver;
+import com.google.gerrit.server.group.SystemGroupBackend;
 import com.google.gerrit.server.project.NoSuchProjectException;
 import com.google.gerrit.server.project.ProjectConfig;
 import com.google.inject.ProvisionException;
 import java.util.Map;
+import java.util.Optional;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.Config;
 import org.junit.Before;
@@ -264,6 +267,90 @@ public class ConfigurationTest {
         .contains("Invalid configuration, unsupported rate limit type: invalidTypePerHour");
   }
 
+  @Test
+  public void testAlgorithm() {
+    globalPluginConfig.setInt(
+        groupTagName,
+        someGroupDescMock.getName(),
+        RateLimitType.UPLOAD_PACK_PER_HOUR.toString(),
+        validRate);
+    globalPluginConfig.setString(
+        groupTagName, someGroupDescMock.getName(), "algorithm", "tokenbucket");
+    globalPluginConfig.setInt(
+        groupTagName, someGroupDescMock.getName(), RateLimitType.BURST.toString(), 10);
+    globalPluginConfig.setInt(
+        groupTagName,
+        "Administrators",
+        RateLimitType.UPLOAD_PACK_PER_HOUR.toString(),
+        validRate);
+
+    Configuration configuration = getConfiguration(false);
+    Map<AccountGroup.UUID, RateLimitAlgorithm> algorithms = configuration.snapshot().algorithms();
+    assertThat(algorithms.get(someGroupDescMock.getGroupUUID()))
+        .isEqualTo(RateLimitAlgorithm.TOKEN_BUCKET);
+    assertThat(algorithms.get(administratorsGroupDescMock.getGroupUUID()))
+        .isEqualTo(RateLimitAlgorithm.FIXED_WINDOW);
+    assertThat(
+            configuration
+                .getRateLimits(RateLimitType.BURST)
+                .get(someGroupDescMock.getGroupUUID())
+                .getRatePerHour())
+        .isEqualTo(10);
+  }
+
+  @Test
+  public void testPolicies() {
+    globalPluginConfig.setInt(
+        groupTagName,
+        someGroupDescMock.getName(),
+        RateLimitType.UPLOAD_PACK_PER_HOUR.toString(),
+        validRate);
+    globalPluginConfig.setInt(
+        groupTagName,
+        someGroupDescMock.getName(),
+        RateLimitType.UPLOAD_PACK_PER_HOUR_WARN.toString(),
+        validWarningRate);
+    globalPluginConfig.setString(groupTagName, someGroupDescMock.getName(), "algorithm", "gcra");
+    globalPluginConfig.setInt(
+        groupTagName,
+        "Administrators",
+        RateLimitType.TIME_LAPSE_IN_MINUTES.toString(),
+        validTimeLapse);
+
+    Map<AccountGroup.UUID, RateLimitPolicy> policies =
+        getConfiguration(false).snapshot().policies();
+    assertThat(policies.keySet())
+        .containsExactly(
+            someGroupDescMock.getGroupUUID(), administratorsGroupDescMock.getGroupUUID())
+        .inOrder();
+
+    RateLimitPolicy someGroup = policies.get(someGroupDescMock.getGroupUUID());
+    assertThat(someGroup.get(RateLimitType.UPLOAD_PACK_PER_HOUR).get().getRatePerHour())
+        .isEqualTo(validRate);
+    assertThat(someGroup.get(RateLimitType.UPLOAD_PACK_PER_HOUR_WARN).get().getRatePerHour())
+        .isEqualTo(validWarningRate);
+    assertThat(someGroup.get(RateLimitType.TIME_LAPSE_IN_MINUTES).isPresent()).isFalse();
+    assertThat(someGroup.getAlgorithm()).isEqualTo(Optional.of(RateLimitAlgorithm.GCRA));
+
+    RateLimitPolicy administrators = policies.get(administratorsGroupDescMock.getGroupUUID());
+    assertThat(administrators.get(RateLimitType.UPLOAD_PACK_PER_HOUR).isPresent()).isFalse();
+    assertThat(administrators.get(RateLimitType.TIME_LAPSE_IN_MINUTES).get().getRatePerHour())
+        .isEqualTo(validTimeLapse);
+    assertThat(administrators.getAlgorithm())
+        .isEqualTo(Optional.of(RateLimitAlgorithm.FIXED_WINDOW));
+  }
+
+  @Test
+  public void testInvalidAlgorithm() {
+    globalPluginConfig.setString(groupTagName, someGroupDescMock.getName(), "algorithm", "dummy");
+
+    ProvisionException thrown =
+        assertThrows(ProvisionException.class, () -> getConfiguration(false));
+    assertThat(thrown)
+        .hasMessageThat()
+        .contains("Invalid configuration, unsupported rate limit algorithm: dummy");
+  }
+
   @Test
   public void testInvalidRateLimitValue() {
     String invalidType = "dummyType";
@@ -329,6 +416,112 @@ public class ConfigurationTest {
     assertThat(getConfiguration(false).getRateLimitExceededMsg()).isEqualTo(msg);
   }
 
+  @Test
+  public void testFormatRateLimitExceededMsg() {
+    String msg = "Don't fetch more than ${rateLimit} times/hour {ever}, ${rateLimit}!";
+    globalPluginConfig.setString("configuration", null, "uploadpackLimitExceededMsg", msg);
+    assertThat(getConfiguration(false).snapshot().formatRateLimitExceededMsg(1000))
+        .isEqualTo("Don't fetch more than 1000 times/hour {ever}, 1000!");
+  }
+
+  @Test
+  public void testDefaultPermitCost() {
+    PermitCost cost = getConfiguration(false).snapshot().permitCost();
+    assertThat(cost).isSameInstanceAs(PermitCost.ONE);
+    assertThat(cost.cost(1000, 0)).isEqualTo(1);
+  }
+
+  @Test
+  public void testPermitCost() {
+    globalPluginConfig.setString("configuration", null, "permitBaseCost", "1");
+    globalPluginConfig.setString("configuration", null, "permitCostPerWant", "0.1");
+    globalPluginConfig.setString("configuration", null, "fullClonePermitMultiplier", "5");
+
+    PermitCost cost = getConfiguration(false).snapshot().permitCost();
+    assertThat(cost.cost(1, 10)).isEqualTo(1);
+    assertThat(cost.cost(20, 10)).isEqualTo(3);
+    assertThat(cost.cost(20, 0)).isEqualTo(15);
+  }
+
+  @Test
+  public void testInvalidPermitCost() {
+    globalPluginConfig.setString("configuration", null, "permitCostPerWant", "-1");
+
+    ProvisionException thrown =
+        assertThrows(ProvisionException.class, () -> getConfiguration(false));
+    assertThat(thrown)
+        .hasMessageThat()
+        .contains("Invalid configuration, '-1' for 'configuration.permitCostPerWant'");
+  }
+
+  @Test
+  public void testRefreshPublishesANewSnapshot() {
+    globalPluginConfig.setInt(
+        groupTagName,
+        someGroupDescMock.getName(),
+        RateLimitType.UPLOAD_PACK_PER_HOUR.toString(),
+        validRate);
+    oldCacheableConfig = ImmutableMap.of("rate-limiter.config", oldRateLimiterConfigInAllProject);
+    cacheableConfig = ImmutableMap.of("rate-limiter.config", newRateLimiterConfigInAllProject);
+    when(oldCachedProjectConfig.getProjectLevelConfigs()).thenReturn(oldCacheableConfig);
+    when(cachedProjectConfig.getProjectLevelConfigs()).thenReturn(cacheableConfig);
+    Configuration configuration = getConfiguration(false);
+    ConfigurationSnapshot before = configuration.snapshot();
+
+    configuration.refreshTable(newProjectConfig, oldProjectConfig);
+
+    ConfigurationSnapshot after = configuration.snapshot();
+    assertThat(after).isNotSameInstanceAs(before);
+    AccountGroup.UUID someGroup = someGroupDescMock.getGroupUUID();
+    assertThat(
+            before.policy(someGroup).get(RateLimitType.UPLOAD_PACK_PER_HOUR).get().getRatePerHour())
+        .isEqualTo(validRate);
+    assertThat(
+            after.policy(someGroup).get(RateLimitType.UPLOAD_PACK_PER_HOUR).get().getRatePerHour())
+        .isEqualTo(newValidRate);
+    assertThat(after.policy(AccountGroup.uuid("unknown_uuid")))
+        .isSameInstanceAs(RateLimitPolicy.NONE);
+  }
+
+  @Test
+  public void testUnlimitedUsers() {
+    ConfigurationSnapshot empty = getConfiguration(false).snapshot();
+    assertThat(empty.hasLimits()).isFalse();
+    assertThat(empty.isUnlimitedForIdentifiedUsers()).isTrue();
+    assertThat(empty.isUnlimitedForAnonymousUsers()).isTrue();
+
+    GroupDescription.Basic anonymousUsersDescMock = mock(GroupDescription.Basic.class);
+    when(anonymousUsersDescMock.getGroupUUID()).thenReturn(SystemGroupBackend.ANONYMOUS_USERS);
+    when(groupsCollectionMock.parseId("Anonymous Users")).thenReturn(anonymousUsersDescMock);
+    globalPluginConfig.setInt(
+        groupTagName,
+        "Anonymous Users",
+        RateLimitType.TIME_LAPSE_IN_MINUTES.toString(),
+        validTimeLapse);
+    globalPluginConfig.setInt(
+        groupTagName,
+        someGroupDescMock.getName(),
+        RateLimitType.UPLOAD_PACK_PER_HOUR.toString(),
+        validRate);
+    // all the users are a member of the first group, which does not limit
+    ConfigurationSnapshot anonymousFirst = getConfiguration(false).snapshot();
+    assertThat(anonymousFirst.hasLimits()).isTrue();
+    assertThat(anonymousFirst.isUnlimitedForIdentifiedUsers()).isTrue();
+    assertThat(anonymousFirst.isUnlimitedForAnonymousUsers()).isTrue();
+
+    globalPluginConfig.unsetSection(groupTagName, "Anonymous Users");
+    globalPluginConfig.setInt(
+        groupTagName,
+        "Anonymous Users",
+        RateLimitType.UPLOAD_PACK_PER_HOUR_WARN.toString(),
+        validWarningRate);
+    // the users of the limited group must be resolved
+    ConfigurationSnapshot someGroupFirst = getConfiguration(false).snapshot();
+    assertThat(someGroupFirst.hasLimits()).isTrue();
+    assertThat(someGroupFirst.isUnlimitedForIdentifiedUsers()).isFalse();
+    assertThat(someGroupFirst.isUnlimitedForAnonymousUsers()).isFalse();
+  }
+
   private Configuration getConfiguration(Boolean isReplica) {
     return new Configuration(
         allProjectsName, pluginConfigFactoryMock, PLUGIN_NAME, isReplica, groupsCollectionMock);
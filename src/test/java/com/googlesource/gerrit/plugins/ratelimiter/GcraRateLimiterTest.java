@@ -0,0 +1,107 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.ratelimiter.PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+
+import com.google.common.testing.FakeTicker;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GcraRateLimiterTest {
+
+  private static final int RATE = 60;
+  private static final int BURST = 10;
+
+  private FakeTicker ticker;
+  private GcraRateLimiter limiter;
+
+  @Before
+  public void setUp() {
+    ticker = new FakeTicker();
+    limiter = new GcraRateLimiter(ticker, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, BURST, "Any Type");
+  }
+
+  @Test
+  public void testGetRatePerHour() {
+    assertThat(limiter.permitsPerHour()).isEqualTo(RATE);
+    assertThat(limiter.getBurst()).isEqualTo(Optional.of(BURST));
+    assertThat(limiter.getAlgorithm()).isEqualTo(RateLimitAlgorithm.GCRA);
+  }
+
+  @Test
+  public void testAcquireBurst() {
+    assertThat(limiter.availablePermits()).isEqualTo(BURST);
+
+    for (int i = 1; i <= BURST; i++) {
+      assertThat(limiter.tryAcquirePermit()).isEqualTo(i);
+      assertThat(limiter.availablePermits()).isEqualTo(BURST - i);
+    }
+    assertThat(limiter.acquirePermit()).isFalse();
+    assertThat(limiter.usedPermits()).isEqualTo(BURST);
+  }
+
+  @Test
+  public void testPermitsAreGivenBackAtTheEmissionInterval() {
+    testAcquireBurst();
+
+    // 60 permits per hour give back one permit per minute
+    ticker.advance(30, TimeUnit.SECONDS);
+    assertThat(limiter.acquirePermit()).isFalse();
+    ticker.advance(30, TimeUnit.SECONDS);
+    assertThat(limiter.acquirePermit()).isTrue();
+    assertThat(limiter.acquirePermit()).isFalse();
+
+    ticker.advance(3, TimeUnit.MINUTES);
+    assertThat(limiter.availablePermits()).isEqualTo(3);
+  }
+
+  @Test
+  public void testIdleTimeIsNotAccumulatedBeyondBurst() {
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES, TimeUnit.MINUTES);
+    testAcquireBurst();
+  }
+
+  @Test
+  public void testRemainingTimeIsDerivedFromTheTheoreticalArrivalTime() {
+    assertThat(limiter.remainingTime(TimeUnit.MINUTES)).isEqualTo(0);
+    testAcquireBurst();
+    assertThat(limiter.remainingTime(TimeUnit.MINUTES)).isEqualTo(BURST);
+
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES, TimeUnit.MINUTES);
+    assertThat(limiter.remainingTime(TimeUnit.MINUTES)).isEqualTo(0);
+    assertThat(limiter.usedPermits()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReplenishPermits() {
+    testAcquireBurst();
+    limiter.replenishPermits();
+    testAcquireBurst();
+  }
+
+  @Test
+  public void testCostlyFetchIsCappedAtTheBurst() {
+    int permits = RateLimitUploadPack.capped(5 * BURST, limiter);
+
+    assertThat(permits).isEqualTo(BURST);
+    assertThat(limiter.tryAcquirePermits(permits)).isEqualTo(BURST);
+    assertThat(RateLimitUploadPack.capped(5 * BURST, UnlimitedRateLimiter.INSTANCE))
+        .isEqualTo(5 * BURST);
+  }
+}
@@ -0,0 +1,171 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.ratelimiter.PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+import static com.googlesource.gerrit.plugins.ratelimiter.RateLimiter.NO_PERMIT;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GossipRateLimiterBackendTest {
+  private static final int RATE = 10;
+  private static final long WINDOW_MILLIS =
+      TimeUnit.MINUTES.toMillis(DEFAULT_TIME_LAPSE_IN_MINUTES);
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path directory;
+  private AtomicLong clock;
+  private GossipRateLimiterBackend node1;
+  private GossipRateLimiterBackend node2;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = temporaryFolder.newFolder("shared").toPath();
+    clock = new AtomicLong(100 * WINDOW_MILLIS + 1000);
+    node1 = new GossipRateLimiterBackend(directory, "node1", clock::get);
+    node2 = new GossipRateLimiterBackend(directory, "node2", clock::get);
+  }
+
+  @Test
+  public void testServersShareTheLimitOnceGossiped() {
+    RateLimiter limiter1 = limiter(node1, "1000000");
+    RateLimiter limiter2 = limiter(node2, "1000000");
+    for (int i = 1; i <= 6; i++) {
+      assertThat(limiter1.tryAcquirePermit()).isEqualTo(i);
+    }
+    for (int i = 1; i <= 4; i++) {
+      assertThat(limiter2.tryAcquirePermit()).isEqualTo(i);
+    }
+
+    node1.gossip();
+    node2.gossip();
+    assertThat(limiter2.usedPermits()).isEqualTo(RATE);
+    assertThat(limiter2.tryAcquirePermit()).isEqualTo(NO_PERMIT);
+
+    node1.gossip();
+    assertThat(limiter1.usedPermits()).isEqualTo(RATE);
+    assertThat(limiter1.tryAcquirePermit()).isEqualTo(NO_PERMIT);
+  }
+
+  @Test
+  public void testSegmentsOnlyHoldTheChangedKeys() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      limiter(node1, Integer.toString(i)).acquirePermit();
+    }
+    node1.gossip();
+    assertThat(recordsOfLastSegment("node1")).isEqualTo(100);
+
+    clock.addAndGet(1000);
+    limiter(node1, "42").acquirePermit();
+    node1.gossip();
+    assertThat(recordsOfLastSegment("node1")).isEqualTo(1);
+
+    node2.gossip();
+    assertThat(limiter(node2, "42").usedPermits()).isEqualTo(2);
+    assertThat(limiter(node2, "41").usedPermits()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSegmentsAreMergedOnce() {
+    RateLimiter limiter1 = limiter(node1, "1000000");
+    limiter1.acquirePermit();
+    node1.gossip();
+    node2.gossip();
+    node2.gossip();
+
+    assertThat(limiter(node2, "1000000").usedPermits()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRestartRestoresTheCountsOfTheServer() {
+    for (int i = 1; i <= 5; i++) {
+      limiter(node1, "1000000").acquirePermit();
+    }
+    node1.gossip();
+
+    GossipRateLimiterBackend restarted =
+        new GossipRateLimiterBackend(directory, "node1", clock::get);
+    restarted.gossip();
+    assertThat(limiter(restarted, "1000000").usedPermits()).isEqualTo(5);
+    assertThat(limiter(restarted, "1000000").tryAcquirePermit()).isEqualTo(6);
+  }
+
+  @Test
+  public void testEndedWindowsAreForgotten() throws Exception {
+    limiter(node1, "1000000").acquirePermit();
+    node1.gossip();
+
+    clock.addAndGet(WINDOW_MILLIS);
+    node2.gossip();
+    assertThat(limiter(node2, "1000000").usedPermits()).isEqualTo(0);
+    assertThat(limiter(node1, "1000000").tryAcquirePermit()).isEqualTo(1);
+
+    clock.addAndGet(2 * WINDOW_MILLIS);
+    node1.gossip();
+    assertThat(segments("node1")).hasSize(1);
+  }
+
+  @Test
+  public void testReplenishPermitsOnlyOnThisServer() {
+    RateLimiter limiter1 = limiter(node1, "1000000");
+    for (int i = 1; i <= RATE; i++) {
+      limiter1.acquirePermit();
+    }
+    node1.gossip();
+    node2.gossip();
+
+    limiter1.replenishPermits();
+    assertThat(limiter1.usedPermits()).isEqualTo(0);
+    assertThat(limiter1.tryAcquirePermit()).isEqualTo(1);
+    assertThat(limiter(node2, "1000000").tryAcquirePermit()).isEqualTo(NO_PERMIT);
+  }
+
+  private RateLimiter limiter(GossipRateLimiterBackend backend, String key) {
+    return backend.share(key, new LazyRateLimiter(RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type"));
+  }
+
+  private List<Path> segments(String node) throws IOException {
+    try (Stream<Path> files = Files.list(directory.resolve(node))) {
+      return files
+          .filter(f -> f.getFileName().toString().endsWith(".seg"))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private int recordsOfLastSegment(String node) throws IOException {
+    List<Path> segments = segments(node);
+    try (DataInputStream in =
+        new DataInputStream(Files.newInputStream(segments.get(segments.size() - 1)))) {
+      in.readInt();
+      in.readInt();
+      return in.readInt();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class HostKeyTest {
+
+  @Test
+  public void testIPv4() {
+    HostKey key = HostKey.parse("192.168.0.1");
+
+    assertThat(key.isAddress()).isTrue();
+    assertThat(key.high()).isEqualTo(0);
+    assertThat(key.low()).isEqualTo(0xFFFF_C0A8_0001L);
+    assertThat(key.toString()).isEqualTo("192.168.0.1");
+  }
+
+  @Test
+  public void testIPv6() {
+    HostKey key = HostKey.parse("2001:db8::1");
+
+    assertThat(key.isAddress()).isTrue();
+    assertThat(key.high()).isEqualTo(0x2001_0DB8_0000_0000L);
+    assertThat(key.low()).isEqualTo(1);
+    assertThat(key.toString()).isEqualTo("2001:db8::1");
+  }
+
+  @Test
+  public void testIPv6Forms() {
+    assertThat(HostKey.parse("::1").toString()).isEqualTo("::1");
+    assertThat(HostKey.parse("::").toString()).isEqualTo("::");
+    assertThat(HostKey.parse("fe80::").toString()).isEqualTo("fe80::");
+    assertThat(HostKey.parse("[2001:db8::1]")).isEqualTo(HostKey.parse("2001:db8::1"));
+    assertThat(HostKey.parse("2001:0DB8:0000:0000:0000:0000:0000:0001"))
+        .isEqualTo(HostKey.parse("2001:db8::1"));
+    assertThat(HostKey.parse("1:2:3:4:5:6:7:8").toString()).isEqualTo("1:2:3:4:5:6:7:8");
+  }
+
+  @Test
+  public void testIPv4MappedIPv6IsIPv4() {
+    assertThat(HostKey.parse("::ffff:1.2.3.4")).isEqualTo(HostKey.parse("1.2.3.4"));
+    assertThat(HostKey.parse("::ffff:102:304")).isEqualTo(HostKey.parse("1.2.3.4"));
+    assertThat(HostKey.parse("::ffff:1.2.3.4").toString()).isEqualTo("1.2.3.4");
+  }
+
+  @Test
+  public void testNames() {
+    for (String name :
+        new String[] {
+          "build.example.com",
+          "",
+          "1.2.3",
+          "1.2.3.4.5",
+          "256.0.0.1",
+          "1.2.3.4:29418",
+          "1:2:3:4:5:6:7:8:9",
+          "1::2::3",
+          "12345::1",
+          "fe80::1%eth0",
+          ":1",
+          "1:"
+        }) {
+      HostKey key = HostKey.parse(name);
+      assertThat(key.isAddress()).isFalse();
+      assertThat(key.toString()).isEqualTo(name);
+    }
+  }
+
+  @Test
+  public void testEqualsAndHashCode() {
+    assertThat(HostKey.parse("10.0.0.1")).isEqualTo(HostKey.parse("10.0.0.1"));
+    assertThat(HostKey.parse("10.0.0.1").hashCode())
+        .isEqualTo(HostKey.parse("10.0.0.1").hashCode());
+    assertThat(HostKey.parse("10.0.0.1")).isNotEqualTo(HostKey.parse("10.0.0.2"));
+    assertThat(HostKey.parse("::a00:1")).isNotEqualTo(HostKey.parse("10.0.0.1"));
+    assertThat(HostKey.parse("localhost")).isEqualTo(HostKey.parse("localhost"));
+    assertThat(HostKey.parse("localhost")).isNotEqualTo(HostKey.parse("::"));
+  }
+}
@@ -0,0 +1,128 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.ratelimiter.PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+
+import com.google.common.testing.FakeTicker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazyRateLimiterTest {
+
+  private static final int RATE = 1000;
+
+  private FakeTicker ticker;
+  private LazyRateLimiter limiter;
+
+  @Before
+  public void setUp() {
+    ticker = new FakeTicker();
+    limiter = new LazyRateLimiter(ticker, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type");
+  }
+
+  @Test
+  public void testGetRatePerHour() {
+    assertThat(limiter.permitsPerHour()).isEqualTo(RATE);
+  }
+
+  @Test
+  public void testAcquire() {
+    assertThat(limiter.availablePermits()).isEqualTo(RATE);
+
+    for (int i = 1; i <= RATE; i++) {
+      assertThat(limiter.acquirePermit()).isTrue();
+      assertThat(limiter.availablePermits()).isEqualTo(RATE - i);
+      assertThat(limiter.usedPermits()).isEqualTo(i);
+    }
+    assertThat(limiter.acquirePermit()).isFalse();
+    assertThat(limiter.availablePermits()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReplenishPermits() {
+    testAcquire();
+    limiter.replenishPermits();
+    testAcquire();
+  }
+
+  @Test
+  public void testPermitsAreReplenishedWhenWindowElapses() {
+    testAcquire();
+
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES - 1, TimeUnit.MINUTES);
+    assertThat(limiter.acquirePermit()).isFalse();
+
+    ticker.advance(1, TimeUnit.MINUTES);
+    testAcquire();
+  }
+
+  @Test
+  public void testRemainingTimeStaysAlignedToWindow() {
+    assertThat(limiter.remainingTime(TimeUnit.MINUTES)).isEqualTo(DEFAULT_TIME_LAPSE_IN_MINUTES);
+
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES * 2 + 10, TimeUnit.MINUTES);
+    assertThat(limiter.remainingTime(TimeUnit.MINUTES))
+        .isEqualTo(DEFAULT_TIME_LAPSE_IN_MINUTES - 10);
+  }
+
+  @Test
+  public void testTryAcquireReturnsUsedPermits() {
+    for (int i = 1; i <= RATE; i++) {
+      assertThat(limiter.tryAcquirePermit()).isEqualTo(i);
+    }
+    assertThat(limiter.tryAcquirePermit()).isEqualTo(RateLimiter.NO_PERMIT);
+
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES, TimeUnit.MINUTES);
+    assertThat(limiter.tryAcquirePermit()).isEqualTo(1);
+  }
+
+  @Test
+  public void testConcurrentAcquireNeverExceedsPermits() throws Exception {
+    int threads = 64;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Integer>> tasks = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        tasks.add(
+            () -> {
+              int acquired = 0;
+              for (int j = 0; j < RATE; j++) {
+                if (limiter.acquirePermit()) {
+                  acquired++;
+                }
+              }
+              return acquired;
+            });
+      }
+      int acquired = 0;
+      for (Future<Integer> result : executor.invokeAll(tasks)) {
+        acquired += result.get();
+      }
+      assertThat(acquired).isEqualTo(RATE);
+      assertThat(limiter.usedPermits()).isEqualTo(RATE);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -21,7 +21,6 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
@@ -32,14 +31,12 @@ public class PeriodicRateLimiterTest {
   private static final int RATE = 1000;
 
   private PeriodicRateLimiter limiter;
-  private ScheduledExecutorService scheduledExecutorMock;
+  private RateLimitTimer timerMock;
 
   @Before
   public void setUp() {
-    scheduledExecutorMock = mock(ScheduledExecutorService.class);
-    limiter =
-        new PeriodicRateLimiter(
-            scheduledExecutorMock, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type");
+    timerMock = mock(RateLimitTimer.class);
+    limiter = new PeriodicRateLimiter(timerMock, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type");
   }
 
   @Test
@@ -59,6 +56,15 @@ public class PeriodicRateLimiterTest {
     assertThat(limiter.availablePermits()).isEqualTo(0);
   }
 
+  @Test
+  public void testAcquireSeveralPermits() {
+    assertThat(limiter.tryAcquirePermits(RATE - 10)).isEqualTo(RATE - 10);
+    assertThat(limiter.tryAcquirePermits(11)).isEqualTo(RateLimiter.NO_PERMIT);
+    assertThat(limiter.usedPermits()).isEqualTo(RATE - 10);
+    assertThat(limiter.tryAcquirePermits(10)).isEqualTo(RATE);
+    assertThat(limiter.availablePermits()).isEqualTo(0);
+  }
+
   @Test
   public void testReplenishPermits() {
     testAcquire();
@@ -68,7 +74,7 @@ public class PeriodicRateLimiterTest {
 
   @Test
   public void testReplenishPermitsIsScheduled() {
-    verify(scheduledExecutorMock)
+    verify(timerMock)
         .scheduleAtFixedRate(
             any(),
             eq((long) DEFAULT_TIME_LAPSE_IN_MINUTES),
@@ -79,7 +85,7 @@ public class PeriodicRateLimiterTest {
   @Test
   public void testReplenishPermitsScheduledRunnableIsWorking() {
     ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
-    verify(scheduledExecutorMock)
+    verify(timerMock)
         .scheduleAtFixedRate(
             runnableCaptor.capture(),
             eq((long) DEFAULT_TIME_LAPSE_IN_MINUTES),
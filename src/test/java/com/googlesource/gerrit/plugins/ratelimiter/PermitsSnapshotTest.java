@@ -0,0 +1,167 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PermitsSnapshotTest {
+  private static final HostKey HOST = HostKey.parse("192.168.0.1");
+  private static final HostKey IPV6_HOST = HostKey.parse("2001:db8::1");
+  private static final HostKey NAMED_HOST = HostKey.parse("example.com");
+  private static final HostKey OTHER_NAMED_HOST = HostKey.parse("b.example.com");
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+  private Path file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = tempFolder.getRoot().toPath().resolve(PermitsSnapshot.FILE_NAME);
+    Map<Integer, RateLimiter> accounts = ImmutableMap.of(1000000, limiter(5), 1000001, limiter(0));
+    Map<HostKey, RateLimiter> hosts =
+        ImmutableMap.of(
+            HOST,
+            limiter(3),
+            IPV6_HOST,
+            limiter(2),
+            NAMED_HOST,
+            limiter(1),
+            OTHER_NAMED_HOST,
+            limiter(2));
+    new PermitsSnapshot(file, true, () -> accounts, () -> hosts, clock::get).stop();
+  }
+
+  @Test
+  public void testRestoresTheUsedPermitsOnce() {
+    PermitsSnapshot snapshot = newSnapshot();
+    clock.addAndGet(TimeUnit.MINUTES.toMillis(1));
+    snapshot.start();
+    assertThat(Files.exists(file)).isFalse();
+
+    // 4 of the 5 minutes of the period are left
+    RateLimiter account = restoring();
+    assertThat(snapshot.restore(1000000, account)).isSameInstanceAs(account);
+    verify(account).restoreUsedPermits(4);
+    RateLimiter reloaded = restoring();
+    snapshot.restore(1000000, reloaded);
+    verify(reloaded, never()).restoreUsedPermits(anyInt());
+
+    RateLimiter idle = restoring();
+    snapshot.restore(1000001, idle);
+    snapshot.restore(1000002, idle);
+    verify(idle, never()).restoreUsedPermits(anyInt());
+
+    RateLimiter host = restoring();
+    snapshot.restore(HOST, host);
+    verify(host).restoreUsedPermits(3);
+    RateLimiter ipv6Host = restoring();
+    snapshot.restore(IPV6_HOST, ipv6Host);
+    verify(ipv6Host).restoreUsedPermits(2);
+    RateLimiter namedHost = restoring();
+    snapshot.restore(NAMED_HOST, namedHost);
+    verify(namedHost).restoreUsedPermits(1);
+    RateLimiter otherNamedHost = restoring();
+    snapshot.restore(OTHER_NAMED_HOST, otherNamedHost);
+    verify(otherNamedHost).restoreUsedPermits(2);
+    RateLimiter unknownHost = restoring();
+    snapshot.restore(HostKey.parse("c.example.com"), unknownHost);
+    verify(unknownHost, never()).restoreUsedPermits(anyInt());
+  }
+
+  @Test
+  public void testRestoredPermitsAreScaledToTheTimeLeft() {
+    long now = clock.get();
+    RateLimiter limiter = new LazyRateLimiter(60, 60, "Any Type");
+    long fiveMinutes = TimeUnit.MINUTES.toMillis(5);
+
+    // Blocked 5 minutes before the end of the period
+    assertThat(PermitsSnapshot.remainingPermits(limiter, 60, now + fiveMinutes, now)).isEqualTo(5);
+    assertThat(PermitsSnapshot.remainingPermits(limiter, 1, now + 1, now)).isEqualTo(1);
+    assertThat(PermitsSnapshot.remainingPermits(limiter, 60, now, now)).isEqualTo(0);
+    assertThat(PermitsSnapshot.remainingPermits(limiter, 60, now + 2 * 60 * fiveMinutes, now))
+        .isEqualTo(60);
+
+    // 5 of the 10 permits used are given back 5 minutes before the bucket is full again
+    RateLimiter bucket = new TokenBucketRateLimiter(60, 60, 60, "Any Type");
+    assertThat(PermitsSnapshot.remainingPermits(bucket, 10, now + fiveMinutes, now)).isEqualTo(5);
+  }
+
+  @Test
+  public void testEndedPeriodsAreNotRestored() {
+    PermitsSnapshot snapshot = newSnapshot();
+    clock.addAndGet(TimeUnit.MINUTES.toMillis(10));
+    snapshot.start();
+
+    RateLimiter account = mock(RateLimiter.class);
+    snapshot.restore(1000000, account);
+    verify(account, never()).restoreUsedPermits(anyInt());
+  }
+
+  @Test
+  public void testInvalidSnapshotIsIgnored() throws Exception {
+    Files.write(file, new byte[] {1, 2, 3});
+    PermitsSnapshot snapshot = newSnapshot();
+    snapshot.start();
+
+    RateLimiter account = mock(RateLimiter.class);
+    snapshot.restore(1000000, account);
+    verify(account, never()).restoreUsedPermits(anyInt());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    Files.delete(file);
+    new PermitsSnapshot(
+            file, false, () -> ImmutableMap.of(1000000, limiter(5)), ImmutableMap::of, clock::get)
+        .stop();
+    assertThat(Files.exists(file)).isFalse();
+  }
+
+  private PermitsSnapshot newSnapshot() {
+    return new PermitsSnapshot(file, true, ImmutableMap::of, ImmutableMap::of, clock::get);
+  }
+
+  private static RateLimiter restoring() {
+    RateLimiter limiter = mock(RateLimiter.class);
+    when(limiter.getTimeLapse()).thenReturn(Optional.of(5));
+    when(limiter.getAlgorithm()).thenReturn(RateLimitAlgorithm.FIXED_WINDOW);
+    return limiter;
+  }
+
+  private static RateLimiter limiter(int usedPermits) {
+    RateLimiter limiter = mock(RateLimiter.class);
+    when(limiter.usedPermits()).thenReturn(usedPermits);
+    when(limiter.remainingTime(TimeUnit.MILLISECONDS)).thenReturn(TimeUnit.MINUTES.toMillis(5));
+    return limiter;
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.junit.Test;
+
+public class ProbingTableTest {
+  private static final class TestEntry extends ProbingTable.Entry {
+    TestEntry(int hash) {
+      super(hash);
+    }
+  }
+
+  @Test
+  public void testCollidingEntriesStayReachableAfterRemovals() {
+    ProbingTable<TestEntry> table = new ProbingTable<>(16);
+    List<TestEntry> entries = new ArrayList<>();
+    // Home slots 15 and 0 wrap around the end of the table
+    for (int hash : new int[] {15, 15, 0, 15, 0, 1}) {
+      TestEntry entry = new TestEntry(hash);
+      table.insert(entry);
+      entries.add(entry);
+    }
+
+    assertThat(table.remove(entries.get(0))).isTrue();
+    assertThat(table.remove(entries.get(2))).isTrue();
+    assertThat(table.remove(entries.get(2))).isFalse();
+    assertThat(table.size()).isEqualTo(4);
+    for (TestEntry entry :
+        List.of(entries.get(1), entries.get(3), entries.get(4), entries.get(5))) {
+      assertThat(find(table, entry)).isTrue();
+    }
+  }
+
+  @Test
+  public void testGrowsAndReplaces() {
+    ProbingTable<TestEntry> table = new ProbingTable<>(4);
+    List<TestEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      TestEntry entry = new TestEntry(ProbingTable.spread(i));
+      table.insert(entry);
+      entries.add(entry);
+    }
+    assertThat(table.table().length()).isEqualTo(256);
+
+    TestEntry replacement = new TestEntry(entries.get(42).hash);
+    assertThat(table.replace(entries.get(42), replacement)).isTrue();
+    assertThat(table.replace(entries.get(42), replacement)).isFalse();
+    assertThat(find(table, replacement)).isTrue();
+    assertThat(find(table, entries.get(42))).isFalse();
+    assertThat(table.size()).isEqualTo(100);
+  }
+
+  /** Probes for the entry as the lookups of the callers do. */
+  private static boolean find(ProbingTable<TestEntry> table, TestEntry entry) {
+    AtomicReferenceArray<TestEntry> t = table.table();
+    int mask = t.length() - 1;
+    for (int i = entry.hash & mask; ; i = (i + 1) & mask) {
+      TestEntry e = t.get(i);
+      if (e == null) {
+        return false;
+      }
+      if (e == entry) {
+        return true;
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class RateLimitEmailTemplatesTest {
+  private final RateLimitEmailTemplates templates = new RateLimitEmailTemplates();
+
+  @Test
+  public void testRenderText() {
+    assertThat(
+            templates
+                .renderer(RateLimitEmailTemplates.TEXT_TEMPLATE)
+                .setData(data("User admin was blocked"))
+                .renderText()
+                .get())
+        .contains("user with email admin@example.com has exceeded a rate limit");
+  }
+
+  @Test
+  public void testRenderHtmlEscapesTheLog() {
+    assertThat(
+            templates
+                .renderer(RateLimitEmailTemplates.HTML_TEMPLATE)
+                .setData(data("<b>blocked</b>"))
+                .renderHtml()
+                .get()
+                .toString())
+        .contains("Log: &lt;b&gt;blocked&lt;/b&gt;");
+  }
+
+  @Test
+  public void testTemplatesAreReusable() {
+    for (String log : new String[] {"first", "second"}) {
+      assertThat(
+              templates
+                  .renderer(RateLimitEmailTemplates.TEXT_TEMPLATE)
+                  .setData(data(log))
+                  .renderText()
+                  .get())
+          .contains("Log: " + log);
+    }
+  }
+
+  private static Map<String, Object> data(String log) {
+    return ImmutableMap.of(
+        "email", ImmutableMap.of("userNameEmail", "admin@example.com", "log", log));
+  }
+}
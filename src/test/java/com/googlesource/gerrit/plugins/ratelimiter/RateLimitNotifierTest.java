@@ -0,0 +1,136 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.testing.FakeTicker;
+import com.google.gerrit.server.IdentifiedUser;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RateLimitNotifierTest {
+  private static final int CAPACITY = 4;
+
+  private UserResolver userResolver = mock(UserResolver.class);
+  private RateLimitReachedSender.Factory rateLimitReachedSenderFactory =
+      mock(RateLimitReachedSender.Factory.class);
+  private RateLimitReachedSender sender = mock(RateLimitReachedSender.class);
+  private RateLimitNotifier notifier;
+
+  @Before
+  public void setUp() {
+    when(userResolver.getUserName(any())).thenReturn(Optional.of("user"));
+    when(userResolver.getIdentifiedUser(any())).thenReturn(Optional.of(mock(IdentifiedUser.class)));
+    when(rateLimitReachedSenderFactory.create(any(), any(), anyBoolean())).thenReturn(sender);
+    notifier = new RateLimitNotifier(userResolver, rateLimitReachedSenderFactory, CAPACITY);
+  }
+
+  @After
+  public void tearDown() {
+    notifier.stop();
+  }
+
+  @Test
+  public void testNotifiesOnTheCallingThreadUntilStarted() throws Exception {
+    notifier.notify("1000000", user -> user + " was blocked", true, false);
+    verify(rateLimitReachedSenderFactory).create(any(), any(), anyBoolean());
+    verify(sender).send();
+  }
+
+  @Test
+  public void testDropsTheEventsWhileTheQueueIsFull() throws Exception {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch mailServer = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              sending.countDown();
+              mailServer.await();
+              return null;
+            })
+        .when(sender)
+        .send();
+    notifier.start();
+
+    notifier.notify("1000000", user -> user + " was blocked", true, false);
+    assertThat(sending.await(10, TimeUnit.SECONDS)).isTrue();
+    // the worker waits for the mail server, the fetches do not
+    for (int i = 0; i < CAPACITY + 3; i++) {
+      notifier.notify("1000000", user -> user + " was blocked", true, false);
+    }
+    assertThat(notifier.queued()).isEqualTo(CAPACITY);
+    assertThat(notifier.dropped()).isEqualTo(3);
+
+    mailServer.countDown();
+    verify(sender, timeout(10000).times(CAPACITY + 1)).send();
+  }
+
+  @Test
+  public void testDigestGathersTheEmailsOfEachUser() throws Exception {
+    FakeTicker ticker = new FakeTicker();
+    notifier =
+        new RateLimitNotifier(
+            userResolver,
+            rateLimitReachedSenderFactory,
+            CAPACITY,
+            TimeUnit.MINUTES.toNanos(10),
+            0,
+            ticker);
+    notifier.start();
+    notifier.notify("1000000", user -> "warned", true, true);
+    notifier.notify("1000000", user -> "blocked", true, false);
+    notifier.notify("1000001", user -> "warned", true, true);
+    notifier.notify("1000002", user -> "logged only", false, true);
+
+    // the pending digests are sent when the worker stops
+    notifier.stop();
+    verify(rateLimitReachedSenderFactory)
+        .create(
+            any(),
+            eq("2 rate limit notifications in the last 10 minutes:\nwarned\nblocked"),
+            eq(false));
+    verify(rateLimitReachedSenderFactory).create(any(), eq("warned"), eq(false));
+    verify(sender, times(2)).send();
+  }
+
+  @Test
+  public void testMaxEmailsPerMinute() throws Exception {
+    FakeTicker ticker = new FakeTicker();
+    notifier =
+        new RateLimitNotifier(userResolver, rateLimitReachedSenderFactory, CAPACITY, 0, 2, ticker);
+    for (int i = 0; i < 3; i++) {
+      notifier.notify("1000000", user -> "blocked", true, false);
+    }
+    verify(sender, times(2)).send();
+    assertThat(notifier.throttled()).isEqualTo(1);
+
+    ticker.advance(1, TimeUnit.MINUTES);
+    notifier.notify("1000000", user -> "blocked", true, false);
+    verify(sender, times(3)).send();
+  }
+}
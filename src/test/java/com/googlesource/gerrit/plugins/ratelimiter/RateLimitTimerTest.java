@@ -0,0 +1,99 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RateLimitTimerTest {
+
+  private RateLimitTimer timer;
+
+  @Before
+  public void setUp() {
+    timer = new RateLimitTimer(Ticker.systemTicker(), 10, TimeUnit.MILLISECONDS);
+    timer.start();
+  }
+
+  @After
+  public void tearDown() {
+    timer.stop();
+  }
+
+  @Test
+  public void testScheduledTaskRuns() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+    timer.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+    assertThat(timer.pendingTasks()).isEqualTo(1);
+
+    assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(timer.pendingTasks()).isEqualTo(0);
+  }
+
+  @Test
+  public void testFixedRateTaskRunsRepeatedly() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(3);
+    RateLimitTimer.Timeout timeout =
+        timer.scheduleAtFixedRate(latch::countDown, 20, 20, TimeUnit.MILLISECONDS);
+
+    assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(timer.pendingTasks()).isEqualTo(1);
+    assertThat(timeout.cancel()).isTrue();
+    assertThat(timer.pendingTasks()).isEqualTo(0);
+  }
+
+  @Test
+  public void testCancelledTaskDoesNotRun() throws InterruptedException {
+    AtomicInteger runs = new AtomicInteger();
+    RateLimitTimer.Timeout timeout =
+        timer.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+    assertThat(timeout.cancel()).isTrue();
+    assertThat(timeout.cancel()).isFalse();
+
+    CountDownLatch latch = new CountDownLatch(1);
+    timer.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+    assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(runs.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void testTaskBeyondOneWheelRevolution() throws InterruptedException {
+    RateLimitTimer fastTimer = new RateLimitTimer(Ticker.systemTicker(), 1, TimeUnit.MILLISECONDS);
+    fastTimer.start();
+    try {
+      // 512 slots of 1 ms make one revolution last 512 ms
+      CountDownLatch latch = new CountDownLatch(1);
+      fastTimer.schedule(latch::countDown, 800, TimeUnit.MILLISECONDS);
+      assertThat(latch.await(400, TimeUnit.MILLISECONDS)).isFalse();
+      assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      fastTimer.stop();
+    }
+  }
+
+  @Test
+  public void testDelay() {
+    RateLimitTimer.Timeout timeout = timer.schedule(() -> {}, 1, TimeUnit.HOURS);
+    assertThat(timeout.getDelay(TimeUnit.MINUTES)).isEqualTo(59);
+    assertThat(timeout.cancel()).isTrue();
+  }
+}
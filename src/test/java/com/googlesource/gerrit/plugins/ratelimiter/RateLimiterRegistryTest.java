@@ -0,0 +1,264 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.testing.FakeTicker;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RateLimiterRegistryTest {
+
+  private FakeTicker ticker;
+  private AtomicInteger loads;
+  private RateLimiterRegistry<HostKey> limiters;
+
+  @Before
+  public void setUp() {
+    ticker = new FakeTicker();
+    loads = new AtomicInteger();
+    limiters =
+        new RateLimiterRegistry<>(
+            remoteHost -> {
+              loads.incrementAndGet();
+              return mock(RateLimiter.class);
+            },
+            ticker,
+            4,
+            0);
+  }
+
+  @Test
+  public void testLimiterIsLoadedOnce() {
+    RateLimiter limiter = limiters.get(host(1));
+    assertThat(limiters.get(host(1))).isSameInstanceAs(limiter);
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(limiters.getIfPresent(host(1))).isSameInstanceAs(limiter);
+    assertThat(limiters.getIfPresent(host(2))).isNull();
+  }
+
+  @Test
+  public void testManyKeys() {
+    int hosts = 10000;
+    RateLimiter[] loaded = new RateLimiter[hosts];
+    for (int i = 0; i < hosts; i++) {
+      loaded[i] = limiters.get(host(i));
+    }
+    assertThat(limiters.size()).isEqualTo(hosts);
+    for (int i = 0; i < hosts; i++) {
+      assertThat(limiters.get(host(i))).isSameInstanceAs(loaded[i]);
+    }
+    assertThat(loads.get()).isEqualTo(hosts);
+
+    // removing every other key must not hide the keys probed after them
+    for (int i = 0; i < hosts; i += 2) {
+      limiters.invalidate(host(i));
+    }
+    assertThat(limiters.size()).isEqualTo(hosts / 2);
+    for (int i = 0; i < hosts; i++) {
+      assertThat(limiters.getIfPresent(host(i))).isEqualTo(i % 2 == 0 ? null : loaded[i]);
+    }
+    assertThat(limiters.snapshot()).hasSize(hosts / 2);
+  }
+
+  @Test
+  public void testInvalidateClosesLimiter() {
+    RateLimiter limiter = limiters.get(host(1));
+    limiters.invalidate(host(1));
+    verify(limiter).close();
+    assertThat(limiters.get(host(1))).isNotSameInstanceAs(limiter);
+  }
+
+  @Test
+  public void testIdleLimitersAreEvicted() {
+    RateLimiter idle = limiters.get(host(1));
+    RateLimiter active = limiters.get(host(2));
+
+    ticker.advance(59, TimeUnit.MINUTES);
+    limiters.get(host(2));
+    ticker.advance(1, TimeUnit.MINUTES);
+    limiters.cleanUp();
+
+    verify(idle).close();
+    verify(active, never()).close();
+    assertThat(limiters.snapshot()).containsExactly(host(2), active);
+  }
+
+  @Test
+  public void testConcurrentLoadsReturnTheSameLimiter() throws Exception {
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    List<RateLimiter> results = new ArrayList<>();
+    List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread worker =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                RateLimiter limiter = limiters.get(host(1));
+                synchronized (results) {
+                  results.add(limiter);
+                }
+              });
+      worker.start();
+      workers.add(worker);
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    assertThat(results).hasSize(threads);
+    assertThat(results.stream().distinct().count()).isEqualTo(1);
+    assertThat(limiters.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFrequentKeysSurviveOneHitKeys() {
+    RateLimiterRegistry<HostKey> bounded =
+        new RateLimiterRegistry<>(remoteHost -> mock(RateLimiter.class), ticker, 1, 1000);
+    RateLimiter[] frequent = new RateLimiter[100];
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < frequent.length; i++) {
+        frequent[i] = bounded.get(host(i));
+      }
+    }
+
+    // a wave of remote hosts fetching once, while the frequent ones keep fetching
+    for (int i = 0; i < 10000; i++) {
+      bounded.get(host(1000 + i));
+      if (i % 500 == 0) {
+        for (int j = 0; j < frequent.length; j++) {
+          bounded.get(host(j));
+        }
+      }
+    }
+
+    assertThat(bounded.size()).isAtMost(1000);
+    assertThat(bounded.evictionCount()).isAtLeast(10000 + 100 - 1000);
+    for (int i = 0; i < frequent.length; i++) {
+      assertThat(bounded.getIfPresent(host(i))).isSameInstanceAs(frequent[i]);
+      verify(frequent[i], never()).close();
+    }
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    limiters.get(host(1));
+    limiters.get(host(1));
+    limiters.get(host(2));
+
+    assertThat(limiters.hitCount()).isEqualTo(1);
+    assertThat(limiters.missCount()).isEqualTo(2);
+    assertThat(limiters.evictionCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testExpiryFollowsTheWindow() {
+    RateLimiter tenMinutes = mock(RateLimiter.class);
+    when(tenMinutes.getTimeLapse()).thenReturn(Optional.of(10));
+    when(tenMinutes.getAlgorithm()).thenReturn(RateLimitAlgorithm.FIXED_WINDOW);
+    RateLimiter sliding = mock(RateLimiter.class);
+    when(sliding.getTimeLapse()).thenReturn(Optional.of(10));
+    when(sliding.getAlgorithm()).thenReturn(RateLimitAlgorithm.SLIDING_WINDOW);
+    RateLimiter hourly = mock(RateLimiter.class);
+    when(hourly.getTimeLapse()).thenReturn(Optional.of(60));
+    when(hourly.getAlgorithm()).thenReturn(RateLimitAlgorithm.FIXED_WINDOW);
+    RateLimiter[] limiters = {tenMinutes, sliding, hourly};
+    RateLimiterRegistry<HostKey> registry =
+        new RateLimiterRegistry<>(
+            remoteHost -> limiters[(int) (remoteHost.low() & 0xFF) - 1], ticker, 1, 0);
+    registry.get(host(1));
+    registry.get(host(2));
+    registry.get(host(3));
+
+    // window plus five minutes of idle slack
+    ticker.advance(15, TimeUnit.MINUTES);
+    registry.cleanUp();
+    verify(tenMinutes).close();
+    verify(sliding, never()).close();
+
+    // two windows for the sliding window, whose previous window still counts
+    ticker.advance(10, TimeUnit.MINUTES);
+    registry.cleanUp();
+    verify(sliding).close();
+    verify(hourly, never()).close();
+
+    // never longer than an hour
+    ticker.advance(35, TimeUnit.MINUTES);
+    registry.cleanUp();
+    verify(hourly).close();
+    assertThat(registry.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testStaleLimitersAreRevalidatedOnAccess() {
+    AtomicInteger generation = new AtomicInteger(1);
+    AtomicInteger validations = new AtomicInteger();
+    Set<HostKey> changed = new HashSet<>();
+    RateLimiterRegistry<HostKey> revalidated =
+        new RateLimiterRegistry<>(
+            remoteHost -> mock(RateLimiter.class),
+            generation::get,
+            (remoteHost, limiter) -> {
+              validations.incrementAndGet();
+              return !changed.contains(remoteHost);
+            },
+            ticker,
+            1,
+            1000);
+    RateLimiter unchanged = revalidated.get(host(1));
+    RateLimiter stale = revalidated.get(host(2));
+
+    // a new configuration does not touch the limiters until they are accessed
+    generation.incrementAndGet();
+    changed.add(host(2));
+    assertThat(validations.get()).isEqualTo(0);
+
+    assertThat(revalidated.get(host(1))).isSameInstanceAs(unchanged);
+    RateLimiter replaced = revalidated.get(host(2));
+    assertThat(replaced).isNotSameInstanceAs(stale);
+    verify(stale).close();
+    verify(unchanged, never()).close();
+    assertThat(validations.get()).isEqualTo(2);
+    assertThat(revalidated.size()).isEqualTo(2);
+
+    // each limiter is only checked once per configuration
+    assertThat(revalidated.get(host(1))).isSameInstanceAs(unchanged);
+    assertThat(revalidated.get(host(2))).isSameInstanceAs(replaced);
+    assertThat(validations.get()).isEqualTo(2);
+  }
+
+  private static HostKey host(int i) {
+    return HostKey.parse("10." + (i >>> 16) + "." + (i >>> 8 & 0xFF) + "." + (i & 0xFF));
+  }
+}
@@ -0,0 +1,67 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.ProvisionException;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Test;
+
+public class RateLimiterStatsLogTest {
+
+  @After
+  public void tearDown() {
+    MDC.remove(RateLimiterStatsJsonLayout.KEY);
+  }
+
+  @Test
+  public void testLayouts() {
+    assertThat(RateLimiterStatsLog.layout(null)).isInstanceOf(PatternLayout.class);
+    assertThat(RateLimiterStatsLog.layout("text")).isInstanceOf(PatternLayout.class);
+    assertThat(RateLimiterStatsLog.layout("JSON")).isInstanceOf(RateLimiterStatsJsonLayout.class);
+    assertThrows(ProvisionException.class, () -> RateLimiterStatsLog.layout("xml"));
+  }
+
+  @Test
+  public void testJsonLine() {
+    MDC.put(RateLimiterStatsJsonLayout.KEY, "1000000");
+    LoggingEvent event =
+        new LoggingEvent(
+            Logger.class.getName(),
+            Logger.getLogger(RateLimiterStatsLogTest.class),
+            Level.INFO,
+            "User \"user\" was blocked",
+            null);
+
+    String line = new RateLimiterStatsJsonLayout().format(event);
+
+    assertThat(line).endsWith("\n");
+    assertThat(line.trim()).doesNotContain("\n");
+    JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+    assertThat(json.get("level").getAsString()).isEqualTo("INFO");
+    assertThat(json.get("key").getAsString()).isEqualTo("1000000");
+    assertThat(json.get("message").getAsString()).isEqualTo("User \"user\" was blocked");
+    assertThat(json.has("timestamp")).isTrue();
+  }
+}
@@ -0,0 +1,244 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static com.googlesource.gerrit.plugins.ratelimiter.PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+import static com.googlesource.gerrit.plugins.ratelimiter.RemoteHostTable.MAX_CAPACITY;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.FakeTicker;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RemoteHostTableTest {
+
+  private static final int RATE = 10;
+  private static final HostKey HOST = HostKey.parse("192.168.0.1");
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private FakeTicker ticker;
+  private RateLimitFinder finder;
+  private RateLimitNotifier notifier;
+
+  @Before
+  public void setUp() {
+    ticker = new FakeTicker();
+    finder = mock(RateLimitFinder.class);
+    notifier = new RateLimitNotifier(mock(UserResolver.class), null, 1);
+    when(finder.findAnonymousPolicy()).thenReturn(policy(RATE, RateLimitAlgorithm.FIXED_WINDOW));
+  }
+
+  @Test
+  public void testDisabled() {
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 0);
+    assertThat(table.accepts(HOST)).isFalse();
+    assertThat(table.capacity()).isEqualTo(0);
+  }
+
+  @Test
+  public void testCapacityAboveTheMaximum() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new RemoteHostTable(finder, notifier, ticker, MAX_CAPACITY + 1));
+  }
+
+  @Test
+  public void testAnonymousUsersNotRateLimited() {
+    when(finder.findAnonymousPolicy()).thenReturn(RateLimitPolicy.NONE);
+    assertThat(new RemoteHostTable(finder, notifier, ticker, 1024).accepts(HOST)).isFalse();
+  }
+
+  @Test
+  public void testHostNames() {
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+    assertThat(table.accepts(HOST)).isTrue();
+    assertThat(table.accepts(HostKey.parse("2001:db8::1"))).isTrue();
+    assertThat(table.accepts(HostKey.parse("build.example.com"))).isFalse();
+  }
+
+  @Test
+  public void testFixedWindow() {
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+    acquireAll(table, HOST);
+    acquireAll(table, HostKey.parse("192.168.0.2"));
+
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES, TimeUnit.MINUTES);
+    acquireAll(table, HOST);
+    assertThat(table.occupied()).isEqualTo(2);
+  }
+
+  @Test
+  public void testGcra() {
+    when(finder.findAnonymousPolicy()).thenReturn(policy(RATE, RateLimitAlgorithm.GCRA));
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+    acquireAll(table, HOST);
+
+    // 10 permits per hour give back one permit every 6 minutes
+    ticker.advance(6, TimeUnit.MINUTES);
+    assertThat(table.tryAcquirePermit(HOST)).isEqualTo(RATE);
+    assertThat(table.tryAcquirePermit(HOST)).isEqualTo(RateLimiter.NO_PERMIT);
+  }
+
+  @Test
+  public void testSnapshotListsTheHosts() {
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+    HostKey ipv6 = HostKey.parse("2001:db8::1");
+    assertThat(table.tryAcquirePermits(HOST, 3)).isEqualTo(3);
+    assertThat(table.tryAcquirePermit(ipv6)).isEqualTo(1);
+
+    Map<HostKey, RateLimiter> hosts = table.snapshot();
+    assertThat(hosts.keySet()).containsExactly(HOST, ipv6);
+    assertThat(hosts.get(ipv6).usedPermits()).isEqualTo(1);
+    RateLimiter host = hosts.get(HOST);
+    assertThat(host.permitsPerHour()).isEqualTo(RATE);
+    assertThat(host.usedPermits()).isEqualTo(3);
+    assertThat(host.availablePermits()).isEqualTo(RATE - 3);
+    assertThat(host.remainingTime(TimeUnit.MINUTES)).isEqualTo(DEFAULT_TIME_LAPSE_IN_MINUTES);
+
+    // the limiters are views of the table
+    assertThat(table.tryAcquirePermit(HOST)).isEqualTo(4);
+    assertThat(host.usedPermits()).isEqualTo(4);
+    host.replenishPermits();
+    assertThat(table.occupied()).isEqualTo(1);
+    assertThat(table.snapshot().keySet()).containsExactly(ipv6);
+    assertThat(ipv6.toString()).isEqualTo("2001:db8::1");
+  }
+
+  @Test
+  public void testUsedPermitsAreRestored() throws Exception {
+    Path file = tempFolder.getRoot().toPath().resolve(PermitsSnapshot.FILE_NAME);
+    long now = System.currentTimeMillis();
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+    assertThat(table.tryAcquirePermits(HOST, 3)).isEqualTo(3);
+    new PermitsSnapshot(file, true, ImmutableMap::of, table::snapshot, () -> now).stop();
+
+    PermitsSnapshot snapshot =
+        new PermitsSnapshot(file, true, ImmutableMap::of, ImmutableMap::of, () -> now);
+    snapshot.start();
+    RemoteHostTable restarted =
+        new RemoteHostTable(finder, notifier, snapshot, new FakeTicker(), 1024);
+    assertThat(restarted.tryAcquirePermit(HOST)).isEqualTo(4);
+    assertThat(restarted.tryAcquirePermit(HostKey.parse("192.168.0.2"))).isEqualTo(1);
+
+    // Restored once
+    restarted.replenishPermits(HOST);
+    assertThat(restarted.tryAcquirePermit(HOST)).isEqualTo(1);
+  }
+
+  @Test
+  public void testCostlyFetchIsCappedAtTheLimit() {
+    when(finder.findAnonymousPolicy()).thenReturn(policy(RATE, RateLimitAlgorithm.GCRA));
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+
+    assertThat(table.tryAcquirePermits(HOST, 5 * RATE)).isEqualTo(RATE);
+    assertThat(table.tryAcquirePermit(HOST)).isEqualTo(RateLimiter.NO_PERMIT);
+  }
+
+  @Test
+  public void testSlidingWindow() {
+    when(finder.findAnonymousPolicy()).thenReturn(policy(RATE, RateLimitAlgorithm.SLIDING_WINDOW));
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+    acquireAll(table, HOST);
+
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES * 3 / 2, TimeUnit.MINUTES);
+    for (int i = 0; i < RATE / 2; i++) {
+      assertThat(table.tryAcquirePermit(HOST)).isNotEqualTo(RateLimiter.NO_PERMIT);
+    }
+    assertThat(table.tryAcquirePermit(HOST)).isEqualTo(RateLimiter.NO_PERMIT);
+  }
+
+  @Test
+  public void testFullSetEvictsWithClock() {
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, RemoteHostTable.WAYS);
+    for (int i = 0; i < RemoteHostTable.WAYS; i++) {
+      table.tryAcquirePermit(HostKey.parse("10.0.0." + i));
+    }
+    assertThat(table.occupied()).isEqualTo(RemoteHostTable.WAYS);
+    assertThat(table.evictions()).isEqualTo(0);
+
+    table.tryAcquirePermit(HostKey.parse("10.0.1.0"));
+    assertThat(table.occupied()).isEqualTo(RemoteHostTable.WAYS);
+    assertThat(table.evictions()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSweepFreesIdleHosts() {
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+    table.tryAcquirePermit(HOST);
+
+    // referenced since the last sweep
+    table.sweep();
+    assertThat(table.occupied()).isEqualTo(1);
+
+    // still using a permit of the current window
+    table.sweep();
+    assertThat(table.occupied()).isEqualTo(1);
+
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES, TimeUnit.MINUTES);
+    table.sweep();
+    assertThat(table.occupied()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReplenishPermits() {
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+    acquireAll(table, HOST);
+    table.replenishPermits(HOST);
+    acquireAll(table, HOST);
+    table.replenishAllPermits();
+    assertThat(table.occupied()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRefreshForgetsPermitsWhenLimitsChange() {
+    RemoteHostTable table = new RemoteHostTable(finder, notifier, ticker, 1024);
+    acquireAll(table, HOST);
+
+    table.refresh();
+    assertThat(table.tryAcquirePermit(HOST)).isEqualTo(RateLimiter.NO_PERMIT);
+
+    when(finder.findAnonymousPolicy())
+        .thenReturn(policy(RATE + 1, RateLimitAlgorithm.FIXED_WINDOW));
+    table.refresh();
+    assertThat(table.permitsPerHour()).isEqualTo(RATE + 1);
+    assertThat(table.tryAcquirePermit(HOST)).isEqualTo(1);
+  }
+
+  private static RateLimitPolicy policy(int rate, RateLimitAlgorithm algorithm) {
+    return new RateLimitPolicy(
+        Map.of(
+            RateLimitType.UPLOAD_PACK_PER_HOUR,
+            new RateLimit(RateLimitType.UPLOAD_PACK_PER_HOUR, rate)),
+        Optional.of(algorithm));
+  }
+
+  private static void acquireAll(RemoteHostTable table, HostKey host) {
+    for (int i = 1; i <= RATE; i++) {
+      assertThat(table.tryAcquirePermit(host)).isEqualTo(i);
+    }
+    assertThat(table.tryAcquirePermit(host)).isEqualTo(RateLimiter.NO_PERMIT);
+  }
+}
@@ -0,0 +1,264 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static com.googlesource.gerrit.plugins.ratelimiter.PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+import static com.googlesource.gerrit.plugins.ratelimiter.RateLimiter.NO_PERMIT;
+import static org.mockito.Mockito.mock;
+
+import com.googlesource.gerrit.plugins.ratelimiter.testutil.SharedCounterServer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedRateLimiterTest {
+  private static final int RATE = 10;
+  private static final int LEASING_RATE = 100;
+  private static final long WINDOW_MILLIS =
+      TimeUnit.MINUTES.toMillis(DEFAULT_TIME_LAPSE_IN_MINUTES);
+  private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+  private static final long LEASE_MILLIS = 10000;
+  private static final String KEY = "1000000";
+  private static final String COUNTER = "rate-limiter:" + KEY + ":100";
+
+  private SharedCounterServer server;
+  private SharedCounterClient client1;
+  private SharedCounterClient client2;
+  private AtomicLong clock;
+  private LongAdder fallbacks;
+  private Set<SharedRateLimiter> leases;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new SharedCounterServer();
+    client1 = new SharedCounterClient(server.address(), 1000);
+    client2 = new SharedCounterClient(server.address(), 1000);
+    clock = new AtomicLong(100 * WINDOW_MILLIS + 1000);
+    fallbacks = new LongAdder();
+    leases = ConcurrentHashMap.newKeySet();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client1.close();
+    client2.close();
+    server.close();
+  }
+
+  @Test
+  public void testServersShareTheLimit() {
+    RateLimiter limiter1 = limiter(client1, TIMEOUT_NANOS);
+    RateLimiter limiter2 = limiter(client2, TIMEOUT_NANOS);
+
+    for (int i = 1; i <= RATE; i++) {
+      assertThat((i % 2 == 0 ? limiter1 : limiter2).tryAcquirePermit()).isEqualTo(i);
+    }
+    assertThat(limiter1.tryAcquirePermit()).isEqualTo(NO_PERMIT);
+    assertThat(limiter2.tryAcquirePermit()).isEqualTo(NO_PERMIT);
+    assertThat(limiter1.usedPermits()).isEqualTo(RATE);
+    assertThat(limiter2.availablePermits()).isEqualTo(0);
+    assertThat(fallbacks.sum()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRefusedPermitsAreGivenBack() {
+    RateLimiter limiter1 = limiter(client1, TIMEOUT_NANOS);
+
+    assertThat(limiter1.tryAcquirePermits(RATE - 2)).isEqualTo(RATE - 2);
+    assertThat(limiter1.tryAcquirePermits(3)).isEqualTo(NO_PERMIT);
+    assertThat(limiter1.tryAcquirePermits(2)).isEqualTo(RATE);
+  }
+
+  @Test
+  public void testWindowsAreAlignedOnTheClock() {
+    RateLimiter limiter = limiter(client1, TIMEOUT_NANOS);
+    for (int i = 1; i <= RATE; i++) {
+      assertThat(limiter.acquirePermit()).isTrue();
+    }
+    assertThat(limiter.acquirePermit()).isFalse();
+    assertThat(limiter.remainingTime(TimeUnit.MILLISECONDS)).isEqualTo(WINDOW_MILLIS - 1000);
+
+    clock.addAndGet(WINDOW_MILLIS - 1000);
+    assertThat(limiter.tryAcquirePermit()).isEqualTo(1);
+    assertThat(limiter.remainingTime(TimeUnit.MILLISECONDS)).isEqualTo(WINDOW_MILLIS);
+  }
+
+  @Test
+  public void testReplenishPermitsResetsTheSharedCounter() throws Exception {
+    RateLimiter limiter = limiter(client1, TIMEOUT_NANOS);
+    for (int i = 1; i <= RATE; i++) {
+      assertThat(limiter.acquirePermit()).isTrue();
+    }
+    limiter.replenishPermits();
+
+    assertThat(limiter.usedPermits()).isEqualTo(0);
+    assertThat(limiter(client1, TIMEOUT_NANOS).tryAcquirePermit()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFallsBackLocallyWhenTheStoreIsSlow() {
+    server.setDelayMillis(500);
+    RateLimiter limiter = limiter(client1, TimeUnit.MILLISECONDS.toNanos(10));
+
+    assertThat(limiter.tryAcquirePermit()).isEqualTo(1);
+    assertThat(limiter.usedPermits()).isEqualTo(1);
+    assertThat(fallbacks.sum()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFallsBackLocallyWhenTheStoreIsDown() throws Exception {
+    String address = server.address();
+    server.close();
+    try (SharedCounterClient down = new SharedCounterClient(address, 1000)) {
+      RateLimiter limiter = limiter(down, TIMEOUT_NANOS);
+
+      for (int i = 1; i <= RATE; i++) {
+        assertThat(limiter.tryAcquirePermit()).isEqualTo(i);
+      }
+      assertThat(limiter.tryAcquirePermit()).isEqualTo(NO_PERMIT);
+      assertThat(fallbacks.sum()).isEqualTo(RATE + 1);
+    }
+  }
+
+  @Test
+  public void testIncrementsArePipelined() throws Exception {
+    List<CompletableFuture<Long>> values = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      values.add(client1.incrementBy("key", 1, WINDOW_MILLIS));
+    }
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(values.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(i + 1);
+    }
+    assertThat(server.get("key")).isEqualTo(100);
+    assertThat(client1.delete("key").get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    assertThat(server.get("key")).isNull();
+  }
+
+  @Test
+  public void testParseAddress() {
+    assertThat(SharedCounterClient.parseAddress("redis.example.com:6379").getHostString())
+        .isEqualTo("redis.example.com");
+    assertThat(SharedCounterClient.parseAddress("[::1]:6379").getPort()).isEqualTo(6379);
+    for (String invalid :
+        new String[] {"redis.example.com", ":6379", "redis.example.com:port", "localhost:0"}) {
+      assertThrows(IllegalArgumentException.class, () -> SharedCounterClient.parseAddress(invalid));
+    }
+  }
+
+  @Test
+  public void testLeaseGrowsWhileSpentBeforeItExpires() {
+    RateLimiter limiter = leasingLimiter(client1, 8);
+
+    for (int i = 1; i <= 15; i++) {
+      assertThat(limiter.tryAcquirePermit()).isEqualTo(i);
+    }
+    // Leases of 1, 2, 4 and 8 permits
+    assertThat(server.increments()).isEqualTo(4);
+    assertThat(server.get(COUNTER)).isEqualTo(15);
+
+    assertThat(limiter.tryAcquirePermit()).isEqualTo(16);
+    assertThat(server.increments()).isEqualTo(5);
+    assertThat(server.get(COUNTER)).isEqualTo(23);
+    assertThat(leases).containsExactly(limiter);
+  }
+
+  @Test
+  public void testExpiredLeaseIsGivenBack() throws Exception {
+    SharedRateLimiter limiter = leasingLimiter(client1, 8);
+    for (int i = 1; i <= 4; i++) {
+      assertThat(limiter.tryAcquirePermit()).isEqualTo(i);
+    }
+    assertThat(server.get(COUNTER)).isEqualTo(7);
+
+    limiter.expireLease();
+    assertThat(leases).containsExactly(limiter);
+    clock.addAndGet(LEASE_MILLIS);
+    limiter.expireLease();
+    assertThat(leases).isEmpty();
+    // Pipelined after the give back
+    assertThat(client1.incrementBy(COUNTER, 0, WINDOW_MILLIS).get(5, TimeUnit.SECONDS))
+        .isEqualTo(4);
+
+    // Shrunk to the single permit spent
+    assertThat(limiter.tryAcquirePermit()).isEqualTo(5);
+    assertThat(server.get(COUNTER)).isEqualTo(5);
+  }
+
+  @Test
+  public void testClosingGivesBackTheLease() throws Exception {
+    SharedRateLimiter limiter = leasingLimiter(client1, 8);
+    for (int i = 1; i <= 4; i++) {
+      assertThat(limiter.tryAcquirePermit()).isEqualTo(i);
+    }
+
+    limiter.close();
+    assertThat(leases).isEmpty();
+    assertThat(client1.incrementBy(COUNTER, 0, WINDOW_MILLIS).get(5, TimeUnit.SECONDS))
+        .isEqualTo(4);
+  }
+
+  @Test
+  public void testLeasesShareTheLimit() {
+    RateLimiter limiter1 = leasingLimiter(client1, 4);
+    RateLimiter limiter2 = leasingLimiter(client2, 4);
+
+    int granted = 0;
+    boolean refused1 = false;
+    boolean refused2 = false;
+    while (!refused1 || !refused2) {
+      refused1 = limiter1.tryAcquirePermit() == NO_PERMIT;
+      refused2 = limiter2.tryAcquirePermit() == NO_PERMIT;
+      granted += (refused1 ? 0 : 1) + (refused2 ? 0 : 1);
+    }
+    assertThat(granted).isEqualTo(LEASING_RATE);
+    assertThat(limiter1.usedPermits()).isEqualTo(LEASING_RATE);
+    assertThat(fallbacks.sum()).isEqualTo(0);
+  }
+
+  private SharedRateLimiter leasingLimiter(SharedCounterClient client, int maxLease) {
+    return new SharedRateLimiter(
+        client,
+        KEY,
+        new LazyRateLimiter(LEASING_RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type"),
+        TIMEOUT_NANOS,
+        clock::get,
+        fallbacks,
+        maxLease,
+        LEASE_MILLIS,
+        leases);
+  }
+
+  private RateLimiter limiter(SharedCounterClient client, long timeoutNanos) {
+    return new SharedRateLimiter(
+        client,
+        KEY,
+        new PeriodicRateLimiter(
+            mock(RateLimitTimer.class), RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type"),
+        timeoutNanos,
+        clock::get,
+        fallbacks);
+  }
+}
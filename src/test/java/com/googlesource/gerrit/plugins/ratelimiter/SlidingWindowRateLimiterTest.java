@@ -0,0 +1,98 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.ratelimiter.PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+
+import com.google.common.testing.FakeTicker;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SlidingWindowRateLimiterTest {
+
+  private static final int RATE = 100;
+
+  private FakeTicker ticker;
+  private SlidingWindowRateLimiter limiter;
+
+  @Before
+  public void setUp() {
+    ticker = new FakeTicker();
+    limiter = new SlidingWindowRateLimiter(ticker, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type");
+  }
+
+  @Test
+  public void testGetRatePerHour() {
+    assertThat(limiter.permitsPerHour()).isEqualTo(RATE);
+    assertThat(limiter.getAlgorithm()).isEqualTo(RateLimitAlgorithm.SLIDING_WINDOW);
+  }
+
+  @Test
+  public void testAcquire() {
+    assertThat(limiter.availablePermits()).isEqualTo(RATE);
+
+    for (int i = 1; i <= RATE; i++) {
+      assertThat(limiter.tryAcquirePermit()).isEqualTo(i);
+      assertThat(limiter.availablePermits()).isEqualTo(RATE - i);
+      assertThat(limiter.usedPermits()).isEqualTo(i);
+    }
+    assertThat(limiter.acquirePermit()).isFalse();
+    assertThat(limiter.availablePermits()).isEqualTo(0);
+  }
+
+  @Test
+  public void testPreviousWindowIsWeighted() {
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES - 1, TimeUnit.MINUTES);
+    testAcquire();
+
+    // right after the boundary almost all the previous window is still counted
+    ticker.advance(1, TimeUnit.MINUTES);
+    assertThat(limiter.acquirePermit()).isFalse();
+
+    // a quarter of the window later, a quarter of the previous permits is no longer counted
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES / 4, TimeUnit.MINUTES);
+    assertThat(limiter.usedPermits()).isEqualTo(RATE * 3 / 4);
+    for (int i = 0; i < RATE / 4; i++) {
+      assertThat(limiter.acquirePermit()).isTrue();
+    }
+    assertThat(limiter.acquirePermit()).isFalse();
+    assertThat(limiter.usedPermits()).isEqualTo(RATE);
+  }
+
+  @Test
+  public void testPermitsAreForgottenAfterTwoWindows() {
+    testAcquire();
+
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES * 2, TimeUnit.MINUTES);
+    testAcquire();
+  }
+
+  @Test
+  public void testRemainingTimeStaysAlignedToWindow() {
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES + 10, TimeUnit.MINUTES);
+    assertThat(limiter.remainingTime(TimeUnit.MINUTES))
+        .isEqualTo(DEFAULT_TIME_LAPSE_IN_MINUTES - 10);
+  }
+
+  @Test
+  public void testReplenishPermits() {
+    testAcquire();
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES, TimeUnit.MINUTES);
+    limiter.replenishPermits();
+    testAcquire();
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.ratelimiter.PeriodicRateLimiter.DEFAULT_TIME_LAPSE_IN_MINUTES;
+
+import com.google.common.testing.FakeTicker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TokenBucketRateLimiterTest {
+
+  private static final int RATE = 60;
+  private static final int BURST = 10;
+
+  private FakeTicker ticker;
+  private TokenBucketRateLimiter limiter;
+
+  @Before
+  public void setUp() {
+    ticker = new FakeTicker();
+    limiter =
+        new TokenBucketRateLimiter(ticker, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, BURST, "Any Type");
+  }
+
+  @Test
+  public void testGetRatePerHour() {
+    assertThat(limiter.permitsPerHour()).isEqualTo(RATE);
+    assertThat(limiter.getBurst()).isEqualTo(Optional.of(BURST));
+    assertThat(limiter.getAlgorithm()).isEqualTo(RateLimitAlgorithm.TOKEN_BUCKET);
+  }
+
+  @Test
+  public void testAcquireBurst() {
+    assertThat(limiter.availablePermits()).isEqualTo(BURST);
+
+    for (int i = 1; i <= BURST; i++) {
+      assertThat(limiter.tryAcquirePermit()).isEqualTo(i);
+      assertThat(limiter.availablePermits()).isEqualTo(BURST - i);
+    }
+    assertThat(limiter.acquirePermit()).isFalse();
+    assertThat(limiter.usedPermits()).isEqualTo(BURST);
+  }
+
+  @Test
+  public void testPermitsAreRefilledContinuously() {
+    testAcquireBurst();
+
+    // 60 permits per hour refill one permit per minute
+    ticker.advance(30, TimeUnit.SECONDS);
+    assertThat(limiter.acquirePermit()).isFalse();
+    ticker.advance(30, TimeUnit.SECONDS);
+    assertThat(limiter.acquirePermit()).isTrue();
+    assertThat(limiter.acquirePermit()).isFalse();
+
+    ticker.advance(3, TimeUnit.MINUTES);
+    assertThat(limiter.availablePermits()).isEqualTo(3);
+  }
+
+  @Test
+  public void testBucketDoesNotOverflow() {
+    ticker.advance(DEFAULT_TIME_LAPSE_IN_MINUTES, TimeUnit.MINUTES);
+    assertThat(limiter.availablePermits()).isEqualTo(BURST);
+  }
+
+  @Test
+  public void testRemainingTimeUntilFull() {
+    assertThat(limiter.remainingTime(TimeUnit.MINUTES)).isEqualTo(0);
+    testAcquireBurst();
+    assertThat(limiter.remainingTime(TimeUnit.MINUTES)).isEqualTo(BURST);
+  }
+
+  @Test
+  public void testReplenishPermits() {
+    testAcquireBurst();
+    limiter.replenishPermits();
+    testAcquireBurst();
+  }
+
+  @Test
+  public void testConcurrentAcquireNeverExceedsBurst() throws Exception {
+    int threads = 64;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Integer>> tasks = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        tasks.add(
+            () -> {
+              int acquired = 0;
+              for (int j = 0; j < BURST; j++) {
+                if (limiter.acquirePermit()) {
+                  acquired++;
+                }
+              }
+              return acquired;
+            });
+      }
+      int acquired = 0;
+      for (Future<Integer> result : executor.invokeAll(tasks)) {
+        acquired += result.get();
+      }
+      assertThat(acquired).isEqualTo(BURST);
+      assertThat(limiter.usedPermits()).isEqualTo(BURST);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
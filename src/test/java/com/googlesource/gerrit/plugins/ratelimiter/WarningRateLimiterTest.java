@@ -26,10 +26,10 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.testing.FakeTicker;
 import com.google.gerrit.exceptions.EmailException;
 import com.google.gerrit.server.IdentifiedUser;
 import java.util.Optional;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
@@ -41,7 +41,7 @@ public class WarningRateLimiterTest {
   private static final int WARN_RATE = 900;
   private IdentifiedUser identifiedUser = mock(IdentifiedUser.class);
   private WarningRateLimiter warningLimiter;
-  private ScheduledExecutorService scheduledExecutorMock;
+  private RateLimitTimer timerMock;
   private UserResolver userResolver = mock(UserResolver.class);
   private RateLimitReachedSender.Factory rateLimitReachedSenderFactory =
       mock(RateLimitReachedSender.Factory.class);
@@ -49,18 +49,15 @@ public class WarningRateLimiterTest {
 
   @Before
   public void setUp() {
-    scheduledExecutorMock = mock(ScheduledExecutorService.class);
+    timerMock = mock(RateLimitTimer.class);
 
     PeriodicRateLimiter limiter =
-        spy(
-            new PeriodicRateLimiter(
-                scheduledExecutorMock, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type"));
+        spy(new PeriodicRateLimiter(timerMock, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type"));
     doReturn(1L).when(limiter).remainingTime(any(TimeUnit.class));
 
     warningLimiter =
         new WarningRateLimiter(
-            userResolver,
-            rateLimitReachedSenderFactory,
+            new RateLimitNotifier(userResolver, rateLimitReachedSenderFactory, 1),
             limiter,
             "dummy",
             WARN_RATE
@@ -111,9 +108,119 @@ public class WarningRateLimiterTest {
     verify(sender, times(2)).send();
   }
 
+  @Test
+  public void testWarningWhenSeveralPermitsCrossTheWarningLimit() throws EmailException {
+    when(userResolver.getIdentifiedUser(any())).thenReturn(Optional.ofNullable(identifiedUser));
+    when(rateLimitReachedSenderFactory.create(any(), any(), anyBoolean())).thenReturn(sender);
+
+    assertThat(warningLimiter.tryAcquirePermits(WARN_RATE - 1)).isEqualTo(WARN_RATE - 1);
+    assertThat(warningLimiter.getWarningFlagState()).isFalse();
+    assertThat(warningLimiter.tryAcquirePermits(10)).isEqualTo(WARN_RATE + 9);
+    assertThat(warningLimiter.getWarningFlagState()).isTrue();
+    verify(sender, times(1)).send();
+  }
+
+  @Test
+  public void testTokenBucketIsWarnedOnceUntilRefilled() throws EmailException {
+    when(userResolver.getIdentifiedUser(any())).thenReturn(Optional.ofNullable(identifiedUser));
+    when(rateLimitReachedSenderFactory.create(any(), any(), anyBoolean())).thenReturn(sender);
+    FakeTicker ticker = new FakeTicker();
+    // 60 permits per hour refill one permit per minute
+    WarningRateLimiter bucketLimiter =
+        new WarningRateLimiter(
+            new RateLimitNotifier(userResolver, rateLimitReachedSenderFactory, 1),
+            new TokenBucketRateLimiter(ticker, 60, DEFAULT_TIME_LAPSE_IN_MINUTES, 10, "Any Type"),
+            "dummy",
+            8);
+
+    assertThat(bucketLimiter.tryAcquirePermits(8)).isEqualTo(8);
+    verify(sender, times(1)).send();
+
+    // The used permits go back and forth across the warning limit
+    for (int i = 0; i < 5; i++) {
+      ticker.advance(1, TimeUnit.MINUTES);
+      assertThat(bucketLimiter.usedPermits()).isEqualTo(7);
+      assertThat(bucketLimiter.tryAcquirePermit()).isEqualTo(8);
+    }
+    verify(sender, times(1)).send();
+
+    // Warned again once the bucket is refilled
+    ticker.advance(10, TimeUnit.MINUTES);
+    assertThat(bucketLimiter.getWarningFlagState()).isTrue();
+    assertThat(bucketLimiter.tryAcquirePermits(8)).isEqualTo(8);
+    verify(sender, times(2)).send();
+  }
+
+  @Test
+  public void testSustainedUseIsWarnedOncePerTimeLapse() throws EmailException {
+    when(userResolver.getIdentifiedUser(any())).thenReturn(Optional.ofNullable(identifiedUser));
+    when(rateLimitReachedSenderFactory.create(any(), any(), anyBoolean())).thenReturn(sender);
+    FakeTicker ticker = new FakeTicker();
+    WarningRateLimiter gcraLimiter =
+        new WarningRateLimiter(
+            new RateLimitNotifier(userResolver, rateLimitReachedSenderFactory, 1),
+            new GcraRateLimiter(ticker, 60, DEFAULT_TIME_LAPSE_IN_MINUTES, 10, "Any Type"),
+            "dummy",
+            8,
+            ticker);
+
+    assertThat(gcraLimiter.tryAcquirePermits(8)).isEqualTo(8);
+    // The user never gets all its permits back, using one more every minute
+    for (int minute = 1; minute < DEFAULT_TIME_LAPSE_IN_MINUTES; minute++) {
+      ticker.advance(1, TimeUnit.MINUTES);
+      assertThat(gcraLimiter.tryAcquirePermit()).isEqualTo(8);
+    }
+    verify(sender, times(1)).send();
+
+    ticker.advance(1, TimeUnit.MINUTES);
+    assertThat(gcraLimiter.getWarningFlagState()).isFalse();
+    assertThat(gcraLimiter.tryAcquirePermit()).isEqualTo(8);
+    verify(sender, times(2)).send();
+  }
+
+  @Test
+  public void testBlockIsNotifiedOncePerPeriod() throws EmailException {
+    when(userResolver.getIdentifiedUser(any())).thenReturn(Optional.ofNullable(identifiedUser));
+    when(rateLimitReachedSenderFactory.create(any(), any(), anyBoolean())).thenReturn(sender);
+    ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(timerMock)
+        .scheduleAtFixedRate(
+            runnableCaptor.capture(),
+            eq((long) DEFAULT_TIME_LAPSE_IN_MINUTES),
+            eq((long) DEFAULT_TIME_LAPSE_IN_MINUTES),
+            eq(TimeUnit.MINUTES));
+
+    for (int permitNum = 1; permitNum <= RATE; permitNum++) {
+      checkGetPermitPasses(warningLimiter, permitNum);
+    }
+    checkGetPermitFails(warningLimiter);
+    checkGetPermitFails(warningLimiter);
+    // the warning and the first block only
+    verify(sender, times(2)).send();
+
+    replenishPermits(warningLimiter, runnableCaptor);
+    for (int permitNum = 1; permitNum <= RATE; permitNum++) {
+      checkGetPermitPasses(warningLimiter, permitNum);
+    }
+    checkGetPermitFails(warningLimiter);
+    verify(sender, times(4)).send();
+  }
+
+  @Test
+  public void testRestoredPermitsAreNotNotifiedAgain() throws EmailException {
+    when(userResolver.getIdentifiedUser(any())).thenReturn(Optional.ofNullable(identifiedUser));
+    when(rateLimitReachedSenderFactory.create(any(), any(), anyBoolean())).thenReturn(sender);
+
+    warningLimiter.restoreUsedPermits(RATE);
+    assertThat(warningLimiter.usedPermits()).isEqualTo(RATE);
+    assertThat(warningLimiter.getWarningFlagState()).isTrue();
+    checkGetPermitFails(warningLimiter);
+    verify(sender, times(0)).send();
+  }
+
   @Test
   public void testReplenishPermitsIsScheduled() {
-    verify(scheduledExecutorMock)
+    verify(timerMock)
         .scheduleAtFixedRate(
             any(),
             eq((long) DEFAULT_TIME_LAPSE_IN_MINUTES),
@@ -124,7 +231,7 @@ public class WarningRateLimiterTest {
   @Test
   public void testReplenishPermitsScheduledRunnableIsWorking() {
     ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
-    verify(scheduledExecutorMock)
+    verify(timerMock)
         .scheduleAtFixedRate(
             runnableCaptor.capture(),
             eq((long) DEFAULT_TIME_LAPSE_IN_MINUTES),
@@ -21,7 +21,6 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
@@ -32,17 +31,17 @@ public class WarningUnlimitedRateLimiterTest {
   private static final int RATE = 1000;
   private static final int WARN_RATE = 900;
   private WarningUnlimitedRateLimiter warningUnlimitedLimiter;
-  private ScheduledExecutorService scheduledExecutorMock;
+  private RateLimitTimer timerMock;
   private UserResolver userResolver = mock(UserResolver.class);
 
   @Before
   public void setUp() {
-    scheduledExecutorMock = mock(ScheduledExecutorService.class);
+    timerMock = mock(RateLimitTimer.class);
     PeriodicRateLimiter limiter =
-        new PeriodicRateLimiter(
-            scheduledExecutorMock, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type");
+        new PeriodicRateLimiter(timerMock, RATE, DEFAULT_TIME_LAPSE_IN_MINUTES, "Any Type");
     warningUnlimitedLimiter =
-        new WarningUnlimitedRateLimiter(userResolver, limiter, "dummy", WARN_RATE);
+        new WarningUnlimitedRateLimiter(
+            new RateLimitNotifier(userResolver, null, 1), limiter, "dummy", WARN_RATE);
   }
 
   @Test
@@ -71,7 +70,7 @@ public class WarningUnlimitedRateLimiterTest {
 
   @Test
   public void testReplenishPermitsIsScheduled() {
-    verify(scheduledExecutorMock)
+    verify(timerMock)
         .scheduleAtFixedRate(
             any(),
             eq((long) DEFAULT_TIME_LAPSE_IN_MINUTES),
@@ -82,7 +81,7 @@ public class WarningUnlimitedRateLimiterTest {
   @Test
   public void testReplenishPermitsScheduledRunnableIsWorking() {
     ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
-    verify(scheduledExecutorMock)
+    verify(timerMock)
         .scheduleAtFixedRate(
             runnableCaptor.capture(),
             eq((long) DEFAULT_TIME_LAPSE_IN_MINUTES),
@@ -0,0 +1,154 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License"),
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.ratelimiter.testutil;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in of the shared key-value store for the tests, serving {@code INCRBY}, {@code PEXPIRE} and
+ * {@code DEL} on the loopback interface. The keys never expire.
+ */
+public class SharedCounterServer implements AutoCloseable {
+  private final ServerSocket server;
+  private final Map<String, Long> counters = new ConcurrentHashMap<>();
+  private final List<Socket> clients = new CopyOnWriteArrayList<>();
+  private final AtomicInteger increments = new AtomicInteger();
+  private volatile long delayMillis;
+
+  public SharedCounterServer() throws IOException {
+    server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(this::accept, "Shared-counter-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public String address() {
+    return server.getInetAddress().getHostAddress() + ":" + server.getLocalPort();
+  }
+
+  /** Delays the replies to the commands received from now on. */
+  public void setDelayMillis(long delayMillis) {
+    this.delayMillis = delayMillis;
+  }
+
+  public Long get(String key) {
+    return counters.get(key);
+  }
+
+  /** Returns the number of {@code INCRBY} commands served. */
+  public int increments() {
+    return increments.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+    for (Socket client : clients) {
+      client.close();
+    }
+  }
+
+  private void accept() {
+    try {
+      while (true) {
+        Socket client = server.accept();
+        clients.add(client);
+        Thread t = new Thread(() -> serve(client), "Shared-counter-client");
+        t.setDaemon(true);
+        t.start();
+      }
+    } catch (IOException e) {
+      // Closed
+    }
+  }
+
+  private void serve(Socket client) {
+    try (DataInputStream in =
+            new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        OutputStream out = new BufferedOutputStream(client.getOutputStream())) {
+      while (true) {
+        String[] command = readCommand(in);
+        long delay = delayMillis;
+        if (delay > 0) {
+          Thread.sleep(delay);
+        }
+        out.write(execute(command).getBytes(UTF_8));
+        if (in.available() == 0) {
+          out.flush();
+        }
+      }
+    } catch (IOException | InterruptedException e) {
+      // Closed
+    }
+  }
+
+  private String execute(String[] command) {
+    switch (command[0]) {
+      case "INCRBY":
+        increments.incrementAndGet();
+        return ":" + counters.merge(command[1], Long.parseLong(command[2]), Long::sum) + "\r\n";
+      case "PEXPIRE":
+        return ":" + (counters.containsKey(command[1]) ? 1 : 0) + "\r\n";
+      case "DEL":
+        return ":" + (counters.remove(command[1]) != null ? 1 : 0) + "\r\n";
+      default:
+        return "-ERR unknown command '" + command[0] + "'\r\n";
+    }
+  }
+
+  private static String[] readCommand(DataInputStream in) throws IOException {
+    String[] args = new String[Integer.parseInt(readLine(in, '*'))];
+    for (int i = 0; i < args.length; i++) {
+      byte[] arg = new byte[Integer.parseInt(readLine(in, '$'))];
+      in.readFully(arg);
+      if (in.read() != '\r' || in.read() != '\n') {
+        throw new IOException("Malformed command");
+      }
+      args[i] = new String(arg, UTF_8);
+    }
+    return args;
+  }
+
+  /** Reads a line starting with the given type, returning it without the type. */
+  private static String readLine(InputStream in, char type) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c == -1) {
+        throw new IOException("Closed");
+      }
+      line.append((char) c);
+    }
+    if (line.length() == 0 || line.charAt(0) != type || line.charAt(line.length() - 1) != '\r') {
+      throw new IOException("Malformed command: " + line);
+    }
+    return line.substring(1, line.length() - 1);
+  }
+}